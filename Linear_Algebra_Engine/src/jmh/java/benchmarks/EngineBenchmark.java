@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import spl.lae.LinearAlgebraEngine;
+
+/**
+ * One engine operation on fresh leaves per invocation, across sizes and worker counts.
+ * The result cache is disabled, otherwise every invocation after the first would be a cache hit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class EngineBenchmark {
+
+    @Param({"ADD", "MULTIPLY", "NEGATE", "TRANSPOSE"})
+    public ComputationNodeType operation;
+
+    @Param({"128", "512"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private LinearAlgebraEngine engine;
+    private double[][] left;
+    private double[][] right;
+
+    @Setup
+    public void setUp() {
+        engine = new LinearAlgebraEngine(threads);
+        engine.setResultCacheBytes(0);
+        left = Matrices.random(size, size, 4);
+        right = Matrices.random(size, size, 5);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public double[][] run() {
+        ComputationNode root;
+        if (operation == ComputationNodeType.ADD || operation == ComputationNodeType.MULTIPLY) {
+            root = new ComputationNode(operation, List.of(new ComputationNode(left), new ComputationNode(right)));
+        } else {
+            root = new ComputationNode(operation, List.of(new ComputationNode(left)));
+        }
+        return engine.run(root).getMatrix();
+    }
+}
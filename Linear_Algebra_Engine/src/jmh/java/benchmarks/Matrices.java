@@ -0,0 +1,29 @@
+package benchmarks;
+
+import java.util.Random;
+
+// Benchmark inputs; seeded so every run measures the same data
+final class Matrices {
+
+    private Matrices() {}
+
+    static double[][] random(int rows, int cols, long seed) {
+        Random random = new Random(seed);
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                m[i][j] = random.nextDouble() * 2 - 1;
+            }
+        }
+        return m;
+    }
+
+    // A cyclic shift: multiplying by it keeps the magnitudes of a vector unchanged
+    static double[][] permutation(int size) {
+        double[][] m = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            m[i][(i + 1) % size] = 1.0;
+        }
+        return m;
+    }
+}
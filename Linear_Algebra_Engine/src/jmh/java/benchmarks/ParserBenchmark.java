@@ -0,0 +1,80 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import parser.ComputationNode;
+import parser.InputParser;
+import parser.OutputWriter;
+
+/**
+ * InputParser and OutputWriter throughput on a size x size matrix, through files in a temporary
+ * directory, so the numbers include the file system like a real run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class ParserBenchmark {
+
+    @Param({"256", "1024"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean compact;
+
+    private Path directory;
+    private String inputFile;
+    private String outputFile;
+    private double[][] matrix;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lae-bench-");
+        matrix = Matrices.random(size, size, 6);
+        // The input is a negation of the matrix, written with the same writer that is measured
+        Path result = directory.resolve("matrix.json");
+        OutputWriter.write(matrix, result.toString(), compact);
+        String rows = Files.readString(result);
+        rows = rows.substring(rows.indexOf('['), rows.lastIndexOf(']') + 1);
+        Path input = directory.resolve("input.json");
+        Files.writeString(input, "{\"operator\": \"-\", \"operands\": [" + rows + "]}");
+        inputFile = input.toString();
+        outputFile = directory.resolve("output.json").toString();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (String file : new String[]{"matrix.json", "input.json", "output.json"}) {
+            Files.deleteIfExists(directory.resolve(file));
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public ComputationNode parse() throws ParseException {
+        return new InputParser().parse(inputFile);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        OutputWriter.write(matrix, outputFile, compact);
+    }
+}
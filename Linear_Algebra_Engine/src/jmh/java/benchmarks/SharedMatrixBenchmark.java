@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import memory.SharedMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading double[][] into SharedMatrix storage and reading it back, in both orientations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class SharedMatrixBenchmark {
+
+    @Param({"128", "1024"})
+    public int size;
+
+    private double[][] data;
+    private SharedMatrix rowMajor;
+    private SharedMatrix columnMajor;
+
+    @Setup
+    public void setUp() {
+        data = Matrices.random(size, size, 3);
+        rowMajor = new SharedMatrix(data);
+        columnMajor = new SharedMatrix();
+        columnMajor.loadColumnMajor(data);
+    }
+
+    @Benchmark
+    public SharedMatrix loadRowMajor() {
+        SharedMatrix m = new SharedMatrix();
+        m.loadRowMajor(data);
+        return m;
+    }
+
+    @Benchmark
+    public SharedMatrix loadColumnMajor() {
+        SharedMatrix m = new SharedMatrix();
+        m.loadColumnMajor(data);
+        return m;
+    }
+
+    @Benchmark
+    public double[][] readRowMajorFromRows() {
+        return rowMajor.readRowMajor();
+    }
+
+    @Benchmark
+    public double[][] readRowMajorFromColumns() {
+        return columnMajor.readRowMajor();
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import memory.SharedMatrix;
+import memory.SharedVector;
+import memory.VectorOrientation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The element-wise SharedVector kernels, and vecMatMul against both matrix orientations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class SharedVectorBenchmark {
+
+    @Param({"1024", "65536"})
+    public int length;
+
+    @Param({"512"})
+    public int matrixSize;
+
+    private SharedVector left;
+    private SharedVector right;
+    private SharedVector row;
+    private SharedMatrix rowMajor;
+    private SharedMatrix columnMajor;
+
+    @Setup
+    public void setUp() {
+        double[][] data = Matrices.random(2, length, 1);
+        left = new SharedVector(data[0], VectorOrientation.ROW_MAJOR);
+        right = new SharedVector(data[1], VectorOrientation.ROW_MAJOR);
+        row = new SharedVector(Matrices.random(1, matrixSize, 2)[0], VectorOrientation.ROW_MAJOR);
+        double[][] shift = Matrices.permutation(matrixSize);
+        rowMajor = new SharedMatrix(shift);
+        columnMajor = new SharedMatrix();
+        columnMajor.loadColumnMajor(shift);
+    }
+
+    @Benchmark
+    public SharedVector add() {
+        left.add(right);
+        return left;
+    }
+
+    @Benchmark
+    public SharedVector negate() {
+        left.negate();
+        return left;
+    }
+
+    @Benchmark
+    public double dot() {
+        return left.dot(right);
+    }
+
+    @Benchmark
+    public SharedVector vecMatMulRowMajor() {
+        row.vecMatMul(rowMajor);
+        return row;
+    }
+
+    @Benchmark
+    public SharedVector vecMatMulColumnMajor() {
+        row.vecMatMul(columnMajor);
+        return row;
+    }
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import scheduling.TiredExecutor;
+
+/**
+ * Scheduling overhead of TiredExecutor: batches of near-empty tasks, so the time is
+ * dominated by handing tasks to workers and waiting for them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class TiredExecutorBenchmark {
+
+    @Param({"16", "1024"})
+    public int tasks;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean workStealing;
+
+    private TiredExecutor executor;
+    private List<Runnable> batch;
+
+    @Setup
+    public void setUp() {
+        executor = new TiredExecutor(threads, workStealing);
+        batch = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            batch.add(() -> Blackhole.consumeCPU(10));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public void submitAll() {
+        executor.submitAll(batch);
+    }
+
+    @Benchmark
+    public void submitEach() {
+        for (Runnable task : batch) {
+            executor.submit(task);
+        }
+        // An empty batch waits for everything submitted before it
+        executor.submitAll(List.of());
+    }
+}
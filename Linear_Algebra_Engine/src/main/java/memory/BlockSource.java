@@ -0,0 +1,42 @@
+package memory;
+
+/**
+ * A matrix that can be read one rectangular block at a time, wherever it is stored.
+ * Out-of-core kernels only ever hold a few such blocks in memory.
+ */
+public interface BlockSource {
+
+    int rows();
+
+    int cols();
+
+    /**
+     * Copies rows [rowStart, rowEnd) x columns [colStart, colEnd) into dst, row-major.
+     */
+    void readBlock(int rowStart, int rowEnd, int colStart, int colEnd, double[] dst);
+
+    /**
+     * A source over an on-heap matrix.
+     */
+    static BlockSource of(double[][] matrix) {
+        return new BlockSource() {
+            @Override
+            public int rows() {
+                return matrix.length;
+            }
+
+            @Override
+            public int cols() {
+                return matrix.length == 0 ? 0 : matrix[0].length;
+            }
+
+            @Override
+            public void readBlock(int rowStart, int rowEnd, int colStart, int colEnd, double[] dst) {
+                int width = colEnd - colStart;
+                for (int i = rowStart; i < rowEnd; i++) {
+                    System.arraycopy(matrix[i], colStart, dst, (i - rowStart) * width, width);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,108 @@
+package memory;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Free flat arrays kept for reuse, so the storage of an intermediate matrix whose last reader has
+ * finished backs the next matrix of about the same size instead of being left to the garbage collector.
+ * A request is served by the shortest free array that is long enough and at most a quarter longer.
+ * At most maxBytes of free arrays are kept; beyond that the largest ones are dropped.
+ * Arrays are handed out with whatever contents they had. Thread-safe.
+ */
+public class BufferPool {
+
+    // A free array serves requests down to 4/5 of its length
+    private static final int SLACK_DIVISOR = 4;
+
+    private final TreeMap<Integer, ArrayDeque<double[]>> free = new TreeMap<>();
+    private final Set<double[]> freeSet = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long maxBytes;
+    private long bytes = 0;
+    private long allocations = 0;
+    private long reuses = 0;
+
+    public BufferPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * An array of at least length elements, reused if a free one fits.
+     */
+    public double[] acquire(int length) {
+        synchronized (this) {
+            Map.Entry<Integer, ArrayDeque<double[]>> fit = free.ceilingEntry(length);
+            if (fit != null && fit.getKey() <= length + length / SLACK_DIVISOR) {
+                double[] buffer = take(fit.getKey(), fit.getValue());
+                reuses++;
+                return buffer;
+            }
+            allocations++;
+        }
+        return new double[length];
+    }
+
+    /**
+     * Gives an array back; nothing may use it afterwards. Releasing an array that is already free has no effect.
+     */
+    public synchronized void release(double[] buffer) {
+        long size = 8L * buffer.length;
+        if (buffer.length == 0 || size > maxBytes || !freeSet.add(buffer)) {
+            return;
+        }
+        free.computeIfAbsent(buffer.length, k -> new ArrayDeque<>()).push(buffer);
+        bytes += size;
+        trimTo(maxBytes);
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimTo(maxBytes);
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Bytes of the free arrays currently kept.
+     */
+    public synchronized long getFreeBytes() {
+        return bytes;
+    }
+
+    /**
+     * Requests that needed a new array.
+     */
+    public synchronized long getAllocations() {
+        return allocations;
+    }
+
+    /**
+     * Requests served by a free array.
+     */
+    public synchronized long getReuses() {
+        return reuses;
+    }
+
+    private double[] take(int length, ArrayDeque<double[]> arrays) {
+        double[] buffer = arrays.pop();
+        if (arrays.isEmpty()) {
+            free.remove(length);
+        }
+        freeSet.remove(buffer);
+        bytes -= 8L * buffer.length;
+        return buffer;
+    }
+
+    private void trimTo(long limit) {
+        while (bytes > limit && !free.isEmpty()) {
+            Map.Entry<Integer, ArrayDeque<double[]>> largest = free.lastEntry();
+            take(largest.getKey(), largest.getValue());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package memory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A row-major matrix of little-endian doubles kept in a file instead of on the heap.
+ * Blocks are accessed through short-lived memory mappings of the rows they cover, so only the
+ * pages actually touched are brought in and the operating system pages them back out under
+ * memory pressure. Several threads may read and write disjoint blocks concurrently.
+ * Either a temporary spill file owned by this matrix, or a read-only view of a region of an
+ * existing file such as a MatrixFile.
+ */
+public class DiskMatrix implements BlockSource, Closeable {
+
+    // A single mapping cannot exceed 2GB; larger blocks are mapped row by row
+    private static final long MAX_WINDOW_BYTES = 1L << 30;
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final FileChannel channel;
+    private final Path path;
+    private final long dataOffset;
+    private final int rows;
+    private final int cols;
+    private final boolean temporary;
+    private final long id = NEXT_ID.incrementAndGet();
+
+    private DiskMatrix(FileChannel channel, Path path, long dataOffset, int rows, int cols, boolean temporary) {
+        this.channel = channel;
+        this.path = path;
+        this.dataOffset = dataOffset;
+        this.rows = rows;
+        this.cols = cols;
+        this.temporary = temporary;
+    }
+
+    /**
+     * Creates a zero-filled matrix in a new temporary file of directory, deleted again by close().
+     */
+    public static DiskMatrix create(Path directory, int rows, int cols) throws IOException {
+        if (rows < 0 || cols < 0) {
+            throw new IllegalArgumentException("Invalid matrix size " + rows + "x" + cols);
+        }
+        Path file = Files.createTempFile(directory, "lae-spill-", ".bin");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Extending the file leaves a sparse, zero-filled region
+            long size = 8L * rows * cols;
+            if (size > 0) {
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new DiskMatrix(channel, file, 0, rows, cols, true);
+    }
+
+    /**
+     * A read-only view of rows x cols doubles stored at dataOffset of an existing file.
+     */
+    public static DiskMatrix open(Path file, long dataOffset, int rows, int cols) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        if (dataOffset < 0 || dataOffset + 8L * rows * cols > channel.size()) {
+            channel.close();
+            throw new IOException("Matrix region exceeds the end of " + file);
+        }
+        return new DiskMatrix(channel, file, dataOffset, rows, cols, false);
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    public long byteSize() {
+        return 8L * rows * cols;
+    }
+
+    /**
+     * Whether this matrix owns a spill file that close() deletes.
+     */
+    public boolean isTemporary() {
+        return temporary;
+    }
+
+    /**
+     * Unique within the JVM; identifies the storage rather than its content.
+     */
+    public long id() {
+        return id;
+    }
+
+    @Override
+    public void readBlock(int rowStart, int rowEnd, int colStart, int colEnd, double[] dst) {
+        int width = colEnd - colStart;
+        transfer(rowStart, rowEnd, FileChannel.MapMode.READ_ONLY, (buffer, i, base) -> {
+            buffer.position(base + colStart);
+            buffer.get(dst, (i - rowStart) * width, width);
+        });
+    }
+
+    /**
+     * Copies src, row-major, into rows [rowStart, rowEnd) x columns [colStart, colEnd).
+     */
+    public void writeBlock(int rowStart, int rowEnd, int colStart, int colEnd, double[] src) {
+        if (!temporary) {
+            throw new IllegalStateException("Matrix view of " + path + " is read-only");
+        }
+        int width = colEnd - colStart;
+        transfer(rowStart, rowEnd, FileChannel.MapMode.READ_WRITE, (buffer, i, base) -> {
+            buffer.position(base + colStart);
+            buffer.put(src, (i - rowStart) * width, width);
+        });
+    }
+
+    public double[] readRow(int row, double[] dst) {
+        readBlock(row, row + 1, 0, cols, dst);
+        return dst;
+    }
+
+    /**
+     * Loads the whole matrix onto the heap.
+     */
+    public double[][] toArray() {
+        double[][] matrix = new double[rows][];
+        for (int i = 0; i < rows; i++) {
+            matrix[i] = readRow(i, new double[cols]);
+        }
+        return matrix;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (temporary) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private interface RowAccess {
+        // base: index of the row's first element in buffer
+        void apply(DoubleBuffer buffer, int row, int base);
+    }
+
+    // Maps rows [rowStart, rowEnd) in as few windows as possible and hands every row to access
+    private void transfer(int rowStart, int rowEnd, FileChannel.MapMode mode, RowAccess access) {
+        if (rowStart < 0 || rowEnd > rows || rowStart > rowEnd) {
+            throw new IndexOutOfBoundsException("Rows " + rowStart + ".." + rowEnd + " of a matrix with " + rows + " rows");
+        }
+        long rowBytes = 8L * cols;
+        int rowsPerWindow = (int) Math.max(1, Math.min(Integer.MAX_VALUE, MAX_WINDOW_BYTES / Math.max(1, rowBytes)));
+        try {
+            for (int start = rowStart; start < rowEnd; start += rowsPerWindow) {
+                int count = Math.min(rowsPerWindow, rowEnd - start);
+                DoubleBuffer window = channel.map(mode, dataOffset + start * rowBytes, count * rowBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                for (int i = 0; i < count; i++) {
+                    access.apply(window, start + i, i * cols);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to access " + path, e);
+        }
+    }
+}
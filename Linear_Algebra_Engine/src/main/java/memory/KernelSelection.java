@@ -0,0 +1,22 @@
+package memory;
+
+// Picks the VectorKernels implementation once, on first use
+final class KernelSelection {
+
+    static final VectorKernels INSTANCE = select();
+
+    private KernelSelection() {}
+
+    private static VectorKernels select() {
+        boolean vectorModule = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        if (vectorModule && !"scalar".equals(System.getProperty("lae.kernels"))) {
+            try {
+                // Loaded reflectively: the class cannot even be linked without the incubator module
+                return (VectorKernels) Class.forName("memory.SimdKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // fall through to the scalar kernels
+            }
+        }
+        return new ScalarKernels();
+    }
+}
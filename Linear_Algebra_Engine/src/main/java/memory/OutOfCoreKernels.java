@@ -0,0 +1,113 @@
+package memory;
+
+/**
+ * Kernels over operands that do not fit on the heap. Every call computes one output tile of at
+ * most BLOCK x BLOCK elements of a DiskMatrix and holds only a few such blocks in memory, so the
+ * heap needed per worker is a few megabytes whatever the size of the matrices.
+ */
+public class OutOfCoreKernels {
+
+    public static final int BLOCK = 512;
+
+    private OutOfCoreKernels() {}
+
+    /**
+     * out[tile] = sum over terms of (+/-) inputs[t] or its transpose. Covers ADD (two plain terms),
+     * NEGATE (one negated term), TRANSPOSE (one transposed term) and fused chains of them.
+     */
+    public static void sumTile(BlockSource[] inputs, boolean[] negated, boolean[] transposed, DiskMatrix out,
+                               int rowStart, int rowEnd, int colStart, int colEnd) {
+        int tileRows = rowEnd - rowStart;
+        int tileCols = colEnd - colStart;
+        double[] acc = new double[tileRows * tileCols];
+        double[] block = new double[tileRows * tileCols];
+        for (int t = 0; t < inputs.length; t++) {
+            double sign = negated[t] ? -1.0 : 1.0;
+            if (!transposed[t]) {
+                inputs[t].readBlock(rowStart, rowEnd, colStart, colEnd, block);
+                for (int idx = 0; idx < acc.length; idx++) {
+                    acc[idx] += sign * block[idx];
+                }
+            } else {
+                // Element (i, j) of the tile is element (j, i) of the input block
+                inputs[t].readBlock(colStart, colEnd, rowStart, rowEnd, block);
+                for (int j = 0; j < tileCols; j++) {
+                    int src = j * tileRows;
+                    for (int i = 0; i < tileRows; i++) {
+                        acc[i * tileCols + j] += sign * block[src + i];
+                    }
+                }
+            }
+        }
+        out.writeBlock(rowStart, rowEnd, colStart, colEnd, acc);
+    }
+
+    /**
+     * out[tile] = left * right, streaming BLOCK-deep panels of both operands through TiledGemm.
+     */
+    public static void multiplyTile(BlockSource left, BlockSource right, DiskMatrix out,
+                                    int rowStart, int rowEnd, int colStart, int colEnd) {
+        int tileRows = rowEnd - rowStart;
+        int tileCols = colEnd - colStart;
+        int depth = left.cols();
+        double[] acc = new double[tileRows * tileCols];
+        SharedMatrix a = new SharedMatrix();
+        SharedMatrix b = new SharedMatrix();
+        for (int p0 = 0; p0 < depth; p0 += BLOCK) {
+            int p1 = Math.min(depth, p0 + BLOCK);
+            double[] panelA = new double[tileRows * (p1 - p0)];
+            double[] panelB = new double[(p1 - p0) * tileCols];
+            left.readBlock(rowStart, rowEnd, p0, p1, panelA);
+            right.readBlock(p0, p1, colStart, colEnd, panelB);
+            a.loadRowMajor(panelA, tileRows, p1 - p0);
+            b.loadRowMajor(panelB, p1 - p0, tileCols);
+            TiledGemm gemm = new TiledGemm(a, b);
+            gemm.computeTile(0, tileRows, 0, tileCols);
+            double[] partial = gemm.result();
+            for (int idx = 0; idx < acc.length; idx++) {
+                acc[idx] += partial[idx];
+            }
+        }
+        out.writeBlock(rowStart, rowEnd, colStart, colEnd, acc);
+    }
+
+    /**
+     * out[tile] = source * source^T for a tile on or above the diagonal. A tile entirely above it is
+     * also written, transposed, to its mirror below the diagonal, so only those tiles need computing.
+     */
+    public static void symmetricTile(BlockSource source, DiskMatrix out,
+                                     int rowStart, int rowEnd, int colStart, int colEnd) {
+        int tileRows = rowEnd - rowStart;
+        int tileCols = colEnd - colStart;
+        int depth = source.cols();
+        double[] acc = new double[tileRows * tileCols];
+        SharedMatrix a = new SharedMatrix();
+        SharedMatrix b = new SharedMatrix();
+        for (int p0 = 0; p0 < depth; p0 += BLOCK) {
+            int p1 = Math.min(depth, p0 + BLOCK);
+            double[] panelA = new double[tileRows * (p1 - p0)];
+            double[] panelB = new double[tileCols * (p1 - p0)];
+            source.readBlock(rowStart, rowEnd, p0, p1, panelA);
+            // Rows [colStart, colEnd) of the source are columns of its transpose
+            source.readBlock(colStart, colEnd, p0, p1, panelB);
+            a.loadRowMajor(panelA, tileRows, p1 - p0);
+            b.loadRowMajor(panelB, tileCols, p1 - p0);
+            TiledGemm gemm = new TiledGemm(a, b.transposedView());
+            gemm.computeTile(0, tileRows, 0, tileCols);
+            double[] partial = gemm.result();
+            for (int idx = 0; idx < acc.length; idx++) {
+                acc[idx] += partial[idx];
+            }
+        }
+        out.writeBlock(rowStart, rowEnd, colStart, colEnd, acc);
+        if (colStart >= rowEnd) {
+            double[] mirrored = new double[acc.length];
+            for (int i = 0; i < tileRows; i++) {
+                for (int j = 0; j < tileCols; j++) {
+                    mirrored[j * tileRows + i] = acc[i * tileCols + j];
+                }
+            }
+            out.writeBlock(colStart, colEnd, rowStart, rowEnd, mirrored);
+        }
+    }
+}
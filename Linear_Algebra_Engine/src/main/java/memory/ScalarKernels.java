@@ -0,0 +1,42 @@
+package memory;
+
+/**
+ * Plain loops, used when the Vector API is not available.
+ */
+class ScalarKernels implements VectorKernels {
+
+    @Override
+    public void add(double[] dst, int dstOffset, double[] src, int srcOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] += src[srcOffset + i];
+        }
+    }
+
+    @Override
+    public void negate(double[] a, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            a[i] = -a[i];
+        }
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -17,6 +17,13 @@ public class SharedMatrix {
     }
 
     public void loadRowMajor(double[][] matrix) {
+        loadRowMajor(matrix, null);
+    }
+
+    /**
+     * Like loadRowMajor(matrix), with the flat storage taken from pool when one is given.
+     */
+    public void loadRowMajor(double[][] matrix, BufferPool pool) {
         // TODO: replace internal data with new row-major matrix
 
         if(matrix==null || matrix.length==0){
@@ -24,13 +31,28 @@ public class SharedMatrix {
             return;
         }
 
-        this.orientation = VectorOrientation.ROW_MAJOR;
-        this.vectors = new SharedVector[matrix.length];
+        int rows = matrix.length;
+        int cols = matrix[0].length;
+        double[] flat = allocate(rows, cols, pool);
+
+        for(int i=0 ;i<rows ;i++){
+            if (matrix[i].length != cols) {
+                throw new IllegalArgumentException("Inconsistent row sizes in matrix: row " + i + " has " + matrix[i].length + " elements, expected " + cols);
+            }
+            System.arraycopy(matrix[i], 0, flat, i * cols, cols);
+        }
+        wrap(flat, rows, cols, VectorOrientation.ROW_MAJOR);
+    }
 
-        for(int i=0 ;i<matrix.length ;i++){
-            // יצירת וקטורים כאשר כל וקטור מייצג שורה
-            this.vectors[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR);
+    /**
+     * Replaces internal data with a row-major matrix that is already laid out contiguously:
+     * element (i, j) is {@code flat[i * cols + j]}. The array is adopted, not copied.
+     */
+    public void loadRowMajor(double[] flat, int rows, int cols) {
+        if (flat.length < (long) rows * cols) {
+            throw new IllegalArgumentException("Buffer of length " + flat.length + " is too small for a " + rows + "x" + cols + " matrix");
         }
+        wrap(flat, rows, cols, VectorOrientation.ROW_MAJOR);
     }
 
     public void loadColumnMajor(double[][] matrix) {
@@ -41,24 +63,59 @@ public class SharedMatrix {
             return;
         }
 
-        this.orientation = VectorOrientation.COLUMN_MAJOR;
         int rows = matrix.length;
         int cols = matrix[0].length;
-
-        this.vectors = new SharedVector[cols];
+        double[] flat = allocate(rows, cols, null);
 
         // טרנספוזיציה: הופכים עמודות לשורות בזיכרון
         // כדי שכל SharedVector יחזיק עמודה אחת שלמה
+        // (all columns share one flat array, column j starts at j * rows)
 
-        for(int j=0; j<cols ;j++){
-            double[] columnData = new double[rows];
-            for(int i=0; i< rows ;i++){
-                columnData[i]= matrix[i][j];
+        for(int i=0; i< rows ;i++){
+            double[] row = matrix[i];
+            if (row.length != cols) {
+                throw new IllegalArgumentException("Inconsistent row sizes in matrix: row " + i + " has " + row.length + " elements, expected " + cols);
+            }
+            for(int j=0; j<cols ;j++){
+                flat[j * rows + i] = row[j];
             }
-            this.vectors[j] = new SharedVector(columnData, VectorOrientation.COLUMN_MAJOR);
         }
+        wrap(flat, cols, rows, VectorOrientation.COLUMN_MAJOR);
+    }
+
+    private static double[] allocate(int rows, int cols, BufferPool pool) {
+        long size = (long) rows * cols;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Matrix of " + rows + "x" + cols + " exceeds the maximal contiguous storage size");
+        }
+        return pool == null ? new double[(int) size] : pool.acquire((int) size);
+    }
+
+    /**
+     * Gives the storage back to pool and leaves this matrix empty. Only for storage that no
+     * other matrix reads any more, transposed views of this one included.
+     */
+    public void releaseTo(BufferPool pool) {
+        SharedVector[] vecs = vectors;
+        this.vectors = new SharedVector[0];
+        if (vecs.length > 0 && vecs[vecs.length - 1].storage() == vecs[0].storage()) {
+            pool.release(vecs[0].storage());
+        }
+    }
+
+    // Builds numVectors views of length vectorLength over consecutive ranges of flat
+    private void wrap(double[] flat, int numVectors, int vectorLength, VectorOrientation orientation) {
+        wrap(flat, 0, numVectors, vectorLength, orientation);
     }
 
+    private void wrap(double[] flat, int offset, int numVectors, int vectorLength, VectorOrientation orientation) {
+        SharedVector[] views = new SharedVector[numVectors];
+        for (int v = 0; v < numVectors; v++) {
+            views[v] = new SharedVector(flat, offset + v * vectorLength, vectorLength, orientation);
+        }
+        this.orientation = orientation;
+        this.vectors = views;
+    }
 
     // בתוך SharedMatrix.java
 public double[][] readRowMajor() {
@@ -89,14 +146,20 @@ public double[][] readRowMajor() {
             // הלוגיקה כאן הופכת את הנתונים פיזית כדי להחזיר מערך דו-ממדי תקין
             cols = vectors.length;
             rows = vectors[0].length(); // אורך הוקטור הוא מספר השורות המקורי
-            result = new double[rows][cols];
+            double[][] out = new double[rows][cols];
+            SharedVector[] columns = vectors;
 
-            for (int j = 0; j < cols; j++) {
-                double[] colData = vectors[j].getValues();
-                for (int i = 0; i < rows; i++) {
-                    result[i][j] = colData[i];
+            // Read locks are already held, so the columns are read straight from their storage
+            forEachBlock(0, rows, 0, cols, (r0, r1, c0, c1) -> {
+                for (int j = c0; j < c1; j++) {
+                    double[] colData = columns[j].storage();
+                    int base = columns[j].offset();
+                    for (int i = r0; i < r1; i++) {
+                        out[i][j] = colData[base + i];
+                    }
                 }
-            }
+            });
+            result = out;
         }
         return result;
 
@@ -105,6 +168,171 @@ public double[][] readRowMajor() {
     }
 }
 
+    /**
+     * Describes the current contents as a strided view over one flat array.
+     * When the vectors are still consecutive views of the same storage (the usual case
+     * after a load) no data is copied; otherwise the matrix is first read into a fresh array.
+     */
+    public StridedLayout layout() {
+        SharedVector[] vecs = vectors;
+        if (vecs.length == 0) {
+            return new StridedLayout(new double[0], 0, 0, 0, 0, 0);
+        }
+        acquireAllVectorReadLocks(vecs);
+        try {
+            double[] storage = vecs[0].storage();
+            int base = vecs[0].offset();
+            int len = vecs[0].length();
+            VectorOrientation vecOrientation = vecs[0].getOrientation();
+            boolean contiguous = true;
+            for (int v = 1; v < vecs.length && contiguous; v++) {
+                contiguous = vecs[v].storage() == storage
+                        && vecs[v].offset() == base + v * len
+                        && vecs[v].length() == len
+                        && vecs[v].getOrientation() == vecOrientation;
+            }
+            if (contiguous) {
+                if (vecOrientation == VectorOrientation.ROW_MAJOR) {
+                    return new StridedLayout(storage, base, vecs.length, len, len, 1);
+                }
+                return new StridedLayout(storage, base, len, vecs.length, 1, len);
+            }
+        } finally {
+            releaseAllVectorReadLocks(vecs);
+        }
+        double[][] rowsCopy = readRowMajor();
+        int cols = rowsCopy.length == 0 ? 0 : rowsCopy[0].length;
+        double[] flat = allocate(rowsCopy.length, cols, null);
+        for (int i = 0; i < rowsCopy.length; i++) {
+            System.arraycopy(rowsCopy[i], 0, flat, i * cols, cols);
+        }
+        return new StridedLayout(flat, 0, rowsCopy.length, cols, cols, 1);
+    }
+
+    /**
+     * A private copy with the same orientation, for kernels that work in place on an operand that
+     * others still read. The storage is copied as it is laid out, so this is a sequential copy.
+     */
+    public SharedMatrix copy() {
+        return copy(getOrientation(), null);
+    }
+
+    /**
+     * A private copy whose vectors have the given orientation. Only when that differs from the
+     * current one are the elements physically transposed, in cache-sized blocks.
+     */
+    public SharedMatrix copy(VectorOrientation target) {
+        return copy(target, null);
+    }
+
+    /**
+     * Like copy(target), with the storage taken from pool when one is given.
+     */
+    public SharedMatrix copy(VectorOrientation target, BufferPool pool) {
+        StridedLayout m = layout();
+        double[] flat = allocate(m.rows, m.cols, pool);
+        SharedMatrix copy = new SharedMatrix();
+        if (target == VectorOrientation.ROW_MAJOR) {
+            copyInto(m, flat, m.cols, 1);
+            copy.wrap(flat, m.rows, m.cols, VectorOrientation.ROW_MAJOR);
+        } else {
+            copyInto(m, flat, 1, m.rows);
+            copy.wrap(flat, m.cols, m.rows, VectorOrientation.COLUMN_MAJOR);
+        }
+        return copy;
+    }
+
+    /**
+     * The transpose as a view: new vectors over the same storage with the opposite orientation,
+     * so nothing is copied. Kernels read it through its strides; both matrices must be left unmodified.
+     */
+    public SharedMatrix transposedView() {
+        StridedLayout m = layout();
+        SharedMatrix view = new SharedMatrix();
+        if (m.colStride == 1) {
+            // Rows of m become the columns of the view
+            view.wrap(m.data, m.offset, m.rows, m.cols, VectorOrientation.COLUMN_MAJOR);
+        } else {
+            view.wrap(m.data, m.offset, m.cols, m.rows, VectorOrientation.ROW_MAJOR);
+        }
+        return view;
+    }
+
+    // Copies m into dst, where element (i, j) goes to dst[i * rowStride + j * colStride]
+    private static void copyInto(StridedLayout m, double[] dst, int rowStride, int colStride) {
+        if (m.rowStride == rowStride && m.colStride == colStride) {
+            System.arraycopy(m.data, m.offset, dst, 0, m.rows * m.cols);
+            return;
+        }
+        forEachBlock(0, m.rows, 0, m.cols, (r0, r1, c0, c1) -> {
+            for (int i = r0; i < r1; i++) {
+                for (int j = c0; j < c1; j++) {
+                    dst[i * rowStride + j * colStride] = m.get(i, j);
+                }
+            }
+        });
+    }
+
+    private interface BlockVisitor {
+        void visit(int rowStart, int rowEnd, int colStart, int colEnd);
+    }
+
+    // Largest block visited as a whole; its source and destination lines both stay in L1
+    private static final int TRANSPOSE_BLOCK_ELEMENTS = 32 * 32;
+
+    // Cache-oblivious traversal: halves the longer side until a block is small, so a strided
+    // copy touches every cache line of the source and of the destination only once at any cache size
+    private static void forEachBlock(int rowStart, int rowEnd, int colStart, int colEnd, BlockVisitor visitor) {
+        int rows = rowEnd - rowStart;
+        int cols = colEnd - colStart;
+        if ((long) rows * cols <= TRANSPOSE_BLOCK_ELEMENTS) {
+            visitor.visit(rowStart, rowEnd, colStart, colEnd);
+        } else if (rows >= cols) {
+            int mid = rowStart + rows / 2;
+            forEachBlock(rowStart, mid, colStart, colEnd, visitor);
+            forEachBlock(mid, rowEnd, colStart, colEnd, visitor);
+        } else {
+            int mid = colStart + cols / 2;
+            forEachBlock(rowStart, rowEnd, colStart, mid, visitor);
+            forEachBlock(rowStart, rowEnd, mid, colEnd, visitor);
+        }
+    }
+
+    /**
+     * Writes row i into dst, which must have cols() elements, whatever the orientation of the vectors.
+     */
+    public double[] readRow(int i, double[] dst) {
+        SharedVector[] vecs = vectors;
+        if (getOrientation() == VectorOrientation.ROW_MAJOR) {
+            SharedVector row = vecs[i];
+            row.readLock();
+            try {
+                System.arraycopy(row.storage(), row.offset(), dst, 0, row.length());
+            } finally {
+                row.readUnlock();
+            }
+        } else {
+            for (int j = 0; j < vecs.length; j++) {
+                dst[j] = vecs[j].get(i);
+            }
+        }
+        return dst;
+    }
+
+    public int rows() {
+        if (vectors.length == 0) {
+            return 0;
+        }
+        return getOrientation() == VectorOrientation.ROW_MAJOR ? vectors.length : vectors[0].length();
+    }
+
+    public int cols() {
+        if (vectors.length == 0) {
+            return 0;
+        }
+        return getOrientation() == VectorOrientation.ROW_MAJOR ? vectors[0].length() : vectors.length;
+    }
+
     public SharedVector get(int index) {
         // TODO: return vector at index
         return vectors[index];
@@ -117,7 +345,9 @@ public double[][] readRowMajor() {
 
     public VectorOrientation getOrientation() {
         // TODO: return orientation
-        return this.orientation;
+        // Transposing flips the vectors one by one, so they, not the field, tell the current orientation
+        SharedVector[] vecs = vectors;
+        return vecs.length == 0 ? this.orientation : vecs[0].getOrientation();
     }
 
     private void acquireAllVectorReadLocks(SharedVector[] vecs) {
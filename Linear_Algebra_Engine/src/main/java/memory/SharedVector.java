@@ -1,16 +1,34 @@
 package memory;
 
+import java.util.Arrays;
 import java.util.concurrent.locks.ReadWriteLock;
 
 public class SharedVector {
 
-    private double[] vector;
+    private double[] vector; // backing storage, possibly shared with the other vectors of a SharedMatrix
+    private int offset; // index of this vector's first element inside the backing storage
+    private int length; // number of elements this vector spans
     private VectorOrientation orientation;
+    private static final VectorKernels KERNELS = VectorKernels.get();
+
     private ReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
 
     public SharedVector(double[] vector, VectorOrientation orientation) {
-        this.vector=vector;
-        this.orientation=orientation;
+        this(vector, 0, vector.length, orientation);
+    }
+
+    /**
+     * Creates a view over {@code length} contiguous elements of {@code storage}, starting at {@code offset}.
+     * Used by SharedMatrix so that all of its vectors live inside one flat array.
+     */
+    SharedVector(double[] storage, int offset, int length, VectorOrientation orientation) {
+        if (offset < 0 || length < 0 || offset + length > storage.length) {
+            throw new IndexOutOfBoundsException("View [" + offset + ", " + (offset + length) + ") out of bounds for storage length " + storage.length);
+        }
+        this.vector = storage;
+        this.offset = offset;
+        this.length = length;
+        this.orientation = orientation;
     }
 
     public double get(int index) {
@@ -18,10 +36,10 @@ public class SharedVector {
         readLock();
 
         try{
-            if(index<0 || index >= vector.length){
-                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for vector length " + vector.length);
+            if(index<0 || index >= length){
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for vector length " + length);
             }
-            return vector[index];
+            return vector[offset + index];
         }
         finally{
             readUnlock();
@@ -32,7 +50,7 @@ public class SharedVector {
         // TODO: return vector length
         readLock();
         try{
-            return vector.length;
+            return length;
         }
         finally{
             readUnlock();
@@ -92,9 +110,22 @@ public class SharedVector {
         writeLock();
         other.readLock();
         try{
-            for(int i =0 ;i<this.vector.length ;i++){
-                this.vector[i] += other.get(i);
-            }
+            // Both locks are held, so the raw arrays can be read without locking every element
+            KERNELS.add(this.vector, offset, other.vector, other.offset, length);
+        } finally{
+            other.readUnlock();
+            writeUnlock();
+        }
+    }
+
+    public void subtract(SharedVector other) {
+        if (this.length() != other.length()) {
+            throw new IllegalArgumentException("Vector length mismatch: " + this.length() + " != " + other.length());
+        }
+        writeLock();
+        other.readLock();
+        try{
+            KERNELS.axpy(-1.0, other.vector, other.offset, this.vector, offset, length);
         } finally{
             other.readUnlock();
             writeUnlock();
@@ -105,9 +136,7 @@ public class SharedVector {
         // TODO: negate vector
         writeLock();
         try{
-            for(int i=0 ; i<vector.length ; i++){
-                vector[i]= -vector[i];
-            }
+            KERNELS.negate(vector, offset, length);
         }finally{
             writeUnlock();
         }
@@ -121,11 +150,7 @@ public class SharedVector {
         readLock();
         other.readLock();
         try{
-            double sum =0 ;
-            for(int i=0 ; i<vector.length ; i++){
-                sum += this.vector[i] * other.get(i);
-            }
-            return sum;
+            return KERNELS.dot(this.vector, offset, other.vector, other.offset, length);
         }finally{
             other.readUnlock();
             readUnlock();
@@ -148,7 +173,7 @@ public class SharedVector {
                 result = new double[cols];
 
                 // בדיקת תקינות מימדים בסיסית
-                if (cols > 0 && this.vector.length != matrix.get(0).length()) {
+                if (cols > 0 && this.length != matrix.get(0).length()) {
                      throw new IllegalArgumentException("Dimension mismatch: Vector length must match Matrix rows");
                 }
 
@@ -165,30 +190,36 @@ public class SharedVector {
                 int rows = matrixLen;
                 int cols = matrix.get(0).length();
                 
-                if (this.vector.length != rows) {
+                if (this.length != rows) {
                     throw new IllegalArgumentException("Dimension mismatch...");
                 }
 
                 result = new double[cols];
 
                 for (int i = 0; i < rows; i++) {
-                    double scalar = this.vector[i]; 
+                    double scalar = this.vector[offset + i]; 
                     SharedVector rowVec = matrix.get(i);
                     
-                    // --- השיפור הגדול: שליפה חד-פעמית ---
-                    // במקום לגשת לתאים בודדים ולנעול כל פעם,
-                    // אנחנו מעתיקים את השורה למערך מקומי בפעולה אטומית אחת.
-                    double[] rowData = rowVec.getValues(); 
-                    
-                    // עכשיו הלולאה הפנימית היא מתמטיקה טהורה ומהירה מאוד (בלי נעילות)
-                    for (int j = 0; j < cols; j++) {
-                        result[j] += scalar * rowData[j];
+                    // One read lock per row, and the row is accumulated straight from its storage without a copy
+                    rowVec.readLock();
+                    try {
+                        KERNELS.axpy(scalar, rowVec.vector, rowVec.offset, result, 0, cols);
+                    } finally {
+                        rowVec.readUnlock();
                     }
                 }
             }
 
             // עדכון הוקטור הפנימי לתוצאה החדשה
-            this.vector = result;
+            if (result.length == this.length) {
+                // Same shape: write back into the shared backing storage so the matrix stays contiguous
+                System.arraycopy(result, 0, this.vector, offset, result.length);
+            } else {
+                // The result no longer fits the view, so this vector detaches into its own array
+                this.vector = result;
+                this.offset = 0;
+                this.length = result.length;
+            }
             
         } finally {
             writeUnlock();
@@ -198,12 +229,21 @@ public class SharedVector {
 
 
 
+    // Raw access for SharedMatrix; callers must hold this vector's lock
+    double[] storage() {
+        return vector;
+    }
+
+    int offset() {
+        return offset;
+    }
+
     // פונקציית עזר שהוספנו כדי שהמטריצה תוכל לקבל את המידע הגולמי
     // (נדרש עבור SharedMatrix.readRowMajor)
     public double[] getValues(){
         readLock();
         try{
-            return vector.clone();
+            return Arrays.copyOfRange(vector, offset, offset + length);
         }
         finally{
             readUnlock();
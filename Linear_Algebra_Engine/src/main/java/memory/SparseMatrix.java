@@ -0,0 +1,276 @@
+package memory;
+
+import java.util.Arrays;
+
+/**
+ * An immutable matrix in compressed sparse row (CSR) form: the non-zeros of row i are
+ * values[rowPtr[i]..rowPtr[i+1]), in increasing column order colIdx[...].
+ * Used for operands that are mostly zeros, where it saves both memory and the work of
+ * multiplying or adding zeros. The column-compressed (CSC) form of a matrix is the CSR form
+ * of its transpose, so transpose() doubles as the CSR to CSC conversion.
+ */
+public class SparseMatrix implements BlockSource {
+
+    // Parsed matrices at most this dense are stored sparse
+    public static final double MAX_SPARSE_DENSITY = 0.1;
+    // Sparse results denser than this are converted to dense ones; the gap avoids flip-flopping
+    public static final double DENSIFY_DENSITY = 0.3;
+    // Smaller matrices are always dense, the bookkeeping would cost more than it saves
+    public static final long MIN_SPARSE_ELEMENTS = 1024;
+
+    private final int rows;
+    private final int cols;
+    private final int[] rowPtr;
+    private final int[] colIdx;
+    private final double[] values;
+
+    public SparseMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) {
+        if (rowPtr.length != rows + 1 || colIdx.length < rowPtr[rows] || values.length < rowPtr[rows]) {
+            throw new IllegalArgumentException("Inconsistent CSR arrays for a " + rows + "x" + cols + " matrix");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+    }
+
+    public static SparseMatrix fromDense(double[][] matrix) {
+        int rows = matrix.length;
+        int cols = rows == 0 ? 0 : matrix[0].length;
+        int nnz = 0;
+        for (double[] row : matrix) {
+            for (double value : row) {
+                if (value != 0.0) {
+                    nnz++;
+                }
+            }
+        }
+        int[] rowPtr = new int[rows + 1];
+        int[] colIdx = new int[nnz];
+        double[] values = new double[nnz];
+        int k = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (matrix[i][j] != 0.0) {
+                    colIdx[k] = j;
+                    values[k++] = matrix[i][j];
+                }
+            }
+            rowPtr[i + 1] = k;
+        }
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, values);
+    }
+
+    /**
+     * Whether a rows x cols matrix with nnz non-zeros should be stored sparse.
+     */
+    public static boolean isSparseEnough(long rows, long cols, long nnz) {
+        long elements = rows * cols;
+        return elements >= MIN_SPARSE_ELEMENTS && nnz <= MAX_SPARSE_DENSITY * elements;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    public int nnz() {
+        return rowPtr[rows];
+    }
+
+    public double density() {
+        long elements = (long) rows * cols;
+        return elements == 0 ? 0.0 : (double) nnz() / elements;
+    }
+
+    public double[][] toDense() {
+        double[][] dense = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            denseRow(i, dense[i]);
+        }
+        return dense;
+    }
+
+    /**
+     * Writes row i into dst, which must have cols elements.
+     */
+    public double[] denseRow(int i, double[] dst) {
+        Arrays.fill(dst, 0.0);
+        for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+            dst[colIdx[k]] = values[k];
+        }
+        return dst;
+    }
+
+    @Override
+    public void readBlock(int rowStart, int rowEnd, int colStart, int colEnd, double[] dst) {
+        int width = colEnd - colStart;
+        Arrays.fill(dst, 0, (rowEnd - rowStart) * width, 0.0);
+        for (int i = rowStart; i < rowEnd; i++) {
+            int base = (i - rowStart) * width - colStart;
+            int k = Arrays.binarySearch(colIdx, rowPtr[i], rowPtr[i + 1], colStart);
+            for (k = k < 0 ? -k - 1 : k; k < rowPtr[i + 1] && colIdx[k] < colEnd; k++) {
+                dst[base + colIdx[k]] = values[k];
+            }
+        }
+    }
+
+    public SparseMatrix negate() {
+        int nnz = nnz();
+        double[] negated = new double[nnz];
+        for (int k = 0; k < nnz; k++) {
+            negated[k] = -values[k];
+        }
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, negated);
+    }
+
+    /**
+     * The transpose, by a counting sort of the non-zeros on their column; O(nnz + rows + cols).
+     */
+    public SparseMatrix transpose() {
+        int nnz = nnz();
+        int[] tPtr = new int[cols + 1];
+        for (int k = 0; k < nnz; k++) {
+            tPtr[colIdx[k] + 1]++;
+        }
+        for (int j = 0; j < cols; j++) {
+            tPtr[j + 1] += tPtr[j];
+        }
+        int[] next = Arrays.copyOf(tPtr, cols);
+        int[] tIdx = new int[nnz];
+        double[] tValues = new double[nnz];
+        // Rows are visited in order, so every transposed row comes out sorted
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                int dst = next[colIdx[k]]++;
+                tIdx[dst] = i;
+                tValues[dst] = values[k];
+            }
+        }
+        return new SparseMatrix(cols, rows, tPtr, tIdx, tValues);
+    }
+
+    /**
+     * this + other, merging the sorted rows; entries that cancel out are dropped.
+     */
+    public SparseMatrix add(SparseMatrix other) {
+        if (other.rows != rows || other.cols != cols) {
+            throw new IllegalArgumentException("Dimension mismatch for ADD: "
+                    + rows + "x" + cols + " vs " + other.rows + "x" + other.cols);
+        }
+        int capacity = nnz() + other.nnz();
+        int[] sumPtr = new int[rows + 1];
+        int[] sumIdx = new int[capacity];
+        double[] sumValues = new double[capacity];
+        int n = 0;
+        for (int i = 0; i < rows; i++) {
+            int a = rowPtr[i];
+            int aEnd = rowPtr[i + 1];
+            int b = other.rowPtr[i];
+            int bEnd = other.rowPtr[i + 1];
+            while (a < aEnd || b < bEnd) {
+                int col;
+                double value;
+                if (b == bEnd || (a < aEnd && colIdx[a] < other.colIdx[b])) {
+                    col = colIdx[a];
+                    value = values[a++];
+                } else if (a == aEnd || other.colIdx[b] < colIdx[a]) {
+                    col = other.colIdx[b];
+                    value = other.values[b++];
+                } else {
+                    col = colIdx[a];
+                    value = values[a++] + other.values[b++];
+                }
+                if (value != 0.0) {
+                    sumIdx[n] = col;
+                    sumValues[n++] = value;
+                }
+            }
+            sumPtr[i + 1] = n;
+        }
+        return new SparseMatrix(rows, cols, sumPtr, sumIdx, sumValues);
+    }
+
+    /**
+     * Rows [rowStart, rowEnd) of this * right, written into the row-major out, row i at i * cols where
+     * cols is the width of right: every non-zero A[i][k] adds A[i][k] * right[k] to row i, so zeros of
+     * this matrix cost nothing. The rows are overwritten, so out may hold anything beforehand.
+     */
+    public void multiplyRows(double[][] right, double[] out, int rowStart, int rowEnd) {
+        VectorKernels kernels = VectorKernels.get();
+        int cols = right.length == 0 ? 0 : right[0].length;
+        for (int i = rowStart; i < rowEnd; i++) {
+            int target = i * cols;
+            Arrays.fill(out, target, target + cols, 0.0);
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                kernels.axpy(values[k], right[colIdx[k]], 0, out, target, cols);
+            }
+        }
+    }
+
+    /**
+     * Like multiplyRows(double[][], ...), with right read in place from engine storage: rows of a
+     * row-major operand are added with the vector kernel, any other layout element by element.
+     */
+    public void multiplyRows(StridedLayout right, double[] out, int rowStart, int rowEnd) {
+        VectorKernels kernels = VectorKernels.get();
+        double[] data = right.data;
+        int rs = right.rowStride;
+        int cs = right.colStride;
+        int cols = right.cols;
+        for (int i = rowStart; i < rowEnd; i++) {
+            int target = i * cols;
+            Arrays.fill(out, target, target + cols, 0.0);
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                int src = right.offset + colIdx[k] * rs;
+                if (cs == 1) {
+                    kernels.axpy(values[k], data, src, out, target, cols);
+                } else {
+                    double value = values[k];
+                    for (int j = 0; j < cols; j++, src += cs) {
+                        out[target + j] += value * data[src];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Non-zeros of rows [rowStart, rowEnd).
+     */
+    public long nnz(int rowStart, int rowEnd) {
+        return rowPtr[rowEnd] - rowPtr[rowStart];
+    }
+
+    /**
+     * Same shape and the same non-zeros at the same positions.
+     */
+    public boolean contentEquals(SparseMatrix other) {
+        int nnz = nnz();
+        return rows == other.rows && cols == other.cols
+                && Arrays.equals(rowPtr, other.rowPtr)
+                && Arrays.equals(colIdx, 0, nnz, other.colIdx, 0, nnz)
+                && Arrays.equals(values, 0, nnz, other.values, 0, nnz);
+    }
+
+    /**
+     * Calls visitor for every non-zero in row-major order.
+     */
+    public void forEachNonZero(NonZeroVisitor visitor) {
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                visitor.visit(i, colIdx[k], values[k]);
+            }
+        }
+    }
+
+    public interface NonZeroVisitor {
+        void visit(int row, int col, double value);
+    }
+}
@@ -0,0 +1,255 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strassen-Winograd multiplication C = A * B of two n x n matrices. Every level of the recursion
+ * replaces one product of size h by seven products of size h/2 and 15 block additions, so the
+ * cost drops from O(n^3) towards O(n^2.81). The work is organised in stages whose items are all
+ * independent, so each stage can be spread over the executor:
+ *   split(level, ...) for level 0..depth-1 forms the operand sums of the seven sub-products,
+ *   the 7^depth leaf products are ordinary TiledGemms,
+ *   combine(level, ...) for level depth-1..0 assembles every block from its seven sub-products.
+ * All buffers are allocated up front; every level needs about (7/4)^level * 3n^2 extra doubles,
+ * so the depth should stay small. Operands are read without taking vector locks, like TiledGemm.
+ */
+public class StrassenWinograd {
+
+    // Blocks are never split below this size, the additions would cost more than they save
+    public static final int MIN_LEAF = 64;
+
+    private final int n;
+    private final int padded; // n rounded up so that it halves evenly depth times
+    private final int depth;
+    private final List<List<Block>> levels = new ArrayList<>(); // levels.get(l) holds the 7^l blocks of size padded >> l
+    private final List<TiledGemm> leaves = new ArrayList<>();
+
+    /**
+     * How many times an n x n product is halved when blocks of at least threshold are split;
+     * 0 when the threshold is disabled (0) or n is below it.
+     */
+    public static int depthFor(int n, int threshold) {
+        if (threshold <= 0) {
+            return 0;
+        }
+        int depth = 0;
+        for (int size = n; size >= threshold && (size + 1) / 2 >= MIN_LEAF; size = (size + 1) / 2) {
+            depth++;
+        }
+        return depth;
+    }
+
+    public StrassenWinograd(SharedMatrix left, SharedMatrix right, int depth) {
+        StridedLayout a = left.layout();
+        StridedLayout b = right.layout();
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Dimension mismatch for MULTIPLY: Left cols (" + a.cols + ") != Right rows (" + b.rows + ")");
+        }
+        if (a.rows != a.cols || b.rows != b.cols || depth < 1) {
+            throw new IllegalArgumentException("Strassen-Winograd needs square operands and a positive depth");
+        }
+        this.n = a.rows;
+        this.depth = depth;
+        int leaf = (n + (1 << depth) - 1) >> depth;
+        this.padded = leaf << depth;
+        if ((long) padded * padded > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Product of " + n + "x" + n + " exceeds the maximal contiguous storage size");
+        }
+
+        Block root = new Block(pad(a), pad(b), new double[padded * padded]);
+        levels.add(List.of(root));
+        for (int level = 0; level < depth; level++) {
+            List<Block> next = new ArrayList<>();
+            for (Block block : levels.get(level)) {
+                block.expand(level + 1 == depth ? leaves : null);
+                next.addAll(block.children);
+            }
+            levels.add(next);
+        }
+    }
+
+    public int rows() {
+        return n;
+    }
+
+    public int cols() {
+        return n;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Number of blocks split at, or combined into, the given level.
+     */
+    public int blocks(int level) {
+        return levels.get(level).size();
+    }
+
+    /**
+     * Rows of the sub-blocks produced by splitting, and consumed by combining, a block of the level.
+     */
+    public int halfSize(int level) {
+        return (padded >> level) / 2;
+    }
+
+    /**
+     * The 7^depth independent products at the bottom of the recursion.
+     */
+    public List<TiledGemm> leaves() {
+        return leaves;
+    }
+
+    /**
+     * Rows [rowStart, rowEnd) of the eight operand sums S1..S4 and T1..T4 of a block.
+     */
+    public void split(int level, int block, int rowStart, int rowEnd) {
+        levels.get(level).get(block).split(rowStart, rowEnd);
+    }
+
+    /**
+     * Rows [rowStart, rowEnd) of the four result quadrants of a block.
+     */
+    public void combine(int level, int block, int rowStart, int rowEnd) {
+        levels.get(level).get(block).combine(rowStart, rowEnd);
+    }
+
+    /**
+     * The row-major n x n product. Complete only after the last combine stage.
+     */
+    public double[] result() {
+        double[] c = levels.get(0).get(0).c;
+        if (padded == n) {
+            return c;
+        }
+        double[] trimmed = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(c, i * padded, trimmed, i * n, n);
+        }
+        return trimmed;
+    }
+
+    // The operand itself, or a zero-padded row-major copy when its size does not halve evenly
+    private StridedLayout pad(StridedLayout m) {
+        if (padded == n) {
+            return m;
+        }
+        double[] data = new double[padded * padded];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                data[i * padded + j] = m.get(i, j);
+            }
+        }
+        return rowMajor(data, padded);
+    }
+
+    private static StridedLayout rowMajor(double[] data, int size) {
+        return new StridedLayout(data, 0, size, size, size, 1);
+    }
+
+    private static StridedLayout quadrant(StridedLayout m, int row, int col, int size) {
+        return new StridedLayout(m.data, m.offset + row * m.rowStride + col * m.colStride,
+                size, size, m.rowStride, m.colStride);
+    }
+
+    /**
+     * One product c = a * b of the recursion, with the buffers of its seven sub-products.
+     */
+    private static final class Block {
+        final StridedLayout a;
+        final StridedLayout b;
+        final double[] c; // row-major result
+        final int size;
+        List<Block> children;
+        double[] s1, s2, s3, s4, t1, t2, t3, t4;
+
+        Block(StridedLayout a, StridedLayout b, double[] c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.size = a.rows;
+        }
+
+        // Creates the seven sub-products; at the last level they are computed by TiledGemms added to leaves
+        void expand(List<TiledGemm> leaves) {
+            int h = size / 2;
+            s1 = new double[h * h]; s2 = new double[h * h]; s3 = new double[h * h]; s4 = new double[h * h];
+            t1 = new double[h * h]; t2 = new double[h * h]; t3 = new double[h * h]; t4 = new double[h * h];
+            StridedLayout[][] operands = {
+                    {quadrant(a, 0, 0, h), quadrant(b, 0, 0, h)}, // M1 = A11 * B11
+                    {quadrant(a, 0, h, h), quadrant(b, h, 0, h)}, // M2 = A12 * B21
+                    {rowMajor(s4, h), quadrant(b, h, h, h)},      // M3 = S4 * B22
+                    {quadrant(a, h, h, h), rowMajor(t4, h)},      // M4 = A22 * T4
+                    {rowMajor(s1, h), rowMajor(t1, h)},           // M5 = S1 * T1
+                    {rowMajor(s2, h), rowMajor(t2, h)},           // M6 = S2 * T2
+                    {rowMajor(s3, h), rowMajor(t3, h)}            // M7 = S3 * T3
+            };
+            children = new ArrayList<>();
+            for (StridedLayout[] pair : operands) {
+                if (leaves != null) {
+                    TiledGemm gemm = new TiledGemm(pair[0], pair[1]);
+                    leaves.add(gemm);
+                    children.add(new Block(pair[0], pair[1], gemm.result()));
+                } else {
+                    children.add(new Block(pair[0], pair[1], new double[h * h]));
+                }
+            }
+        }
+
+        void split(int rowStart, int rowEnd) {
+            int h = size / 2;
+            int ars = a.rowStride, acs = a.colStride;
+            int brs = b.rowStride, bcs = b.colStride;
+            int aDown = h * ars, aRight = h * acs;
+            int bDown = h * brs, bRight = h * bcs;
+            for (int i = rowStart; i < rowEnd; i++) {
+                int ai = a.offset + i * ars;
+                int bi = b.offset + i * brs;
+                int dst = i * h;
+                for (int j = 0; j < h; j++, ai += acs, bi += bcs, dst++) {
+                    double a11 = a.data[ai];
+                    double a12 = a.data[ai + aRight];
+                    double a21 = a.data[ai + aDown];
+                    double a22 = a.data[ai + aDown + aRight];
+                    double sum1 = a21 + a22;
+                    double sum2 = sum1 - a11;
+                    s1[dst] = sum1;
+                    s2[dst] = sum2;
+                    s3[dst] = a11 - a21;
+                    s4[dst] = a12 - sum2;
+
+                    double b11 = b.data[bi];
+                    double b12 = b.data[bi + bRight];
+                    double b21 = b.data[bi + bDown];
+                    double b22 = b.data[bi + bDown + bRight];
+                    double diff1 = b12 - b11;
+                    double diff2 = b22 - diff1;
+                    t1[dst] = diff1;
+                    t2[dst] = diff2;
+                    t3[dst] = b22 - b12;
+                    t4[dst] = diff2 - b21;
+                }
+            }
+        }
+
+        void combine(int rowStart, int rowEnd) {
+            int h = size / 2;
+            double[] m1 = children.get(0).c, m2 = children.get(1).c, m3 = children.get(2).c, m4 = children.get(3).c;
+            double[] m5 = children.get(4).c, m6 = children.get(5).c, m7 = children.get(6).c;
+            for (int i = rowStart; i < rowEnd; i++) {
+                int top = i * size;
+                int bottom = (i + h) * size;
+                for (int j = 0, src = i * h; j < h; j++, src++) {
+                    double u2 = m1[src] + m6[src];
+                    double u3 = u2 + m7[src];
+                    c[top + j] = m1[src] + m2[src];
+                    c[top + h + j] = u2 + m5[src] + m3[src];
+                    c[bottom + j] = u3 - m4[src];
+                    c[bottom + h + j] = u3 + m5[src];
+                }
+            }
+        }
+    }
+}
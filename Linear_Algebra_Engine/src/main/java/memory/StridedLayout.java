@@ -0,0 +1,80 @@
+package memory;
+
+/**
+ * A read-only snapshot of where the elements of a matrix live in memory.
+ * Element (i, j) is stored at {@code data[offset + i * rowStride + j * colStride]},
+ * so row-major and column-major storage are described by the same four numbers.
+ * Kernels outside this package read resident engine storage through it without copying it into rows;
+ * the storage must not be modified while they do.
+ */
+public final class StridedLayout implements BlockSource {
+
+    final double[] data;
+    final int offset;
+    final int rows;
+    final int cols;
+    final int rowStride;
+    final int colStride;
+
+    StridedLayout(double[] data, int offset, int rows, int cols, int rowStride, int colStride) {
+        this.data = data;
+        this.offset = offset;
+        this.rows = rows;
+        this.cols = cols;
+        this.rowStride = rowStride;
+        this.colStride = colStride;
+    }
+
+    public double get(int i, int j) {
+        return data[offset + i * rowStride + j * colStride];
+    }
+
+    public double[] data() {
+        return data;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    public int rowStride() {
+        return rowStride;
+    }
+
+    public int colStride() {
+        return colStride;
+    }
+
+    /**
+     * The same storage read as the transpose: the strides are swapped, nothing is copied.
+     */
+    public StridedLayout transposed() {
+        return new StridedLayout(data, offset, cols, rows, colStride, rowStride);
+    }
+
+    @Override
+    public void readBlock(int rowStart, int rowEnd, int colStart, int colEnd, double[] dst) {
+        int width = colEnd - colStart;
+        for (int i = rowStart; i < rowEnd; i++) {
+            int src = offset + i * rowStride + colStart * colStride;
+            int base = (i - rowStart) * width;
+            if (colStride == 1) {
+                System.arraycopy(data, src, dst, base, width);
+            } else {
+                for (int j = 0; j < width; j++, src += colStride) {
+                    dst[base + j] = data[src];
+                }
+            }
+        }
+    }
+}
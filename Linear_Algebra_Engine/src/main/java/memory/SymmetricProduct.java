@@ -0,0 +1,72 @@
+package memory;
+
+/**
+ * The symmetric product C = A * A^T of an m x k matrix with its own transpose (SYRK).
+ * C[i][j] = C[j][i], so only tiles on or above the diagonal are multiplied, which is about half the
+ * work of a general product, and the lower triangle is then mirrored from the upper one.
+ * The two steps must run one after the other: every call to mirror reads what computeTile wrote.
+ * A^T * A is the same product over the transposed view of A. The operand is read without taking
+ * vector locks, like TiledGemm.
+ */
+public class SymmetricProduct {
+
+    // Lower-triangle blocks are copied in squares of this side, so both the read and the write stay in cache
+    private static final int MIRROR_BLOCK = 32;
+
+    private final TiledGemm gemm;
+    private final int n;
+
+    /**
+     * The product of operand with its transpose, with the result buffer taken from pool (may be null).
+     */
+    public SymmetricProduct(SharedMatrix operand, BufferPool pool) {
+        this.gemm = new TiledGemm(operand, operand.transposedView(), pool);
+        this.n = gemm.rows();
+    }
+
+    /**
+     * Rows and columns of the result.
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Columns of the operand, i.e. the length of every inner product.
+     */
+    public int depth() {
+        return gemm.depth();
+    }
+
+    /**
+     * Computes C[rowStart..rowEnd) x [colStart..colEnd) like TiledGemm.computeTile; callers only
+     * pass tiles that reach the upper triangle (colEnd > rowStart).
+     */
+    public void computeTile(int rowStart, int rowEnd, int colStart, int colEnd) {
+        gemm.computeTile(rowStart, rowEnd, colStart, colEnd);
+    }
+
+    /**
+     * Copies C[j][i] into C[i][j] for every j < i of rows [rowStart, rowEnd).
+     */
+    public void mirror(int rowStart, int rowEnd) {
+        double[] c = gemm.result();
+        for (int j0 = 0; j0 < rowEnd - 1; j0 += MIRROR_BLOCK) {
+            int j1 = Math.min(j0 + MIRROR_BLOCK, rowEnd - 1);
+            for (int i = Math.max(rowStart, j0 + 1); i < rowEnd; i++) {
+                int row = i * n;
+                int jEnd = Math.min(j1, i);
+                for (int j = j0; j < jEnd; j++) {
+                    c[row + j] = c[j * n + i];
+                }
+            }
+        }
+    }
+
+    /**
+     * The row-major n x n result. Complete only after every upper tile has been computed and every row mirrored.
+     */
+    public double[] result() {
+        return gemm.result();
+    }
+}
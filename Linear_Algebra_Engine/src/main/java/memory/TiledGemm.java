@@ -0,0 +1,234 @@
+package memory;
+
+import java.util.Arrays;
+
+/**
+ * Cache-blocked matrix multiplication C = A * B over the flat storage of two SharedMatrices.
+ * The caller splits the output into tiles of at most TILE_COLS columns; every tile can be
+ * computed by a different thread since tiles never overlap.
+ * Inside a tile, panels of A and B are packed into small contiguous buffers sized for the
+ * L2 and L1 caches, and a 4x4 register-blocked micro-kernel accumulates the products.
+ * The operands are read without taking vector locks, so they must not be modified while tiles run.
+ */
+public class TiledGemm {
+
+    // Micro-kernel size: MR x NR accumulators kept in registers
+    private static final int MR = 4;
+    private static final int NR = 4;
+    // Depth of one packed panel; a KC x NR sliver of B stays in L1
+    private static final int KC = 256;
+    // Rows of A packed at once; an MC x KC block of A stays in L2
+    private static final int MC = 64;
+
+    // Tiles whose height is a multiple of this never compute partial micro-kernel rows inside the matrix
+    public static final int ROW_ALIGNMENT = MR;
+    public static final int TILE_COLS = 512;
+
+    private final StridedLayout a;
+    private final StridedLayout b;
+    private final double[] c; // row-major m x n result
+    private final int m;
+    private final int n;
+    private final int k;
+
+    // Packing buffers of the current thread, reused by all the tiles it computes
+    private static final ThreadLocal<double[][]> PACKED = ThreadLocal.withInitial(() -> new double[2][0]);
+
+    public TiledGemm(SharedMatrix left, SharedMatrix right) {
+        this(left.layout(), right.layout(), null);
+    }
+
+    /**
+     * Like TiledGemm(left, right), with the result buffer taken from pool; it may then be longer than rows * cols.
+     */
+    public TiledGemm(SharedMatrix left, SharedMatrix right, BufferPool pool) {
+        this(left.layout(), right.layout(), pool);
+    }
+
+    TiledGemm(StridedLayout a, StridedLayout b) {
+        this(a, b, null);
+    }
+
+    private TiledGemm(StridedLayout a, StridedLayout b, BufferPool pool) {
+        this.a = a;
+        this.b = b;
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Dimension mismatch for MULTIPLY: Left cols (" + a.cols + ") != Right rows (" + b.rows + ")");
+        }
+        this.m = a.rows;
+        this.n = b.cols;
+        this.k = a.cols;
+        long size = (long) m * n;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Product of " + m + "x" + n + " exceeds the maximal contiguous storage size");
+        }
+        this.c = pool == null ? new double[(int) size] : pool.acquire((int) size);
+    }
+
+    public int rows() {
+        return m;
+    }
+
+    public int cols() {
+        return n;
+    }
+
+    /**
+     * The shared dimension: columns of the left operand, rows of the right one.
+     */
+    public int depth() {
+        return k;
+    }
+
+    /**
+     * The row-major result buffer. Complete only after every tile has been computed.
+     */
+    public double[] result() {
+        return c;
+    }
+
+    /**
+     * Computes C[rowStart..rowEnd) x [colStart..colEnd).
+     */
+    public void computeTile(int rowStart, int rowEnd, int colStart, int colEnd) {
+        int tileRows = rowEnd - rowStart;
+        int tileCols = colEnd - colStart;
+        if (tileRows <= 0 || tileCols <= 0) {
+            return;
+        }
+        // The micro-kernel accumulates, and a pooled buffer holds whatever it held before
+        for (int i = rowStart; i < rowEnd; i++) {
+            Arrays.fill(c, i * n + colStart, i * n + colEnd, 0.0);
+        }
+        int kc = Math.min(KC, k);
+        double[][] packed = PACKED.get();
+        if (packed[0].length < roundUp(Math.min(MC, tileRows), MR) * kc) {
+            packed[0] = new double[roundUp(MC, MR) * KC];
+        }
+        if (packed[1].length < roundUp(tileCols, NR) * kc) {
+            packed[1] = new double[roundUp(Math.max(tileCols, TILE_COLS), NR) * KC];
+        }
+        double[] packedA = packed[0];
+        double[] packedB = packed[1];
+
+        for (int p0 = 0; p0 < k; p0 += KC) {
+            int depth = Math.min(KC, k - p0);
+            packB(p0, depth, colStart, tileCols, packedB);
+            for (int i0 = rowStart; i0 < rowEnd; i0 += MC) {
+                int blockRows = Math.min(MC, rowEnd - i0);
+                packA(i0, blockRows, p0, depth, packedA);
+                for (int jr = 0; jr < tileCols; jr += NR) {
+                    int bBase = jr * depth;
+                    for (int ir = 0; ir < blockRows; ir += MR) {
+                        microKernel(packedA, ir * depth, packedB, bBase, depth,
+                                i0 + ir, Math.min(MR, blockRows - ir),
+                                colStart + jr, Math.min(NR, tileCols - jr));
+                    }
+                }
+            }
+        }
+    }
+
+    // Packs A[i0..i0+blockRows) x [p0..p0+depth) into MR-row slivers, element (r, p) of a sliver at p * MR + r
+    private void packA(int i0, int blockRows, int p0, int depth, double[] dst) {
+        double[] src = a.data;
+        int rs = a.rowStride;
+        int cs = a.colStride;
+        for (int ir = 0; ir < blockRows; ir += MR) {
+            int base = ir * depth;
+            int valid = Math.min(MR, blockRows - ir);
+            for (int r = 0; r < MR; r++) {
+                if (r < valid) {
+                    int srcIdx = a.offset + (i0 + ir + r) * rs + p0 * cs;
+                    for (int p = 0; p < depth; p++, srcIdx += cs) {
+                        dst[base + p * MR + r] = src[srcIdx];
+                    }
+                } else {
+                    for (int p = 0; p < depth; p++) {
+                        dst[base + p * MR + r] = 0.0;
+                    }
+                }
+            }
+        }
+    }
+
+    // Packs B[p0..p0+depth) x [j0..j0+width) into NR-column slivers, element (p, c) of a sliver at p * NR + c
+    private void packB(int p0, int depth, int j0, int width, double[] dst) {
+        double[] src = b.data;
+        int rs = b.rowStride;
+        int cs = b.colStride;
+        for (int jr = 0; jr < width; jr += NR) {
+            int base = jr * depth;
+            int valid = Math.min(NR, width - jr);
+            for (int p = 0; p < depth; p++) {
+                int srcIdx = b.offset + (p0 + p) * rs + (j0 + jr) * cs;
+                int dstIdx = base + p * NR;
+                for (int col = 0; col < NR; col++) {
+                    dst[dstIdx + col] = col < valid ? src[srcIdx + col * cs] : 0.0;
+                }
+            }
+        }
+    }
+
+    // C[row..row+validRows) x [col..col+validCols) += packed A sliver * packed B sliver
+    private void microKernel(double[] pa, int aBase, double[] pb, int bBase, int depth,
+                             int row, int validRows, int col, int validCols) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        int ai = aBase;
+        int bi = bBase;
+        for (int p = 0; p < depth; p++, ai += MR, bi += NR) {
+            double a0 = pa[ai], a1 = pa[ai + 1], a2 = pa[ai + 2], a3 = pa[ai + 3];
+            double b0 = pb[bi], b1 = pb[bi + 1], b2 = pb[bi + 2], b3 = pb[bi + 3];
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+        }
+
+        if (validRows == MR && validCols == NR) {
+            int r0 = row * n + col;
+            c[r0] += c00; c[r0 + 1] += c01; c[r0 + 2] += c02; c[r0 + 3] += c03;
+            int r1 = r0 + n;
+            c[r1] += c10; c[r1 + 1] += c11; c[r1 + 2] += c12; c[r1 + 3] += c13;
+            int r2 = r1 + n;
+            c[r2] += c20; c[r2 + 1] += c21; c[r2 + 2] += c22; c[r2 + 3] += c23;
+            int r3 = r2 + n;
+            c[r3] += c30; c[r3 + 1] += c31; c[r3 + 2] += c32; c[r3 + 3] += c33;
+            return;
+        }
+        // Edge of the matrix: only part of the 4x4 block is inside the result
+        int idx = row * n + col;
+        addEdgeRow(idx, validCols, c00, c01, c02, c03);
+        if (validRows > 1) {
+            addEdgeRow(idx + n, validCols, c10, c11, c12, c13);
+        }
+        if (validRows > 2) {
+            addEdgeRow(idx + 2 * n, validCols, c20, c21, c22, c23);
+        }
+        if (validRows > 3) {
+            addEdgeRow(idx + 3 * n, validCols, c30, c31, c32, c33);
+        }
+    }
+
+    // Adds the first validCols of one accumulator row at c[idx..]
+    private void addEdgeRow(int idx, int validCols, double v0, double v1, double v2, double v3) {
+        c[idx] += v0;
+        if (validCols > 1) {
+            c[idx + 1] += v1;
+        }
+        if (validCols > 2) {
+            c[idx + 2] += v2;
+        }
+        if (validCols > 3) {
+            c[idx + 3] += v3;
+        }
+    }
+
+    private static int roundUp(int value, int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+}
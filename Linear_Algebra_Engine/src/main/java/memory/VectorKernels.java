@@ -0,0 +1,33 @@
+package memory;
+
+/**
+ * The inner loops of the vector operations, over raw array ranges.
+ * Two implementations exist: SimdKernels, built on the incubating Java Vector API, and
+ * ScalarKernels as a fallback. The SIMD one is chosen at startup when the JVM was started
+ * with --add-modules jdk.incubator.vector; -Dlae.kernels=scalar forces the fallback.
+ */
+public interface VectorKernels {
+
+    /**
+     * dst[dstOffset..+length) += src[srcOffset..+length)
+     */
+    void add(double[] dst, int dstOffset, double[] src, int srcOffset, int length);
+
+    /**
+     * a[offset..+length) = -a[offset..+length)
+     */
+    void negate(double[] a, int offset, int length);
+
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    /**
+     * y[yOffset..+length) += alpha * x[xOffset..+length)
+     */
+    void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    String name();
+
+    static VectorKernels get() {
+        return KernelSelection.INSTANCE;
+    }
+}
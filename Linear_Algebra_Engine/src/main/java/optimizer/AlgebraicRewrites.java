@@ -0,0 +1,296 @@
+package optimizer;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rule-based simplification of a computation tree into an equivalent one that does less work:
+ *   (A^T)^T = A and -(-A) = A, also with the other unary operation in between, as in (-(A^T))^T = -A;
+ *   A + (-B) = A - B, (-A) + B = B - A, A - (-B) = A + B and -(A - B) = B - A, so a negated
+ *   operand of a sum costs nothing more than the subtraction kernel;
+ *   (-A) * (-B) = A * B, and a single negation of a product is moved onto whichever of the two operands
+ *   or the product is cheapest to negate. A sparse leaf costs its non-zeros, anything else its elements,
+ *   and the product costs nothing when its only reader turns the sign into a subtraction;
+ *   (A * B)^T = B^T * A^T, only when A or B is itself transposed so that fewer transposes remain.
+ * Nodes are rewritten in place, children before parents, so nodes referring to a rewritten node see the
+ * new expression. Placing a negation needs the shapes of the operands; when they cannot be inferred a
+ * lone negation stays where it is and only cancelling pairs are removed.
+ */
+public class AlgebraicRewrites {
+
+    private AlgebraicRewrites() {}
+
+    /**
+     * Simplifies the tree rooted at root in place. The root itself becomes a matrix node if the
+     * whole tree cancels out, as in (A^T)^T.
+     */
+    public static void apply(ComputationNode root) {
+        new Pass(root).run();
+    }
+
+    private static class Pass {
+        final ComputationNode root;
+        final Map<ComputationNode, int[]> shapes = new IdentityHashMap<>();
+        final Map<ComputationNode, List<ComputationNode>> parents = new IdentityHashMap<>();
+
+        Pass(ComputationNode root) {
+            this.root = root;
+        }
+
+        void run() {
+            List<ComputationNode> order = Traversal.postOrder(root);
+            for (ComputationNode node : order) {
+                if (node.getChildren() != null) {
+                    for (ComputationNode child : node.getChildren()) {
+                        parents.computeIfAbsent(child, k -> new ArrayList<>()).add(node);
+                    }
+                }
+            }
+            for (ComputationNode node : order) {
+                // Every rewrite keeps the node's value, so its shape is known before and after
+                shapes.put(node, node.inferShape(shapes));
+                simplify(node);
+            }
+        }
+
+        void simplify(ComputationNode node) {
+            while (rewrite(node)) {
+                // every rule removes an operation or settles a negation, so this ends
+            }
+        }
+
+        // Applies the first rule that matches node; false if none does
+        boolean rewrite(ComputationNode node) {
+            List<ComputationNode> children = node.getChildren();
+            switch (node.getNodeType()) {
+                case TRANSPOSE:
+                case NEGATE:
+                    if (children.size() != 1) {
+                        return false;
+                    }
+                    return cancelUnary(node) || swapSign(node) || placeProductSign(node) || transposeProduct(node);
+                case ADD:
+                case SUBTRACT:
+                    return children.size() == 2 && foldSigns(node);
+                case MULTIPLY:
+                    return children.size() == 2 && placeProductSign(node);
+                default:
+                    return false;
+            }
+        }
+
+        // (A^T)^T = A, -(-A) = A, ((-A)^T)^- = A^T and (-(A^T))^T = -A
+        boolean cancelUnary(ComputationNode node) {
+            ComputationNodeType type = node.getNodeType();
+            ComputationNode child = node.getChildren().get(0);
+            if (isUnary(child, type) && child.getChildren().get(0).getNodeType() != ComputationNodeType.FUSED) {
+                replaceWith(node, child.getChildren().get(0));
+                return true;
+            }
+            ComputationNodeType other = type == ComputationNodeType.NEGATE ? ComputationNodeType.TRANSPOSE : ComputationNodeType.NEGATE;
+            if (isUnary(child, other) && isUnary(child.getChildren().get(0), type)) {
+                // Negation and transposition commute, so the two outer operations of the same kind cancel
+                node.rewrite(other, List.of(child.getChildren().get(0).getChildren().get(0)));
+                return true;
+            }
+            return false;
+        }
+
+        // -(A - B) = B - A
+        boolean swapSign(ComputationNode node) {
+            ComputationNode child = node.getChildren().get(0);
+            if (node.getNodeType() != ComputationNodeType.NEGATE
+                    || child.getNodeType() != ComputationNodeType.SUBTRACT || child.getChildren().size() != 2) {
+                return false;
+            }
+            node.rewrite(ComputationNodeType.SUBTRACT, List.of(child.getChildren().get(1), child.getChildren().get(0)));
+            return true;
+        }
+
+        // Absorbs negated operands of a sum or difference into the operation itself
+        boolean foldSigns(ComputationNode node) {
+            ComputationNode left = node.getChildren().get(0);
+            ComputationNode right = node.getChildren().get(1);
+            boolean leftNegated = isUnary(left, ComputationNodeType.NEGATE);
+            boolean rightNegated = isUnary(right, ComputationNodeType.NEGATE);
+            ComputationNode a = leftNegated ? left.getChildren().get(0) : left;
+            ComputationNode b = rightNegated ? right.getChildren().get(0) : right;
+            boolean subtract = node.getNodeType() == ComputationNodeType.SUBTRACT;
+            if (!leftNegated && !rightNegated) {
+                return false;
+            }
+            if (!leftNegated) {
+                // A + (-B) = A - B, A - (-B) = A + B
+                node.rewrite(subtract ? ComputationNodeType.ADD : ComputationNodeType.SUBTRACT, List.of(a, b));
+            } else if (!rightNegated && !subtract) {
+                // (-A) + B = B - A
+                node.rewrite(ComputationNodeType.SUBTRACT, List.of(b, a));
+            } else {
+                // (-A) - B = -(A + B), (-A) + (-B) = -(A + B), (-A) - (-B) = B - A
+                if (subtract && rightNegated) {
+                    node.rewrite(ComputationNodeType.SUBTRACT, List.of(b, a));
+                } else {
+                    node.rewrite(ComputationNodeType.NEGATE, List.of(create(ComputationNodeType.ADD, a, b)));
+                }
+            }
+            return true;
+        }
+
+        // Gathers the negations of a product, -(A * B) or (+-A) * (+-B), into at most one at the cheapest place
+        boolean placeProductSign(ComputationNode node) {
+            boolean outer = node.getNodeType() == ComputationNodeType.NEGATE;
+            ComputationNode product = outer ? node.getChildren().get(0) : node;
+            if (product.getNodeType() != ComputationNodeType.MULTIPLY || product.getChildren().size() != 2) {
+                return false;
+            }
+            ComputationNode left = product.getChildren().get(0);
+            ComputationNode right = product.getChildren().get(1);
+            boolean leftNegated = isUnary(left, ComputationNodeType.NEGATE);
+            boolean rightNegated = isUnary(right, ComputationNodeType.NEGATE);
+            if (!outer && !leftNegated && !rightNegated) {
+                return false;
+            }
+            ComputationNode a = leftNegated ? left.getChildren().get(0) : left;
+            ComputationNode b = rightNegated ? right.getChildren().get(0) : right;
+            int negations = (outer ? 1 : 0) + (leftNegated ? 1 : 0) + (rightNegated ? 1 : 0);
+
+            Placement target;
+            if (negations % 2 == 0) {
+                target = Placement.NONE;
+            } else {
+                Placement current = negations == 1 ? (outer ? Placement.RESULT : leftNegated ? Placement.LEFT : Placement.RIGHT) : null;
+                long resultCost = absorbsSign(node) ? 0 : elements(node);
+                long leftCost = elements(a);
+                long rightCost = elements(b);
+                if (resultCost < 0 || leftCost < 0 || rightCost < 0) {
+                    // Shapes unknown: keep a lone negation, collapse three into one on the result
+                    target = current != null ? current : Placement.RESULT;
+                } else {
+                    target = cheapest(current, resultCost, leftCost, rightCost);
+                }
+                if (target == current) {
+                    return false;
+                }
+            }
+
+            switch (target) {
+                case NONE:
+                    node.rewrite(ComputationNodeType.MULTIPLY, List.of(a, b));
+                    break;
+                case LEFT:
+                    node.rewrite(ComputationNodeType.MULTIPLY, List.of(create(ComputationNodeType.NEGATE, a), b));
+                    break;
+                case RIGHT:
+                    node.rewrite(ComputationNodeType.MULTIPLY, List.of(a, create(ComputationNodeType.NEGATE, b)));
+                    break;
+                case RESULT:
+                    node.rewrite(ComputationNodeType.NEGATE, List.of(create(ComputationNodeType.MULTIPLY, a, b)));
+                    break;
+            }
+            return true;
+        }
+
+        // The cheapest place for a single negation; the current one wins ties so rewriting settles
+        private static Placement cheapest(Placement current, long resultCost, long leftCost, long rightCost) {
+            long best = Math.min(resultCost, Math.min(leftCost, rightCost));
+            if (current != null && cost(current, resultCost, leftCost, rightCost) == best) {
+                return current;
+            }
+            if (resultCost == best) {
+                return Placement.RESULT;
+            }
+            return leftCost == best ? Placement.LEFT : Placement.RIGHT;
+        }
+
+        private static long cost(Placement placement, long resultCost, long leftCost, long rightCost) {
+            switch (placement) {
+                case LEFT:
+                    return leftCost;
+                case RIGHT:
+                    return rightCost;
+                default:
+                    return resultCost;
+            }
+        }
+
+        // (A * B)^T = B^T * A^T, only when a transposed factor cancels and leaves fewer transposes
+        boolean transposeProduct(ComputationNode node) {
+            ComputationNode product = node.getChildren().get(0);
+            if (node.getNodeType() != ComputationNodeType.TRANSPOSE
+                    || product.getNodeType() != ComputationNodeType.MULTIPLY || product.getChildren().size() != 2) {
+                return false;
+            }
+            ComputationNode left = product.getChildren().get(0);
+            ComputationNode right = product.getChildren().get(1);
+            if (!isUnary(left, ComputationNodeType.TRANSPOSE) && !isUnary(right, ComputationNodeType.TRANSPOSE)) {
+                return false;
+            }
+            node.rewrite(ComputationNodeType.MULTIPLY, List.of(transposeOf(right), transposeOf(left)));
+            return true;
+        }
+
+        // Whether the node's only reader turns the node's negation into a subtraction (or cancels it) for free
+        private boolean absorbsSign(ComputationNode node) {
+            List<ComputationNode> readers = parents.get(node);
+            if (readers == null || readers.size() != 1) {
+                return false;
+            }
+            ComputationNode parent = readers.get(0);
+            List<ComputationNode> siblings = parent.getChildren();
+            switch (parent.getNodeType()) {
+                case ADD:
+                case NEGATE:
+                    return true;
+                case SUBTRACT:
+                    return siblings.size() == 2 && siblings.get(1) == node;
+                default:
+                    return false;
+            }
+        }
+
+        // Elements a negation of the node's result would touch, or -1 when its shape is unknown
+        private long elements(ComputationNode node) {
+            if (node.getNodeType() == ComputationNodeType.MATRIX && node.isSparse()) {
+                return node.getSparseMatrix().nnz();
+            }
+            int[] shape = shapes.get(node);
+            return shape == null ? -1 : (long) shape[0] * shape[1];
+        }
+
+        private ComputationNode transposeOf(ComputationNode node) {
+            if (isUnary(node, ComputationNodeType.TRANSPOSE)) {
+                return node.getChildren().get(0);
+            }
+            return create(ComputationNodeType.TRANSPOSE, node);
+        }
+
+        private ComputationNode create(ComputationNodeType type, ComputationNode... operands) {
+            ComputationNode node = new ComputationNode(type, new ArrayList<>(List.of(operands)));
+            shapes.put(node, node.inferShape(shapes));
+            simplify(node);
+            return node;
+        }
+
+        // Makes node compute what other computes
+        private static void replaceWith(ComputationNode node, ComputationNode other) {
+            if (other.getNodeType() == ComputationNodeType.MATRIX) {
+                node.resolve(other);
+            } else {
+                node.rewrite(other.getNodeType(), new ArrayList<>(other.getChildren()));
+            }
+        }
+
+        private static boolean isUnary(ComputationNode node, ComputationNodeType type) {
+            return node.getNodeType() == type && node.getChildren().size() == 1;
+        }
+    }
+
+    private enum Placement {
+        NONE, LEFT, RIGHT, RESULT
+    }
+}
@@ -0,0 +1,166 @@
+package optimizer;
+
+import memory.StridedLayout;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Common-subexpression elimination by hash-consing.
+ * Every node gets a Fingerprint; nodes that compute the same value (equal leaf matrices,
+ * or the same operation over the same operands) are merged into one shared node, turning the
+ * tree into a DAG in which each distinct subexpression appears, and is computed, only once.
+ * ADD is commutative, so A + B and B + A are merged as well.
+ */
+public class CommonSubexpressions {
+
+    private CommonSubexpressions() {}
+
+    /**
+     * Merges identical subtrees below root in place.
+     *
+     * @return the fingerprint of every node reachable from root after merging
+     */
+    public static Map<ComputationNode, Fingerprint> apply(ComputationNode root) {
+        Map<ComputationNode, Fingerprint> fingerprints = new IdentityHashMap<>();
+        Map<ComputationNode, ComputationNode> canonical = new IdentityHashMap<>();
+        Map<Fingerprint, List<ComputationNode>> byFingerprint = new HashMap<>();
+
+        for (ComputationNode node : Traversal.postOrder(root)) {
+            List<ComputationNode> children = node.getChildren();
+            if (children != null) {
+                List<ComputationNode> merged = new ArrayList<>(children.size());
+                boolean changed = false;
+                for (ComputationNode child : children) {
+                    ComputationNode representative = canonical.get(child);
+                    merged.add(representative);
+                    changed |= representative != child;
+                }
+                if (changed) {
+                    node.replaceChildren(merged);
+                }
+            }
+
+            Fingerprint fingerprint = fingerprintOf(node, fingerprints);
+            List<ComputationNode> candidates = byFingerprint.computeIfAbsent(fingerprint, k -> new ArrayList<>());
+            ComputationNode representative = node;
+            for (ComputationNode candidate : candidates) {
+                if (sameValue(candidate, node)) {
+                    representative = candidate;
+                    break;
+                }
+            }
+            if (representative == node) {
+                candidates.add(node);
+                fingerprints.put(node, fingerprint);
+            }
+            canonical.put(node, representative);
+        }
+
+        // Drop the fingerprints of nodes that were merged away
+        Map<ComputationNode, Fingerprint> reachable = new IdentityHashMap<>();
+        for (ComputationNode node : Traversal.postOrder(root)) {
+            reachable.put(node, fingerprints.get(node));
+        }
+        return reachable;
+    }
+
+    private static Fingerprint fingerprintOf(ComputationNode node, Map<ComputationNode, Fingerprint> fingerprints) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            // Hashing a matrix on disk would read all of it; its storage identifies it instead
+            if (node.isOnDisk()) {
+                return Fingerprint.ofStorage(node.getDiskMatrix().id());
+            }
+            if (node.isSparse()) {
+                return Fingerprint.ofSparse(node.getSparseMatrix());
+            }
+            // A resident leaf is hashed in place, so it stays in engine storage
+            return node.isResident() ? Fingerprint.ofMatrix(node.getSharedMatrix().layout()) : Fingerprint.ofMatrix(node.getMatrix());
+        }
+        List<ComputationNode> children = node.getChildren();
+        Fingerprint[] operands = new Fingerprint[children.size()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = fingerprints.get(children.get(i));
+        }
+        if (node.getNodeType() == ComputationNodeType.ADD) {
+            Arrays.sort(operands);
+        }
+        return Fingerprint.ofOperation(node.getNodeType().ordinal(), operands);
+    }
+
+    // Exact check behind a fingerprint match; operands are already canonical, so identity suffices for them
+    private static boolean sameValue(ComputationNode a, ComputationNode b) {
+        if (a.getNodeType() != b.getNodeType()) {
+            return false;
+        }
+        if (a.getNodeType() == ComputationNodeType.MATRIX) {
+            if (a.isOnDisk() || b.isOnDisk()) {
+                return a.isOnDisk() && b.isOnDisk() && a.getDiskMatrix() == b.getDiskMatrix();
+            }
+            if (a.isSparse() || b.isSparse()) {
+                return a.isSparse() && b.isSparse() && a.getSparseMatrix().contentEquals(b.getSparseMatrix());
+            }
+            if (a.isResident() || b.isResident()) {
+                return sameElements(a, b);
+            }
+            return Arrays.deepEquals(a.getMatrix(), b.getMatrix());
+        }
+        List<ComputationNode> x = a.getChildren();
+        List<ComputationNode> y = b.getChildren();
+        if (x.size() != y.size()) {
+            return false;
+        }
+        boolean inOrder = true;
+        for (int i = 0; i < x.size() && inOrder; i++) {
+            inOrder = x.get(i) == y.get(i);
+        }
+        if (inOrder) {
+            return true;
+        }
+        return a.getNodeType() == ComputationNodeType.ADD && x.size() == 2
+                && x.get(0) == y.get(1) && x.get(1) == y.get(0);
+    }
+
+    // Element-wise comparison of dense leaves of which at least one is resident, read without copying either
+    private static boolean sameElements(ComputationNode a, ComputationNode b) {
+        if (!a.isResident()) {
+            return sameElements(b, a);
+        }
+        StridedLayout x = a.getSharedMatrix().layout();
+        if (b.isResident()) {
+            StridedLayout y = b.getSharedMatrix().layout();
+            if (x.rows() != y.rows() || x.cols() != y.cols()) {
+                return false;
+            }
+            for (int i = 0; i < x.rows(); i++) {
+                for (int j = 0; j < x.cols(); j++) {
+                    if (Double.doubleToLongBits(x.get(i, j)) != Double.doubleToLongBits(y.get(i, j))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        double[][] rows = b.getMatrix();
+        if (x.rows() != rows.length) {
+            return false;
+        }
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i].length != x.cols()) {
+                return false;
+            }
+            for (int j = 0; j < rows[i].length; j++) {
+                if (Double.doubleToLongBits(x.get(i, j)) != Double.doubleToLongBits(rows[i][j])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
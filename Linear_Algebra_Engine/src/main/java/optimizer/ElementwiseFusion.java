@@ -0,0 +1,143 @@
+package optimizer;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import parser.FusedTerm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collapses chains of ADD, SUBTRACT, NEGATE and TRANSPOSE into FUSED nodes.
+ * All four operations are linear, so any such chain equals a sum of its inputs, each one
+ * possibly negated and/or transposed: -(A + B)^T becomes (-A^T) + (-B^T).
+ * A FUSED node is evaluated in one pass over the output with no intermediate matrices.
+ * Inputs are the nearest descendants that are not fusible (matrices, products, ...).
+ * A node shared by several parents is also kept as an input, so it is still computed only once.
+ * Chains over sparse matrices are left alone, their dedicated sparse kernels skip the zeros.
+ */
+public class ElementwiseFusion {
+
+    // A group of fewer operations gains nothing from fusion and keeps its dedicated kernel
+    private static final int MIN_FUSED_OPERATIONS = 2;
+
+    private ElementwiseFusion() {}
+
+    /**
+     * Rewrites every maximal fusible chain of the tree rooted at root in place.
+     */
+    public static void apply(ComputationNode root) {
+        Map<ComputationNode, Integer> parentCounts = Traversal.parentCounts(root);
+        Set<ComputationNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            if (node.getNodeType() == ComputationNodeType.MATRIX || !visited.add(node)) {
+                continue;
+            }
+            if (isFusible(node) && fuseGroup(node, parentCounts)) {
+                // The inputs of the new FUSED node may contain further chains
+                for (ComputationNode input : node.getChildren()) {
+                    stack.push(input);
+                }
+                continue;
+            }
+            for (ComputationNode child : node.getChildren()) {
+                stack.push(child);
+            }
+        }
+    }
+
+    /**
+     * A well-formed ADD, SUBTRACT, NEGATE or TRANSPOSE. Malformed nodes are left for the engine to reject.
+     */
+    static boolean isFusible(ComputationNode node) {
+        switch (node.getNodeType()) {
+            case ADD:
+            case SUBTRACT:
+                return node.getChildren().size() == 2;
+            case NEGATE:
+            case TRANSPOSE:
+                return node.getChildren().size() == 1;
+            default:
+                return false;
+        }
+    }
+
+    // Turns the fusible group rooted at groupRoot into a FUSED node; returns false if the group is too small
+    private static boolean fuseGroup(ComputationNode groupRoot, Map<ComputationNode, Integer> parentCounts) {
+        List<ComputationNode> inputs = new ArrayList<>();
+        Map<ComputationNode, Integer> inputIndex = new IdentityHashMap<>();
+        List<FusedTerm> terms = new ArrayList<>();
+        int operations = 0;
+
+        Deque<PartialTerm> stack = new ArrayDeque<>();
+        stack.push(new PartialTerm(groupRoot, false, false));
+        while (!stack.isEmpty()) {
+            PartialTerm current = stack.pop();
+            ComputationNode node = current.node;
+            boolean shared = node != groupRoot && parentCounts.getOrDefault(node, 0) > 1;
+            if (!isFusible(node) || shared) {
+                Integer index = inputIndex.get(node);
+                if (index == null) {
+                    index = inputs.size();
+                    inputIndex.put(node, index);
+                    inputs.add(node);
+                }
+                terms.add(new FusedTerm(index, current.negated, current.transposed));
+                continue;
+            }
+            operations++;
+            List<ComputationNode> children = node.getChildren();
+            switch (node.getNodeType()) {
+                case ADD:
+                    // Pushed in reverse so terms keep the left-to-right order of the expression
+                    stack.push(new PartialTerm(children.get(1), current.negated, current.transposed));
+                    stack.push(new PartialTerm(children.get(0), current.negated, current.transposed));
+                    break;
+                case SUBTRACT:
+                    stack.push(new PartialTerm(children.get(1), !current.negated, current.transposed));
+                    stack.push(new PartialTerm(children.get(0), current.negated, current.transposed));
+                    break;
+                case NEGATE:
+                    stack.push(new PartialTerm(children.get(0), !current.negated, current.transposed));
+                    break;
+                case TRANSPOSE:
+                    stack.push(new PartialTerm(children.get(0), current.negated, !current.transposed));
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected fusible node " + node.getNodeType());
+            }
+        }
+
+        if (operations < MIN_FUSED_OPERATIONS) {
+            return false;
+        }
+        for (ComputationNode input : inputs) {
+            if (input.getNodeType() == ComputationNodeType.MATRIX && input.isSparse()) {
+                return false;
+            }
+        }
+        groupRoot.fuse(inputs, terms);
+        return true;
+    }
+
+    private static class PartialTerm {
+        final ComputationNode node;
+        final boolean negated;
+        final boolean transposed;
+
+        PartialTerm(ComputationNode node, boolean negated, boolean transposed) {
+            this.node = node;
+            this.negated = negated;
+            this.transposed = transposed;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package optimizer;
+
+import memory.SparseMatrix;
+import memory.StridedLayout;
+
+/**
+ * A 128-bit structural hash of a subexpression.
+ * Leaves are hashed by shape and content, operations by their type and their operands' fingerprints,
+ * so two subtrees that compute the same thing get the same fingerprint wherever they appear.
+ * The two 64-bit halves are computed with independent mixing functions, which makes an accidental
+ * collision between different subexpressions negligible in practice.
+ */
+public final class Fingerprint implements Comparable<Fingerprint> {
+
+    private static final long SEED_HIGH = 0x9E3779B97F4A7C15L;
+    private static final long SEED_LOW = 0xC2B2AE3D27D4EB4FL;
+
+    private final long high;
+    private final long low;
+
+    private Fingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static Fingerprint ofMatrix(double[][] matrix) {
+        int rows = matrix.length;
+        int cols = rows == 0 ? 0 : matrix[0].length;
+        long h = mix(SEED_HIGH, rows) + cols;
+        long l = mix(SEED_LOW ^ cols, rows);
+        for (double[] row : matrix) {
+            for (double value : row) {
+                long bits = Double.doubleToLongBits(value);
+                h = elementHigh(h, bits);
+                l = elementLow(l, bits);
+            }
+        }
+        return new Fingerprint(fmix(h), fmix(l + h));
+    }
+
+    /**
+     * Fingerprint of a matrix read in place from engine storage, equal to that of the same elements as rows.
+     */
+    public static Fingerprint ofMatrix(StridedLayout matrix) {
+        int rows = matrix.rows();
+        int cols = matrix.cols();
+        long h = mix(SEED_HIGH, rows) + cols;
+        long l = mix(SEED_LOW ^ cols, rows);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                long bits = Double.doubleToLongBits(matrix.get(i, j));
+                h = elementHigh(h, bits);
+                l = elementLow(l, bits);
+            }
+        }
+        return new Fingerprint(fmix(h), fmix(l + h));
+    }
+
+    /**
+     * Fingerprint of a sparse matrix from its shape and non-zeros only, so its zeros are never visited.
+     */
+    public static Fingerprint ofSparse(SparseMatrix matrix) {
+        long[] state = {mix(SEED_LOW, matrix.rows()) + matrix.cols(), mix(SEED_HIGH ^ matrix.cols(), ~matrix.rows())};
+        matrix.forEachNonZero((row, col, value) -> {
+            long position = ((long) row << 32) | col;
+            long bits = Double.doubleToLongBits(value);
+            state[0] = mix(state[0], position) ^ bits;
+            state[1] = Long.rotateLeft(state[1] + bits * 0x87C37B91114253D5L, 31) * 0x4CF5AD432745937FL + position;
+        });
+        return new Fingerprint(fmix(state[0]), fmix(state[1] + state[0]));
+    }
+
+    /**
+     * Fingerprint of a matrix identified by its storage rather than its content, for matrices
+     * too large to hash. Two such leaves match only if they share the same storage.
+     */
+    public static Fingerprint ofStorage(long storageId) {
+        return new Fingerprint(fmix(mix(SEED_LOW, storageId)), fmix(mix(SEED_HIGH, ~storageId)));
+    }
+
+    /**
+     * Fingerprint of an operation of the given kind applied to operands in the given order.
+     */
+    public static Fingerprint ofOperation(int kind, Fingerprint... operands) {
+        long h = mix(SEED_HIGH, kind);
+        long l = mix(SEED_LOW, ~kind);
+        for (Fingerprint operand : operands) {
+            h = mix(h, operand.high) ^ operand.low;
+            l = mix(l, operand.low) + operand.high;
+        }
+        return new Fingerprint(fmix(h), fmix(l));
+    }
+
+    /**
+     * Orders fingerprints, used to canonicalize the operands of commutative operations.
+     */
+    @Override
+    public int compareTo(Fingerprint other) {
+        int cmp = Long.compare(high, other.high);
+        return cmp != 0 ? cmp : Long.compare(low, other.low);
+    }
+
+    private static long elementHigh(long h, long bits) {
+        return (h ^ bits) * 0x100000001B3L + 0x5851F42D4C957F2DL;
+    }
+
+    private static long elementLow(long l, long bits) {
+        return Long.rotateLeft(l + bits * 0x87C37B91114253D5L, 31) * 0x4CF5AD432745937FL;
+    }
+
+    private static long mix(long state, long value) {
+        return Long.rotateLeft(state ^ fmix(value + 0x632BE59BD9B4E019L), 27) * 0x9FB21C651E98DF25L;
+    }
+
+    // MurmurHash3 finalizer
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Fingerprint)) {
+            return false;
+        }
+        Fingerprint other = (Fingerprint) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (high ^ (high >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
@@ -0,0 +1,98 @@
+package optimizer;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lifetimes of the intermediate results of a tree, planned before it is evaluated.
+ * The shape of every operation's result is inferred from the leaves, and a result is live from
+ * the moment it is computed until its last reader has been computed; leaf operands are loaded only
+ * while their reader is computed. Evaluating the tree children first, the plan finds the largest
+ * number of bytes live at once: the engine keeps no more free storage than that for reuse, and
+ * recycles an intermediate's storage as soon as the readers counted here have finished with it.
+ */
+public class MemoryPlan {
+
+    private final Map<ComputationNode, int[]> shapes = new IdentityHashMap<>();
+    private final Map<ComputationNode, Integer> readers;
+    private final long peakBytes;
+
+    private MemoryPlan(ComputationNode root) {
+        List<ComputationNode> order = Traversal.postOrder(root);
+        readers = Traversal.parentCounts(root);
+        for (ComputationNode node : order) {
+            shapes.put(node, node.inferShape(shapes));
+        }
+
+        Map<ComputationNode, Integer> remaining = new IdentityHashMap<>(readers);
+        long live = 0;
+        long peak = 0;
+        for (ComputationNode node : order) {
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                continue;
+            }
+            live += storageBytes(node);
+            peak = Math.max(peak, live + loadedBytes(node));
+            for (ComputationNode child : node.getChildren()) {
+                if (child.getNodeType() != ComputationNodeType.MATRIX && remaining.merge(child, -1, Integer::sum) == 0) {
+                    live -= storageBytes(child);
+                }
+            }
+        }
+        this.peakBytes = peak;
+    }
+
+    public static MemoryPlan of(ComputationNode root) {
+        return new MemoryPlan(root);
+    }
+
+    /**
+     * How many operations read the node's result; 0 for the root.
+     */
+    public int readers(ComputationNode node) {
+        return readers.getOrDefault(node, 0);
+    }
+
+    /**
+     * {rows, cols} of the node's result, or null if it cannot be inferred.
+     */
+    public int[] shape(ComputationNode node) {
+        return shapes.get(node);
+    }
+
+    /**
+     * Most bytes of intermediate results and loaded operands live at once, the root's result included.
+     */
+    public long peakBytes() {
+        return peakBytes;
+    }
+
+    // Leaf operands loaded into engine storage only while the node is computed
+    private long loadedBytes(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.TRANSPOSE) {
+            return 0; // the loaded leaf is the result's own storage
+        }
+        long bytes = 0;
+        for (ComputationNode child : node.getChildren()) {
+            int[] shape = shapes.get(child);
+            if (child.getNodeType() == ComputationNodeType.MATRIX && shape != null) {
+                bytes += 8L * shape[0] * shape[1];
+            }
+        }
+        return bytes;
+    }
+
+    // A transpose of an intermediate is a view of its storage and needs none of its own
+    private long storageBytes(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.TRANSPOSE && node.getChildren().size() == 1
+                && node.getChildren().get(0).getNodeType() != ComputationNodeType.MATRIX) {
+            return 0;
+        }
+        int[] shape = shapes.get(node);
+        return shape == null ? 0 : 8L * shape[0] * shape[1];
+    }
+}
@@ -0,0 +1,47 @@
+package optimizer;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.List;
+
+/**
+ * Finds products of a matrix with its own transpose, X * X^T and X^T * X, and turns them into
+ * GRAM nodes, whose symmetric result the engine computes only on and above the diagonal.
+ * The operands are matched by identity, so the pass runs after CommonSubexpressions has merged
+ * equal subtrees: X must be the very node under the transpose. X^T * X is the GRAM of X^T, whose
+ * transpose costs nothing, being a view of X. Products of a sparse matrix are left to the sparse
+ * kernel, which skips the zeros and so does less work than half a dense product.
+ */
+public class SymmetricProducts {
+
+    private SymmetricProducts() {}
+
+    /**
+     * Rewrites every symmetric product of the tree rooted at root in place.
+     */
+    public static void apply(ComputationNode root) {
+        for (ComputationNode node : Traversal.postOrder(root)) {
+            if (node.getNodeType() != ComputationNodeType.MULTIPLY || node.getChildren().size() != 2) {
+                continue;
+            }
+            ComputationNode left = node.getChildren().get(0);
+            ComputationNode right = node.getChildren().get(1);
+            if (isSparseLeaf(left) || isSparseLeaf(right)) {
+                continue;
+            }
+            if (isTransposeOf(right, left) || isTransposeOf(left, right)) {
+                node.rewrite(ComputationNodeType.GRAM, List.of(left));
+            }
+        }
+    }
+
+    private static boolean isSparseLeaf(ComputationNode node) {
+        return node.getNodeType() == ComputationNodeType.MATRIX && node.isSparse();
+    }
+
+    private static boolean isTransposeOf(ComputationNode node, ComputationNode operand) {
+        return node.getNodeType() == ComputationNodeType.TRANSPOSE && node.getChildren().size() == 1
+                && node.getChildren().get(0) == operand;
+    }
+}
@@ -0,0 +1,71 @@
+package optimizer;
+
+import parser.ComputationNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Iterative walks over a computation tree, which after common-subexpression elimination
+ * may share nodes between several parents. Every node is visited once.
+ */
+final class Traversal {
+
+    private Traversal() {}
+
+    /**
+     * All nodes reachable from root, each one after all of its descendants.
+     */
+    static List<ComputationNode> postOrder(ComputationNode root) {
+        List<ComputationNode> order = new ArrayList<>();
+        Set<ComputationNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        Deque<Boolean> expanded = new ArrayDeque<>();
+        stack.push(root);
+        expanded.push(false);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            boolean childrenDone = expanded.pop();
+            if (childrenDone) {
+                order.add(node);
+                continue;
+            }
+            if (!visited.add(node)) {
+                continue;
+            }
+            stack.push(node);
+            expanded.push(true);
+            List<ComputationNode> children = node.getChildren();
+            if (children != null) {
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    if (!visited.contains(children.get(i))) {
+                        stack.push(children.get(i));
+                        expanded.push(false);
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * How many times each reachable node appears as an operand. The root has no entry.
+     */
+    static Map<ComputationNode, Integer> parentCounts(ComputationNode root) {
+        Map<ComputationNode, Integer> counts = new IdentityHashMap<>();
+        for (ComputationNode node : postOrder(root)) {
+            if (node.getChildren() != null) {
+                for (ComputationNode child : node.getChildren()) {
+                    counts.merge(child, 1, Integer::sum);
+                }
+            }
+        }
+        return counts;
+    }
+}
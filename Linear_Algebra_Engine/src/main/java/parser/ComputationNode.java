@@ -1,12 +1,29 @@
 package parser;
 
+import memory.DiskMatrix;
+import memory.SharedMatrix;
+import memory.SparseMatrix;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ComputationNode {
 
+    // Longer products are nested left to right, the O(n^3) order search would cost more than it saves
+    private static final int MAX_ORDERED_CHAIN = 256;
+
     private ComputationNodeType nodeType;
     private List<ComputationNode> children = null;
     private double[][] matrix = null; // only used for MATRIX nodes
+    private DiskMatrix diskMatrix = null; // MATRIX nodes whose matrix is kept on disk instead of in matrix
+    private SparseMatrix sparseMatrix = null; // MATRIX nodes whose matrix is mostly zeros
+    private SharedMatrix sharedMatrix = null; // MATRIX nodes whose result is still held in engine storage
+    private List<FusedTerm> fusedTerms = null; // only used for FUSED nodes
 
     public ComputationNode(String operatorStr, List<ComputationNode> children) throws IllegalArgumentException {
         this.nodeType = mapOperator(operatorStr);
@@ -38,6 +55,24 @@ public class ComputationNode {
         this.matrix = matrix;
     }
 
+    public ComputationNode(DiskMatrix diskMatrix) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.diskMatrix = diskMatrix;
+    }
+
+    public ComputationNode(SparseMatrix sparseMatrix) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.sparseMatrix = sparseMatrix;
+    }
+
+    /**
+     * A leaf whose matrix is already laid out in engine storage, read by kernels without a copy.
+     */
+    public ComputationNode(SharedMatrix sharedMatrix) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.sharedMatrix = sharedMatrix;
+    }
+
     public ComputationNodeType getNodeType() {
         return nodeType;
     }
@@ -71,13 +106,137 @@ public class ComputationNode {
      * are nested in a left-associative manner.
      * For example, A + B + C becomes (A + B) + C.
      * Effectively, this converts n-ary operations (n > 2) into binary operations.
+     * Products are the exception: when the shapes of all operands can be inferred from the
+     * leaf matrices, A * B * C * ... is parenthesized in the order that needs the fewest scalar
+     * multiplications (see MatrixChainOrder), and only falls back to left association otherwise.
+     * The whole tree below this node is restructured.
      */
     public void associativeNesting() {
-        if (children != null && children.size() > 2) {
-            ComputationNode lastChild = children.remove(children.size() - 1);
-            ComputationNode newNode = new ComputationNode(nodeType, children);
-            children = List.of(newNode, lastChild);
-            newNode.associativeNesting();
+        // Reversed pre-order: every node comes after all of its descendants,
+        // so the shapes of its operands are already known when it is nested
+        List<ComputationNode> postOrder = new ArrayList<>();
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            postOrder.add(node);
+            if (node.children != null) {
+                for (ComputationNode child : node.children) {
+                    stack.push(child);
+                }
+            }
+        }
+        Collections.reverse(postOrder);
+
+        Map<ComputationNode, int[]> shapes = new IdentityHashMap<>();
+        for (ComputationNode node : postOrder) {
+            node.nestChildren(shapes);
+            shapes.put(node, node.inferShape(shapes));
+        }
+    }
+
+    private void nestChildren(Map<ComputationNode, int[]> shapes) {
+        if (children == null || children.size() <= 2) {
+            return;
+        }
+        int last = children.size() - 1;
+        if (nodeType == ComputationNodeType.MULTIPLY && children.size() <= MAX_ORDERED_CHAIN) {
+            int[] dims = chainDimensions(children, shapes);
+            if (dims != null) {
+                MatrixChainOrder order = new MatrixChainOrder(dims);
+                List<ComputationNode> operands = children;
+                int split = order.getSplit(0, last);
+                children = List.of(buildChain(operands, order, 0, split, shapes),
+                        buildChain(operands, order, split + 1, last, shapes));
+                return;
+            }
+        }
+        ComputationNode nested = children.get(0);
+        for (int i = 1; i < last; i++) {
+            nested = new ComputationNode(nodeType, new ArrayList<>(List.of(nested, children.get(i))));
+            shapes.put(nested, nested.inferShape(shapes));
+        }
+        children = List.of(nested, children.get(last));
+    }
+
+    private static ComputationNode buildChain(List<ComputationNode> operands, MatrixChainOrder order,
+                                              int from, int to, Map<ComputationNode, int[]> shapes) {
+        if (from == to) {
+            return operands.get(from);
+        }
+        int split = order.getSplit(from, to);
+        ComputationNode product = new ComputationNode(ComputationNodeType.MULTIPLY, List.of(
+                buildChain(operands, order, from, split, shapes),
+                buildChain(operands, order, split + 1, to, shapes)));
+        shapes.put(product, product.inferShape(shapes));
+        return product;
+    }
+
+    // dims for MatrixChainOrder, or null when a shape is unknown or two neighbours do not chain
+    private static int[] chainDimensions(List<ComputationNode> operands, Map<ComputationNode, int[]> shapes) {
+        int[] dims = new int[operands.size() + 1];
+        for (int i = 0; i < operands.size(); i++) {
+            int[] shape = shapes.get(operands.get(i));
+            if (shape == null || (i > 0 && shape[0] != dims[i])) {
+                return null;
+            }
+            dims[i] = shape[0];
+            dims[i + 1] = shape[1];
+        }
+        return dims;
+    }
+
+    /**
+     * {rows, cols} of this node's result given the shapes of its children, or null if it cannot be inferred.
+     */
+    public int[] inferShape(Map<ComputationNode, int[]> shapes) {
+        if (nodeType == ComputationNodeType.MATRIX) {
+            if (diskMatrix != null) {
+                return new int[]{diskMatrix.rows(), diskMatrix.cols()};
+            }
+            if (sparseMatrix != null) {
+                return new int[]{sparseMatrix.rows(), sparseMatrix.cols()};
+            }
+            if (sharedMatrix != null) {
+                return new int[]{sharedMatrix.rows(), sharedMatrix.cols()};
+            }
+            return new int[]{matrix.length, matrix.length == 0 ? 0 : matrix[0].length};
+        }
+        if (children == null || children.isEmpty()) {
+            return null;
+        }
+        int[] first = shapes.get(children.get(0));
+        if (first == null) {
+            return null;
+        }
+        switch (nodeType) {
+            case NEGATE:
+                return children.size() == 1 ? first : null;
+            case TRANSPOSE:
+                return children.size() == 1 ? new int[]{first[1], first[0]} : null;
+            case GRAM:
+                return children.size() == 1 ? new int[]{first[0], first[0]} : null;
+            case ADD:
+            case SUBTRACT:
+                for (ComputationNode child : children) {
+                    int[] shape = shapes.get(child);
+                    if (shape == null || shape[0] != first[0] || shape[1] != first[1]) {
+                        return null;
+                    }
+                }
+                return children.size() >= 2 ? first : null;
+            case MULTIPLY:
+                int[] dims = chainDimensions(children, shapes);
+                return dims == null || children.size() < 2 ? null : new int[]{dims[0], dims[dims.length - 1]};
+            case FUSED:
+                FusedTerm term = fusedTerms.get(0);
+                int[] input = shapes.get(children.get(term.getInput()));
+                if (input == null) {
+                    return null;
+                }
+                return term.isTransposed() ? new int[]{input[1], input[0]} : input;
+            default:
+                return null;
         }
     }
 
@@ -87,11 +246,173 @@ public class ComputationNode {
     public void resolve(double[][] matrix) {
         this.nodeType = ComputationNodeType.MATRIX;
         this.children = null;
+        this.fusedTerms = null;
         this.matrix = matrix;
+        this.diskMatrix = null;
+        this.sparseMatrix = null;
+        this.sharedMatrix = null;
+    }
+
+    /**
+     * Resolves this node to a matrix stored in sparse form.
+     */
+    public void resolve(SparseMatrix sparseMatrix) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.children = null;
+        this.fusedTerms = null;
+        this.matrix = null;
+        this.diskMatrix = null;
+        this.sparseMatrix = sparseMatrix;
+        this.sharedMatrix = null;
     }
 
-    public double[][] getMatrix() {
+    /**
+     * Resolves this node to a matrix that is kept on disk.
+     */
+    public void resolve(DiskMatrix diskMatrix) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.children = null;
+        this.fusedTerms = null;
+        this.matrix = null;
+        this.diskMatrix = diskMatrix;
+        this.sparseMatrix = null;
+        this.sharedMatrix = null;
+    }
+
+    /**
+     * Resolves this node to a matrix left in the engine's storage, so a parent computation can
+     * use it without a copy. It is only converted to double[][] if getMatrix() is called.
+     */
+    public void resolve(SharedMatrix sharedMatrix) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.children = null;
+        this.fusedTerms = null;
+        this.matrix = null;
+        this.diskMatrix = null;
+        this.sparseMatrix = null;
+        this.sharedMatrix = sharedMatrix;
+    }
+
+    /**
+     * Resolves this node to the matrix of an already resolved node; the storage is shared, not copied.
+     */
+    public void resolve(ComputationNode matrixNode) {
+        if (matrixNode.nodeType != ComputationNodeType.MATRIX) {
+            throw new IllegalArgumentException("Only a matrix node can stand for another node's result.");
+        }
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.children = null;
+        this.fusedTerms = null;
+        // A cached node may be read out into rows by another thread meanwhile
+        synchronized (matrixNode) {
+            this.matrix = matrixNode.matrix;
+            this.diskMatrix = matrixNode.diskMatrix;
+            this.sparseMatrix = matrixNode.sparseMatrix;
+            this.sharedMatrix = matrixNode.sharedMatrix;
+        }
+    }
+
+    /**
+     * Drops the matrix of a resolved intermediate whose storage the engine has recycled;
+     * the node keeps its MATRIX type but no longer holds a matrix.
+     */
+    public synchronized void release() {
+        this.matrix = null;
+        this.diskMatrix = null;
+        this.sparseMatrix = null;
+        this.sharedMatrix = null;
+    }
+
+    /**
+     * Replaces the operands of this node, keeping its operation.
+     */
+    public void replaceChildren(List<ComputationNode> children) {
+        if (nodeType == ComputationNodeType.MATRIX) {
+            throw new IllegalStateException("A matrix node has no operands.");
+        }
+        this.children = children;
+    }
+
+    /**
+     * Replaces this node's operation and operands by an equivalent expression, e.g. when an
+     * algebraic rewrite turns (A^T)^T into A; nodes referring to this one see the new expression.
+     */
+    public void rewrite(ComputationNodeType nodeType, List<ComputationNode> children) {
+        if (this.nodeType == ComputationNodeType.MATRIX) {
+            throw new IllegalStateException("A matrix node has no operation to rewrite.");
+        }
+        if (nodeType == ComputationNodeType.MATRIX || nodeType == ComputationNodeType.FUSED) {
+            throw new IllegalArgumentException("A node can only be rewritten into a plain operation, not " + nodeType);
+        }
+        this.nodeType = nodeType;
+        this.children = children;
+        this.fusedTerms = null;
+    }
+
+    /**
+     * Replaces this node's operation by a FUSED node summing the given terms over the given inputs.
+     */
+    public void fuse(List<ComputationNode> inputs, List<FusedTerm> terms) {
+        this.nodeType = ComputationNodeType.FUSED;
+        this.children = inputs;
+        this.fusedTerms = terms;
+    }
+
+    public List<FusedTerm> getFusedTerms() {
+        if (fusedTerms == null) {
+            throw new IllegalStateException("This node is not a fused node.");
+        }
+        return fusedTerms;
+    }
+
+    public boolean isOnDisk() {
+        return diskMatrix != null;
+    }
+
+    public DiskMatrix getDiskMatrix() {
+        if (diskMatrix == null) {
+            throw new IllegalStateException("This node does not contain a matrix on disk.");
+        }
+        return diskMatrix;
+    }
+
+    public boolean isSparse() {
+        return sparseMatrix != null;
+    }
+
+    public SparseMatrix getSparseMatrix() {
+        if (sparseMatrix == null) {
+            throw new IllegalStateException("This node does not contain a sparse matrix.");
+        }
+        return sparseMatrix;
+    }
+
+    public boolean isResident() {
+        return sharedMatrix != null;
+    }
+
+    public SharedMatrix getSharedMatrix() {
+        if (sharedMatrix == null) {
+            throw new IllegalStateException("This node's matrix is not held in engine storage.");
+        }
+        return sharedMatrix;
+    }
+
+    /**
+     * The matrix as rows. A matrix still in engine storage is read out once, on the first call.
+     */
+    public synchronized double[][] getMatrix() {
+        if (matrix == null && sharedMatrix != null) {
+            matrix = sharedMatrix.readRowMajor();
+            sharedMatrix = null;
+        }
         if (matrix == null) {
+            if (diskMatrix != null) {
+                throw new IllegalStateException("This node's matrix is kept on disk.");
+            }
+            if (sparseMatrix != null) {
+                throw new IllegalStateException("This node's matrix is stored in sparse form.");
+            }
             throw new IllegalStateException("This node does not contain a matrix.");
         }
         return matrix;
@@ -9,5 +9,21 @@ public enum ComputationNodeType {
     MULTIPLY,
     NEGATE,
     TRANSPOSE,
+    /**
+     * The difference of two operands, left - right. Not parsed from the input: the optimizer
+     * turns A + (-B) into it so the negation never has to be computed on its own.
+     */
+    SUBTRACT,
+    /**
+     * The product X * X^T of the single operand X with its own transpose. Not parsed from the input:
+     * the optimizer recognizes it in X * X^T and X^T * X, and the result, being symmetric, is
+     * computed only above the diagonal.
+     */
+    GRAM,
     MATRIX,
+    /**
+     * A chain of ADD, SUBTRACT, NEGATE and TRANSPOSE operations collapsed into a sum of
+     * (possibly negated and transposed) inputs, evaluated in a single pass.
+     */
+    FUSED,
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package parser;
+
+/**
+ * One term of a FUSED node: input number {@code input} of the node, optionally negated and/or transposed.
+ * The value of a FUSED node is the sum of its terms.
+ */
+public class FusedTerm {
+
+    private final int input;
+    private final boolean negated;
+    private final boolean transposed;
+
+    public FusedTerm(int input, boolean negated, boolean transposed) {
+        this.input = input;
+        this.negated = negated;
+        this.transposed = transposed;
+    }
+
+    public int getInput() {
+        return input;
+    }
+
+    public boolean isNegated() {
+        return negated;
+    }
+
+    public boolean isTransposed() {
+        return transposed;
+    }
+}
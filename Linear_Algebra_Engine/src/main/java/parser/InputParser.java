@@ -1,68 +1,317 @@
 package parser;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import memory.SparseMatrix;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.*;
 
+/**
+ * Reads the input JSON with Jackson's streaming JsonParser. Matrix elements go straight from
+ * the token stream into double rows, so no intermediate JsonNode tree is ever built and the
+ * peak memory of a large matrix is close to the size of the matrix itself.
+ * A leaf may also be a reference {"file": "matrices.laem", "name": "A"} to a matrix of a binary
+ * MatrixFile, resolved relative to the directory of the input file.
+ * Matrices that are mostly zeros are stored as a SparseMatrix; they are recognized row by row
+ * while parsing, so a sparse matrix never exists in dense form.
+ */
 public class InputParser {
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    private static final int INITIAL_ROW_CAPACITY = 16;
+
+    private long spillBytes = Long.MAX_VALUE;
+
+    private final JsonFactory factory = JsonFactory.builder()
+            .enable(StreamReadFeature.USE_FAST_DOUBLE_PARSER)
+            .build();
+
+    /**
+     * Matrices of binary files larger than this are not loaded; their leaves read them from the file
+     * as DiskMatrix operands instead.
+     */
+    public void setSpillBytes(long spillBytes) {
+        this.spillBytes = spillBytes;
+    }
 
     public ComputationNode parse(String inputPath) throws ParseException {
-        try {
-            File inputFile = new File(inputPath);
-            JsonNode rootJsonNode = mapper.readTree(inputFile);
-            ComputationNode root = parseJsonNode(rootJsonNode);
-            return root;
+        File inputFile = new File(inputPath);
+        try (JsonParser parser = factory.createParser(inputFile);
+             MatrixReferences references = new MatrixReferences(inputFile.getAbsoluteFile().toPath().getParent(), spillBytes)) {
+            if (parser.nextToken() == null) {
+                throw new ParseException("Failed to read the input JSON file: the file is empty", 0);
+            }
+            return parseNode(parser, references);
         } catch (IOException e) {
             throw new ParseException("Failed to read the input JSON file: " + e.getMessage(), 0);
         }
     }
 
-    private ComputationNode parseJsonNode(JsonNode jsonNode) throws ParseException {
-        if (jsonNode.has("operator") && jsonNode.has("operands")) {
-            String operatorStr = jsonNode.get("operator").asText();
-            ArrayNode operandJsonNodes = (ArrayNode) jsonNode.get("operands");
-            List<ComputationNode> operands = new ArrayList<>();
-            for (int i = 0; i < operandJsonNodes.size(); i++) {
-                operands.add(parseJsonNode(operandJsonNodes.get(i)));
-            }
-            return new ComputationNode(operatorStr, operands);
+    // The parser is positioned on the first token of the node; on return it is on the last one
+    private ComputationNode parseNode(JsonParser parser, MatrixReferences references) throws IOException, ParseException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            return parseObject(parser, references);
+        }
+        else if (token == JsonToken.START_ARRAY) {
+            return parseMatrix(parser);
         }
-        else if (jsonNode.isArray()) {
-            if (jsonNode.size() == 0) {
-                throw new ParseException("Empty array cannot be parsed as DataNode.", 0);
+        else { throw error(parser, "Invalid node structure: " + parser.getText()); }
+    }
+
+    // Either an operation or a reference to a matrix in a binary file
+    private ComputationNode parseObject(JsonParser parser, MatrixReferences references) throws IOException, ParseException {
+        String operatorStr = null;
+        String file = null;
+        String name = null;
+        List<ComputationNode> operands = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("operator")) {
+                if (!value.isScalarValue()) {
+                    throw error(parser, "Invalid operator: expected a string");
+                }
+                operatorStr = parser.getText();
+            }
+            else if (field.equals("operands")) {
+                if (value != JsonToken.START_ARRAY) {
+                    throw error(parser, "Invalid operands: expected an array");
+                }
+                operands = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    operands.add(parseNode(parser, references));
+                }
             }
-            // Check if it's a vector (1D array)
-            if (jsonNode.get(0).isNumber()) {
-                throw new ParseException("Vectors (1D arrays) are not supported as standalone nodes.", 0);
+            else if (field.equals("file") && value == JsonToken.VALUE_STRING) {
+                file = parser.getText();
+            }
+            else if (field.equals("name") && value == JsonToken.VALUE_STRING) {
+                name = parser.getText();
             }
-            // Otherwise, it's a matrix (2D array)
             else {
-                double[][] matrix = new double[jsonNode.size()][];
-                int width = jsonNode.get(0).size();
-                for (int i = 0; i < jsonNode.size(); i++) {
-                    JsonNode rowJsonNode = jsonNode.get(i);
-                    if (rowJsonNode.size() != width) {
-                        throw new ParseException("Inconsistent row sizes in matrix.", 0);
-                    }
-                    if (!rowJsonNode.isArray()) {
-                        throw new ParseException("Invalid matrix row: " + rowJsonNode.toString(), 0);
+                // Unknown fields are ignored, as they were by the tree-based parser
+                parser.skipChildren();
+            }
+        }
+        if (operatorStr == null && operands == null && file != null && name != null) {
+            try {
+                return references.load(file, name);
+            } catch (IllegalArgumentException e) {
+                throw error(parser, e.getMessage() + " (" + file + ")");
+            }
+        }
+        if (operatorStr == null || operands == null) {
+            throw error(parser, "Invalid node structure: an operation needs both \"operator\" and \"operands\", a matrix reference both \"file\" and \"name\"");
+        }
+        return new ComputationNode(operatorStr, operands);
+    }
+
+    private ComputationNode parseMatrix(JsonParser parser) throws IOException, ParseException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            throw error(parser, "Empty array cannot be parsed as DataNode.");
+        }
+        // Check if it's a vector (1D array)
+        if (token.isNumeric()) {
+            throw error(parser, "Vectors (1D arrays) are not supported as standalone nodes.");
+        }
+        // Otherwise, it's a matrix (2D array); the first row fixes the width of all the others
+        ParsedRows rows = new ParsedRows();
+        double[] buffer = null;
+        for (; token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (token != JsonToken.START_ARRAY) {
+                throw error(parser, "Invalid matrix row: " + parser.getText());
+            }
+            if (buffer == null) {
+                buffer = readFirstRow(parser);
+            } else {
+                readRow(parser, buffer);
+            }
+            if (!rows.add(buffer)) {
+                buffer = new double[buffer.length]; // the row was kept as it is
+            }
+        }
+        return rows.toNode();
+    }
+
+    // The width is not known yet, so the row grows like an ArrayList and is trimmed at the end
+    private double[] readFirstRow(JsonParser parser) throws IOException, ParseException {
+        double[] row = new double[INITIAL_ROW_CAPACITY];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == row.length) {
+                row = Arrays.copyOf(row, row.length * 2);
+            }
+            row[size++] = readElement(parser);
+        }
+        return Arrays.copyOf(row, size);
+    }
+
+    private void readRow(JsonParser parser, double[] row) throws IOException, ParseException {
+        int width = row.length;
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == width) {
+                throw error(parser, "Inconsistent row sizes in matrix.");
+            }
+            row[size++] = readElement(parser);
+        }
+        if (size != width) {
+            throw error(parser, "Inconsistent row sizes in matrix.");
+        }
+    }
+
+    private double readElement(JsonParser parser) throws IOException, ParseException {
+        if (!parser.currentToken().isNumeric()) {
+            throw error(parser, "Invalid matrix element: " + parser.getText());
+        }
+        return parser.getDoubleValue();
+    }
+
+    private static ParseException error(JsonParser parser, String message) {
+        // Files are read as bytes, so only the byte offset is known there
+        JsonLocation location = parser.currentLocation();
+        long offset = Math.max(location.getCharOffset(), location.getByteOffset());
+        return new ParseException(message, (int) Math.min(Integer.MAX_VALUE, Math.max(0, offset)));
+    }
+
+    /**
+     * The rows of a matrix being parsed. Rows that are mostly zeros are kept compressed, the
+     * others as they are; once all rows are known the matrix becomes sparse or dense as a whole.
+     */
+    private static class ParsedRows {
+        private final List<double[]> denseRows = new ArrayList<>(); // null where the row is compressed
+        private final List<int[]> sparseCols = new ArrayList<>();
+        private final List<double[]> sparseValues = new ArrayList<>();
+        private long nnz = 0;
+        private int width = 0;
+
+        // Returns true if row was copied and can be reused by the caller
+        boolean add(double[] row) {
+            width = row.length;
+            int rowNnz = 0;
+            for (double value : row) {
+                if (value != 0.0) {
+                    rowNnz++;
+                }
+            }
+            nnz += rowNnz;
+            if (rowNnz > SparseMatrix.MAX_SPARSE_DENSITY * row.length) {
+                denseRows.add(row);
+                sparseCols.add(null);
+                sparseValues.add(null);
+                return false;
+            }
+            int[] cols = new int[rowNnz];
+            double[] values = new double[rowNnz];
+            for (int j = 0, k = 0; j < row.length; j++) {
+                if (row[j] != 0.0) {
+                    cols[k] = j;
+                    values[k++] = row[j];
+                }
+            }
+            denseRows.add(null);
+            sparseCols.add(cols);
+            sparseValues.add(values);
+            return true;
+        }
+
+        ComputationNode toNode() {
+            int rows = denseRows.size();
+            if (SparseMatrix.isSparseEnough(rows, width, nnz)) {
+                return new ComputationNode(toSparse(rows));
+            }
+            double[][] matrix = new double[rows][];
+            for (int i = 0; i < rows; i++) {
+                matrix[i] = denseRows.get(i);
+                if (matrix[i] == null) {
+                    matrix[i] = new double[width];
+                    int[] cols = sparseCols.get(i);
+                    for (int k = 0; k < cols.length; k++) {
+                        matrix[i][cols[k]] = sparseValues.get(i)[k];
                     }
-                    matrix[i] = new double[rowJsonNode.size()];
-                    for (int j = 0; j < rowJsonNode.size(); j++) {
-                        matrix[i][j] = rowJsonNode.get(j).asDouble();
+                }
+            }
+            return new ComputationNode(matrix);
+        }
+
+        private SparseMatrix toSparse(int rows) {
+            int[] rowPtr = new int[rows + 1];
+            int[] colIdx = new int[(int) nnz];
+            double[] values = new double[(int) nnz];
+            int n = 0;
+            for (int i = 0; i < rows; i++) {
+                double[] dense = denseRows.get(i);
+                if (dense == null) {
+                    int[] cols = sparseCols.get(i);
+                    System.arraycopy(cols, 0, colIdx, n, cols.length);
+                    System.arraycopy(sparseValues.get(i), 0, values, n, cols.length);
+                    n += cols.length;
+                } else {
+                    for (int j = 0; j < dense.length; j++) {
+                        if (dense[j] != 0.0) {
+                            colIdx[n] = j;
+                            values[n++] = dense[j];
+                        }
                     }
                 }
-                return new ComputationNode(matrix);
+                rowPtr[i + 1] = n;
             }
+            return new SparseMatrix(rows, width, rowPtr, colIdx, values);
         }
-        else { throw new ParseException("Invalid node structure: " + jsonNode.toString(), 0); }
     }
 
-}
\ No newline at end of file
+    /**
+     * Binary matrix files opened while parsing one input. Every file is opened once, and a matrix
+     * referenced several times is read once and shared by all of its leaves.
+     */
+    private static class MatrixReferences implements Closeable {
+        private final Path baseDir;
+        private final long spillBytes;
+        private final Map<Path, MatrixFile> files = new HashMap<>();
+        private final Map<String, ComputationNode> loaded = new HashMap<>();
+
+        MatrixReferences(Path baseDir, long spillBytes) {
+            this.baseDir = baseDir;
+            this.spillBytes = spillBytes;
+        }
+
+        ComputationNode load(String file, String name) throws IOException {
+            Path path = baseDir == null ? Path.of(file) : baseDir.resolve(file);
+            String key = path.toAbsolutePath().normalize() + "\0" + name;
+            ComputationNode leaf = loaded.get(key);
+            if (leaf == null) {
+                MatrixFile matrixFile = files.get(path);
+                if (matrixFile == null) {
+                    matrixFile = MatrixFile.open(path);
+                    files.put(path, matrixFile);
+                }
+                if (matrixFile.rows(name) == 0) {
+                    throw new IllegalArgumentException("Empty matrix " + name + " cannot be parsed as DataNode.");
+                }
+                leaf = matrixFile.byteSize(name) > spillBytes
+                        ? new ComputationNode(matrixFile.openOnDisk(name))
+                        : new ComputationNode(matrixFile.read(name));
+                loaded.put(key, leaf);
+                return leaf;
+            }
+            // Separate leaves over the same storage, merged again by common subexpression elimination
+            return leaf.isOnDisk() ? new ComputationNode(leaf.getDiskMatrix()) : new ComputationNode(leaf.getSharedMatrix());
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (MatrixFile file : files.values()) {
+                file.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package parser;
+
+/**
+ * Optimal parenthesization of a chain of matrix products A1 * A2 * ... * An,
+ * found with the classic O(n^3) dynamic program over sub-chains.
+ * Operand i has dims[i] rows and dims[i + 1] columns; the cost of a single product of
+ * an (a x b) by a (b x c) matrix is counted as a * b * c multiply-add operations.
+ */
+public class MatrixChainOrder {
+
+    private final long[][] cost; // cost[i][j]: cheapest way to compute Ai..Aj
+    private final int[][] split; // split[i][j] = k: Ai..Aj is computed as (Ai..Ak) * (Ak+1..Aj)
+
+    public MatrixChainOrder(int[] dims) {
+        int n = dims.length - 1;
+        if (n < 1) {
+            throw new IllegalArgumentException("A matrix chain needs at least one operand");
+        }
+        cost = new long[n][n];
+        split = new int[n][n];
+        for (int length = 2; length <= n; length++) {
+            for (int i = 0; i + length - 1 < n; i++) {
+                int j = i + length - 1;
+                cost[i][j] = Long.MAX_VALUE;
+                for (int k = i; k < j; k++) {
+                    long candidate = saturatingAdd(saturatingAdd(cost[i][k], cost[k + 1][j]),
+                            productCost(dims[i], dims[k + 1], dims[j + 1]));
+                    if (candidate < cost[i][j]) {
+                        cost[i][j] = candidate;
+                        split[i][j] = k;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Cost of the whole chain under the optimal order.
+     */
+    public long getCost() {
+        return cost[0][cost.length - 1];
+    }
+
+    /**
+     * The operand k after which the sub-chain Ai..Aj is split, i <= k < j.
+     */
+    public int getSplit(int i, int j) {
+        if (i >= j) {
+            throw new IllegalArgumentException("Sub-chain " + i + ".." + j + " has no split");
+        }
+        return split[i][j];
+    }
+
+    private static long productCost(long rows, long inner, long cols) {
+        double estimate = (double) rows * inner * cols;
+        return estimate >= Long.MAX_VALUE ? Long.MAX_VALUE : rows * inner * cols;
+    }
+
+    private static long saturatingAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+}
@@ -0,0 +1,304 @@
+package parser;
+
+import memory.DiskMatrix;
+import memory.SharedMatrix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Binary container for one or more named matrices, read through FileChannel.map.
+ * Layout, all little-endian:
+ *   "LAEM", int version, int count,
+ *   count index entries of (int nameLength, UTF-8 name, int dtype, int rows, int cols, long dataOffset),
+ *   then the row-major doubles of every matrix, each starting at an 8-byte aligned offset.
+ * A JSON input refers to a matrix of such a file with {"file": "path", "name": "A"}.
+ */
+public class MatrixFile implements Closeable {
+
+    private static final byte[] MAGIC = {'L', 'A', 'E', 'M'};
+    private static final int VERSION = 1;
+    private static final int DTYPE_FLOAT64 = 1;
+    // Largest region mapped at once; a single mapping cannot exceed 2GB
+    private static final long MAX_WINDOW_BYTES = 1L << 30;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries;
+
+    private MatrixFile(Path path, FileChannel channel, Map<String, Entry> entries) {
+        this.path = path;
+        this.channel = channel;
+        this.entries = entries;
+    }
+
+    public static MatrixFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MatrixFile(path, channel, readIndex(channel, path));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public List<String> names() {
+        return Collections.unmodifiableList(new ArrayList<>(entries.keySet()));
+    }
+
+    public long byteSize(String name) {
+        return entry(name).byteSize();
+    }
+
+    public int rows(String name) {
+        return entry(name).rows;
+    }
+
+    public int cols(String name) {
+        return entry(name).cols;
+    }
+
+    /**
+     * A read-only view of the matrix data straight from the page cache, with no copy.
+     * Only available for matrices smaller than 2GB, the limit of a single mapping.
+     */
+    public DoubleBuffer map(String name) throws IOException {
+        Entry entry = entry(name);
+        long bytes = entry.byteSize();
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Matrix " + name + " is too large to be mapped at once");
+        }
+        return mapWindow(FileChannel.MapMode.READ_ONLY, entry.dataOffset, bytes).asDoubleBuffer();
+    }
+
+    /**
+     * The matrix as a read-only DiskMatrix over this file, for operands too large for the heap.
+     * The returned matrix has its own channel and stays valid after this file is closed.
+     */
+    public DiskMatrix openOnDisk(String name) throws IOException {
+        Entry entry = entry(name);
+        return DiskMatrix.open(path, entry.dataOffset, entry.rows, entry.cols);
+    }
+
+    /**
+     * Copies the matrix into engine storage: one flat row-major array, filled by a bulk copy out of
+     * the mapped file per window, which the engine then reads in place.
+     */
+    public SharedMatrix read(String name) throws IOException {
+        Entry entry = entry(name);
+        long size = (long) entry.rows * entry.cols;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Matrix " + name + " is too large to be read into memory");
+        }
+        double[] flat = new double[(int) size];
+        long rowBytes = 8L * entry.cols;
+        int rowsPerWindow = rowsPerWindow(rowBytes);
+        for (int start = 0; start < entry.rows; start += rowsPerWindow) {
+            int count = Math.min(rowsPerWindow, entry.rows - start);
+            DoubleBuffer window = mapWindow(FileChannel.MapMode.READ_ONLY,
+                    entry.dataOffset + start * rowBytes, count * rowBytes).asDoubleBuffer();
+            window.get(flat, start * entry.cols, count * entry.cols);
+        }
+        SharedMatrix matrix = new SharedMatrix();
+        matrix.loadRowMajor(flat, entry.rows, entry.cols);
+        return matrix;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void write(String filePath, Map<String, double[][]> matrices) throws IOException {
+        List<Source> sources = new ArrayList<>();
+        for (Map.Entry<String, double[][]> e : matrices.entrySet()) {
+            double[][] m = e.getValue();
+            sources.add(new Source(e.getKey(), m.length, m.length == 0 ? 0 : m[0].length, i -> m[i]));
+        }
+        write(filePath, sources);
+    }
+
+    /**
+     * Writes a single matrix whose rows are obtained from rowSource one at a time, like OutputWriter.
+     */
+    public static void write(String filePath, String name, int rows, int cols, IntFunction<double[]> rowSource) throws IOException {
+        write(filePath, List.of(new Source(name, rows, cols, rowSource)));
+    }
+
+    private static void write(String filePath, List<Source> sources) throws IOException {
+        // Index first, so the data offsets are known before anything is written
+        List<byte[]> names = new ArrayList<>();
+        long indexEnd = MAGIC.length + 8;
+        for (Source source : sources) {
+            byte[] name = source.name.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            indexEnd += 4 + name.length + 4 + 4 + 4 + 8;
+        }
+        if (indexEnd > Integer.MAX_VALUE) {
+            throw new IOException("Matrix file index is too large");
+        }
+        ByteBuffer header = ByteBuffer.allocate((int) indexEnd).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(VERSION).putInt(sources.size());
+        long[] offsets = new long[sources.size()];
+        long offset = align(indexEnd);
+        for (int s = 0; s < sources.size(); s++) {
+            Source source = sources.get(s);
+            offsets[s] = offset;
+            header.putInt(names.get(s).length).put(names.get(s))
+                    .putInt(DTYPE_FLOAT64).putInt(source.rows).putInt(source.cols).putLong(offset);
+            offset = align(offset + 8L * source.rows * source.cols);
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            for (int s = 0; s < sources.size(); s++) {
+                writeData(channel, sources.get(s), offsets[s]);
+            }
+        }
+    }
+
+    private static void writeData(FileChannel channel, Source source, long dataOffset) throws IOException {
+        long rowBytes = 8L * source.cols;
+        int rowsPerWindow = rowsPerWindow(rowBytes);
+        for (int start = 0; start < source.rows; start += rowsPerWindow) {
+            int count = Math.min(rowsPerWindow, source.rows - start);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE,
+                    dataOffset + start * rowBytes, count * rowBytes);
+            DoubleBuffer window = mapped.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            for (int i = 0; i < count; i++) {
+                double[] row = source.rowSource.apply(start + i);
+                if (row.length != source.cols) {
+                    throw new IllegalArgumentException("Inconsistent row sizes in matrix " + source.name);
+                }
+                window.put(row);
+            }
+        }
+    }
+
+    // Reads the header and then the index entry by entry, so only the index itself is ever loaded
+    private static Map<String, Entry> readIndex(FileChannel channel, Path path) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer header = readAt(channel, path, 0, MAGIC.length + 8);
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException(path + " is not a matrix file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported matrix file version " + version + " in " + path);
+        }
+        int count = header.getInt();
+        if (count < 0) {
+            throw new IOException("Corrupt index in " + path);
+        }
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        long position = header.limit();
+        for (int s = 0; s < count; s++) {
+            int nameLength = readAt(channel, path, position, 4).getInt();
+            position += 4;
+            // The name and the 20 bytes that follow it must still be inside the file
+            if (nameLength < 0 || nameLength > fileSize - position - 20) {
+                throw new IOException("Corrupt index entry in " + path);
+            }
+            ByteBuffer fields = readAt(channel, path, position, nameLength + 20);
+            position += nameLength + 20;
+            byte[] name = new byte[nameLength];
+            fields.get(name);
+            int dtype = fields.getInt();
+            Entry entry = new Entry(fields.getInt(), fields.getInt(), fields.getLong());
+            if (dtype != DTYPE_FLOAT64) {
+                throw new IOException("Unsupported element type " + dtype + " in " + path);
+            }
+            if (entry.rows < 0 || entry.cols < 0 || entry.dataOffset < 0
+                    || entry.dataOffset + entry.byteSize() > fileSize) {
+                throw new IOException("Corrupt index entry in " + path);
+            }
+            entries.put(new String(name, StandardCharsets.UTF_8), entry);
+        }
+        return entries;
+    }
+
+    // Exactly size bytes at position, little-endian
+    private static ByteBuffer readAt(FileChannel channel, Path path, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated matrix file " + path);
+            }
+        }
+        return buffer.flip();
+    }
+
+    private Entry entry(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("No matrix named " + name + " in the file");
+        }
+        return entry;
+    }
+
+    private ByteBuffer mapWindow(FileChannel.MapMode mode, long position, long size) throws IOException {
+        return channel.map(mode, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int rowsPerWindow(long rowBytes) throws IOException {
+        if (rowBytes > Integer.MAX_VALUE) {
+            throw new IOException("Matrix rows larger than 2GB are not supported");
+        }
+        return (int) Math.max(1, MAX_WINDOW_BYTES / Math.max(1, rowBytes));
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static class Entry {
+        final int rows;
+        final int cols;
+        final long dataOffset;
+
+        Entry(int rows, int cols, long dataOffset) {
+            this.rows = rows;
+            this.cols = cols;
+            this.dataOffset = dataOffset;
+        }
+
+        long byteSize() {
+            return 8L * rows * cols;
+        }
+    }
+
+    private static class Source {
+        final String name;
+        final int rows;
+        final int cols;
+        final IntFunction<double[]> rowSource;
+
+        Source(String name, int rows, int cols, IntFunction<double[]> rowSource) {
+            this.name = name;
+            this.rows = rows;
+            this.cols = cols;
+            this.rowSource = rowSource;
+        }
+    }
+}
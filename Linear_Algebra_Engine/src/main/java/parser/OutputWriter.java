@@ -2,33 +2,66 @@ package parser;
 
 import java.io.File;
 import java.io.IOException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import java.util.function.IntFunction;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+/**
+ * Writes results with Jackson's streaming JsonGenerator, one row at a time, so a result is never
+ * serialized through an intermediate object graph and rows can be produced while earlier ones are
+ * already being written. Output is indented like before unless compact output is requested.
+ */
 public class OutputWriter {
 
-    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final JsonFactory factory = JsonFactory.builder()
+            .enable(StreamWriteFeature.USE_FAST_DOUBLE_WRITER)
+            .build();
 
-    public static class ResultMatrix {
-        public double[][] result;
-        public ResultMatrix(double[][] result) { this.result = result; }
-    }
+    public OutputWriter() {}
 
-    public static class ErrorMessage {
-        public String error;
-        public ErrorMessage(String error) { this.error = error; }
+    public static void write(double[][] matrix, String filePath) throws IOException {
+        write(matrix, filePath, false);
     }
 
-    public OutputWriter() {}
+    public static void write(double[][] matrix, String filePath, boolean compact) throws IOException {
+        write(matrix.length, i -> matrix[i], filePath, compact);
+    }
 
-    public static void write(double[][] matrix, String filePath) throws IOException {
-        File file = new File(filePath);
-        mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ResultMatrix(matrix));
+    /**
+     * Writes {"result": [...]} where row i is obtained from rowSource only right before it is written.
+     * The returned arrays are not kept, so the source may hand out a reused buffer.
+     */
+    public static void write(int rows, IntFunction<double[]> rowSource, String filePath, boolean compact) throws IOException {
+        try (JsonGenerator generator = createGenerator(filePath, compact)) {
+            generator.writeStartObject();
+            generator.writeFieldName("result");
+            generator.writeStartArray();
+            for (int i = 0; i < rows; i++) {
+                double[] row = rowSource.apply(i);
+                generator.writeArray(row, 0, row.length);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
     }
 
     public static void write(String error, String filePath) throws IOException {
-        File file = new File(filePath);
-        mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ErrorMessage(error));
+        try (JsonGenerator generator = createGenerator(filePath, false)) {
+            generator.writeStartObject();
+            generator.writeStringField("error", error);
+            generator.writeEndObject();
+        }
+    }
+
+    private static JsonGenerator createGenerator(String filePath, boolean compact) throws IOException {
+        JsonGenerator generator = factory.createGenerator(new File(filePath), JsonEncoding.UTF8);
+        if (!compact) {
+            generator.useDefaultPrettyPrinter();
+        }
+        return generator;
     }
 
 }
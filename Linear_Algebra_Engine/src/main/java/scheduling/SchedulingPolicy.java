@@ -0,0 +1,16 @@
+package scheduling;
+
+/**
+ * How TiredExecutor hands tasks to its workers.
+ */
+public enum SchedulingPolicy {
+    /** Tasks are queued and each is handed to the least fatigued worker once one is idle; submit() never blocks. */
+    FATIGUE,
+    /** Tasks are queued round-robin on per-worker deques, idle workers steal from the others. */
+    WORK_STEALING,
+    /**
+     * Like WORK_STEALING, but every task is queued on the worker predicted to finish it first,
+     * from its queued work and its measured throughput.
+     */
+    ADAPTIVE
+}
@@ -0,0 +1,77 @@
+package scheduling;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * What LinearAlgebraEngine needs from an executor, so that the fatigue-based TiredExecutor
+ * and the VirtualThreadExecutor are interchangeable.
+ */
+public interface TaskExecutor {
+
+    /**
+     * Queues a task for execution and returns without waiting for a worker.
+     * A task that throws is not retried, and its exception is not reported to the submitter.
+     */
+    void submit(Runnable task);
+
+    /**
+     * Queues every task and returns at once. The future completes when the last of them has
+     * finished, exceptionally with the first exception thrown if any task failed; unlike
+     * submitAll, it does not wait for tasks submitted by others.
+     */
+    default CompletableFuture<Void> submitAsync(Iterable<Runnable> tasks) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // Starts at 1 so the future cannot complete before every task has been queued
+        AtomicInteger remaining = new AtomicInteger(1);
+        Runnable finishOne = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                if (failure.get() != null) {
+                    done.completeExceptionally(failure.get());
+                } else {
+                    done.complete(null);
+                }
+            }
+        };
+        for (Runnable task : tasks) {
+            remaining.incrementAndGet();
+            submit(WeightedTask.of(WeightedTask.weightOf(task), () -> {
+                try {
+                    task.run();
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    finishOne.run();
+                }
+            }));
+        }
+        finishOne.run();
+        return done;
+    }
+
+    /**
+     * Submits every task and waits until all submitted tasks, including earlier ones, have finished.
+     */
+    void submitAll(Iterable<Runnable> tasks);
+
+    /**
+     * How many tasks can run at the same time.
+     */
+    int getNumWorkers();
+
+    /**
+     * Total time spent executing tasks, in nanoseconds.
+     */
+    long getTotalTimeUsed();
+
+    /**
+     * Sum of the weights of all WeightedTasks executed.
+     */
+    long getTotalWorkDone();
+
+    String getWorkerReport();
+
+    void shutdown() throws InterruptedException;
+}
@@ -0,0 +1,88 @@
+package scheduling;
+
+/**
+ * Decides how much work to put in a single task.
+ * The goal is for every task to run for about targetTaskNanos: long enough that submission
+ * and handoff overhead is negligible, short enough that the work still spreads over all workers.
+ * The cost of one work unit starts as a guess and is re-estimated from the time used and
+ * work done reported by the executor's TiredThreads, with an exponential moving average.
+ */
+public class TaskGranularity {
+
+    public static final long DEFAULT_TARGET_TASK_NANOS = 200_000; // 0.2ms per task
+    private static final double INITIAL_NANOS_PER_UNIT = 1.0;
+    private static final double SMOOTHING = 0.3; // weight of the newest measurement
+
+    private volatile long targetTaskNanos;
+    private volatile double nanosPerUnit = INITIAL_NANOS_PER_UNIT;
+
+    private long lastTimeUsed = 0;
+    private long lastWorkDone = 0;
+
+    public TaskGranularity() {
+        this(DEFAULT_TARGET_TASK_NANOS);
+    }
+
+    public TaskGranularity(long targetTaskNanos) {
+        this.targetTaskNanos = checkTarget(targetTaskNanos);
+    }
+
+    public void setTargetTaskNanos(long targetTaskNanos) {
+        this.targetTaskNanos = checkTarget(targetTaskNanos);
+    }
+
+    private static long checkTarget(long targetTaskNanos) {
+        if (targetTaskNanos <= 0) {
+            throw new IllegalArgumentException("Target task time must be positive, got " + targetTaskNanos);
+        }
+        return targetTaskNanos;
+    }
+
+    public long getTargetTaskNanos() {
+        return targetTaskNanos;
+    }
+
+    public double getNanosPerUnit() {
+        return nanosPerUnit;
+    }
+
+    /**
+     * Number of work units one task should carry.
+     */
+    public long quantum() {
+        return Math.max(1, (long) (targetTaskNanos / nanosPerUnit));
+    }
+
+    /**
+     * How many consecutive rows to put in one task.
+     *
+     * @param rows        total number of rows to split
+     * @param unitsPerRow estimated work units per row
+     * @param minTasks    the rows are split into at least this many tasks when there are enough rows,
+     *                    so that a cheap operation still keeps every worker busy
+     */
+    public int rowsPerTask(int rows, long unitsPerRow, int minTasks) {
+        if (rows <= 0) {
+            return 1;
+        }
+        long byQuantum = Math.max(1, quantum() / Math.max(1, unitsPerRow));
+        long byParallelism = Math.max(1, ((long) rows + minTasks - 1) / Math.max(1, minTasks));
+        return (int) Math.min(rows, Math.min(byQuantum, byParallelism));
+    }
+
+    /**
+     * Updates the cost estimate from cumulative executor totals
+     * (see TiredExecutor.getTotalTimeUsed and getTotalWorkDone).
+     */
+    public synchronized void observe(long totalTimeUsed, long totalWorkDone) {
+        long time = totalTimeUsed - lastTimeUsed;
+        long work = totalWorkDone - lastWorkDone;
+        if (time <= 0 || work <= 0) {
+            return;
+        }
+        lastTimeUsed = totalTimeUsed;
+        lastWorkDone = totalWorkDone;
+        double sample = (double) time / work;
+        nanosPerUnit = SMOOTHING * sample + (1 - SMOOTHING) * nanosPerUnit;
+    }
+}
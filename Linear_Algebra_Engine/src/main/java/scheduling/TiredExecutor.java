@@ -1,33 +1,81 @@
 package scheduling;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class TiredExecutor {
+public final class TiredExecutor implements TaskExecutor {
 
     private final TiredThread[] workers;
     private final PriorityBlockingQueue<TiredThread> idleMinHeap = new PriorityBlockingQueue<>();
     private final AtomicInteger inFlight = new AtomicInteger(0);
+    // Fatigue mode: submitted tasks waiting for an idle worker
+    private final ConcurrentLinkedQueue<Runnable> backlog = new ConcurrentLinkedQueue<>();
+    private final boolean workStealing; // per-worker deques, for both WORK_STEALING and ADAPTIVE
+    private final SchedulingPolicy policy;
+    private final AtomicInteger nextQueue = new AtomicInteger(0); // round-robin target for work-stealing submits
 
     public TiredExecutor(int numThreads) {
+        this(numThreads, false);
+    }
+
+    /**
+     * @param workStealing when true, every worker owns a task deque and submit() never blocks:
+     *                     tasks are queued round-robin, idle workers are woken least-fatigued first,
+     *                     and a worker whose deque is empty steals from the tail of the others.
+     */
+    public TiredExecutor(int numThreads, boolean workStealing) {
+        this(numThreads, workStealing ? SchedulingPolicy.WORK_STEALING : SchedulingPolicy.FATIGUE);
+    }
+
+    public TiredExecutor(int numThreads, SchedulingPolicy policy) {
         // TODO
         //workers = null; // placeholder
+        this.policy = policy;
+        this.workStealing = policy != SchedulingPolicy.FATIGUE;
         workers = new TiredThread[numThreads];
         for (int i = 0; i < numThreads; i++) {
-            TiredThread currentThread = new TiredThread(i, 1.0);
-            currentThread.start();
+            TiredThread currentThread = new TiredThread(i, 1.0, workStealing ? this : null);
             workers[i] = currentThread;
-            idleMinHeap.add(currentThread);
+            if (!workStealing) {
+                // In work-stealing mode workers register themselves as idle once they run out of tasks
+                idleMinHeap.add(currentThread);
+            }
+        }
+        for (TiredThread worker : workers) {
+            worker.start();
         }
     }
 
     public void submit(Runnable task) {
-        try {
-            TiredThread worker = idleMinHeap.take();
-            inFlight.incrementAndGet();
-            Runnable wrappedTask = () -> {
+        if (workStealing) {
+            submitWorkStealing(task);
+            return;
+        }
+        // Queued rather than blocking: the task goes to an idle worker now, or to the first one that frees up
+        inFlight.incrementAndGet();
+        backlog.add(task);
+        dispatchBacklog();
+    }
+
+    // Hands backlog tasks to idle workers, least fatigued first, until either runs out.
+    // Submitters call it after queueing a task and workers after becoming idle, so whichever
+    // comes second sees the other and no task is left waiting next to an idle worker.
+    private void dispatchBacklog() {
+        while (!backlog.isEmpty()) {
+            TiredThread worker = idleMinHeap.poll();
+            if (worker == null) {
+                return;
+            }
+            Runnable task = backlog.poll();
+            if (task == null) {
+                // Another thread took it; re-check, a task may have been queued while we held the worker
+                idleMinHeap.add(worker);
+                continue;
+            }
+            worker.newTask(WeightedTask.of(WeightedTask.weightOf(task), () -> {
                 try {
                     task.run();
                 } finally {
@@ -38,15 +86,90 @@ public class TiredExecutor {
                            notifyAll();
                        }
                    }
-                    
+                   dispatchBacklog();
                 }
-            };
-            worker.newTask(wrappedTask);
+            }));
+        }
+    }
+
+    private void submitWorkStealing(Runnable task) {
+        inFlight.incrementAndGet();
+        Runnable wrappedTask = WeightedTask.of(WeightedTask.weightOf(task), () -> {
+            try {
+                task.run();
+            } finally {
+                if (inFlight.decrementAndGet() == 0) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+        });
+        if (policy == SchedulingPolicy.ADAPTIVE) {
+            TiredThread target = earliestFinish(WeightedTask.weightOf(task));
+            target.pushLocal(wrappedTask);
+            // Only the chosen worker is woken: by the prediction, any idle one would finish the task later
+            if (idleMinHeap.remove(target)) {
+                target.wake();
+            }
+            return;
+        }
+        TiredThread target = workers[Math.floorMod(nextQueue.getAndIncrement(), workers.length)];
+        target.pushLocal(wrappedTask);
+        // Wake the least fatigued idle worker; it takes the task from target's deque by stealing if needed
+        TiredThread idle = idleMinHeap.poll();
+        if (idle != null) {
+            idle.wake();
+        }
+    }
+
+    // The worker whose queued work plus this task would be done soonest at its measured throughput.
+    // Workers that have not been measured yet are assumed to run at the average of the others.
+    private TiredThread earliestFinish(long weight) {
+        double known = 0;
+        int measured = 0;
+        for (TiredThread worker : workers) {
+            if (worker.getThroughput() > 0) {
+                known += worker.getThroughput();
+                measured++;
+            }
+        }
+        double fallback = measured == 0 ? 1.0 : known / measured;
+        TiredThread best = workers[0];
+        double bestFinish = Double.MAX_VALUE;
+        for (TiredThread worker : workers) {
+            double finish = worker.predictedFinish(Math.max(1, weight), fallback);
+            if (finish < bestFinish) {
+                best = worker;
+                bestFinish = finish;
+            }
+        }
+        return best;
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            // Handle any exceptions that might occur during task submission
+    // Called by a work-stealing worker that found no task, right before it parks
+    void parkIdle(TiredThread worker) {
+        idleMinHeap.add(worker);
+    }
+
+    // Called by a work-stealing worker that found a task after parkIdle; a failed remove means
+    // a submitter already picked it and its wake-up signal will be consumed on the next loop
+    void unparkIdle(TiredThread worker) {
+        idleMinHeap.remove(worker);
+    }
+
+    /**
+     * Takes a task from the tail of another worker's deque, scanning from the thief's neighbour.
+     */
+    Runnable steal(TiredThread thief) {
+        int n = workers.length;
+        for (int k = 1; k < n; k++) {
+            Runnable task = workers[(thief.getWorkerId() + k) % n].stealLocal();
+            if (task != null) {
+                return task;
+            }
         }
+        return null;
     }
 
     public void submitAll(Iterable<Runnable> tasks) {
@@ -79,6 +202,32 @@ public class TiredExecutor {
         }
     }
 
+    public int getNumWorkers() {
+        return workers.length;
+    }
+
+    /**
+     * Sum of the time every worker has spent executing tasks, in nanoseconds.
+     */
+    public long getTotalTimeUsed() {
+        long total = 0;
+        for (TiredThread worker : workers) {
+            total += worker.getTimeUsed();
+        }
+        return total;
+    }
+
+    /**
+     * Sum of the weights of all WeightedTasks the workers have executed.
+     */
+    public long getTotalWorkDone() {
+        long total = 0;
+        for (TiredThread worker : workers) {
+            total += worker.getWorkDone();
+        }
+        return total;
+    }
+
     public synchronized String getWorkerReport() {
         // TODO: return readable statistics for each worker
         StringBuilder report = new StringBuilder();
@@ -92,6 +241,13 @@ public class TiredExecutor {
                 report.append("Fatigue: ").append(String.format(java.util.Locale.US,"%.2f", worker.getFatigue())).append("\n");
                 report.append("Time Used: ").append(worker.getTimeUsed()).append("ms").append("\n");
                 report.append("Time Idle: ").append(worker.getTimeIdle()).append("ms").append("\n");
+                if (workStealing) {
+                    report.append("Tasks Stolen: ").append(worker.getTasksStolen()).append("\n");
+                }
+                if (policy == SchedulingPolicy.ADAPTIVE) {
+                    // Work units per microsecond
+                    report.append("Throughput: ").append(String.format(java.util.Locale.US, "%.2f", worker.getThroughput() * 1000)).append("\n");
+                }
                 report.append("Status: ").append(worker.isBusy() ? "WORKING" : "IDLE").append("\n");
                 report.append("-------------------------------------------------------------\n");
             }
@@ -1,13 +1,16 @@
 package scheduling;
 
+import java.util.Deque;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class TiredThread extends Thread implements Comparable<TiredThread> {
+public final class TiredThread extends Thread implements Comparable<TiredThread> {
 
     private static final Runnable POISON_PILL = () -> {}; // Special task to signal shutdown
+    private static final Runnable WAKE_UP = () -> {}; // Signals an idle work-stealing worker to look for tasks
 
     private final int id; // Worker index assigned by the executor
     private final double fatigueFactor; // Multiplier for fatigue calculation
@@ -17,15 +20,36 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     // Single-slot handoff queue; executor will put tasks here
     private final BlockingQueue<Runnable> handoff = new ArrayBlockingQueue<>(1);
 
+    // Work-stealing mode only: tasks queued for this worker, other workers steal from the tail
+    private final Deque<Runnable> localTasks = new ConcurrentLinkedDeque<>();
+    private final TiredExecutor stealPool; // null unless the executor runs in work-stealing mode
+    private final AtomicLong tasksStolen = new AtomicLong(0);
+
     private final AtomicBoolean busy = new AtomicBoolean(false); // Indicates if the worker is currently executing a task
 
     private final AtomicLong timeUsed = new AtomicLong(0); // Total time spent executing tasks
     private final AtomicLong timeIdle = new AtomicLong(0); // Total time spent idle
+    private final AtomicLong workDone = new AtomicLong(0); // Total weight of the WeightedTasks executed
     private final AtomicLong idleStartTime = new AtomicLong(0); // Timestamp when the worker became idle
 
+    // Weight given to the newest sample in the throughput average; older samples decay geometrically
+    private static final double THROUGHPUT_DECAY = 0.25;
+    private volatile double throughput = 0; // Moving average of work units per nanosecond, 0 until measured
+    private final AtomicLong queuedWork = new AtomicLong(0); // Weight of the tasks in localTasks
+    private volatile long runningWork = 0; // Weight of the task being executed
+
     public TiredThread(int id, double fatigueFactor) {
+        this(id, fatigueFactor, null);
+    }
+
+    /**
+     * Creates a worker that, when stealPool is not null, takes its tasks from its own deque
+     * and steals from the other workers of stealPool once that deque is empty.
+     */
+    TiredThread(int id, double fatigueFactor, TiredExecutor stealPool) {
         this.id = id;
         this.fatigueFactor = fatigueFactor;
+        this.stealPool = stealPool;
         this.idleStartTime.set(System.nanoTime());
         setName(String.format("FF=%.2f", fatigueFactor));
     }
@@ -50,6 +74,31 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         return timeIdle.get();
     }
 
+    public long getWorkDone() {
+        return workDone.get();
+    }
+
+    public long getTasksStolen() {
+        return tasksStolen.get();
+    }
+
+    /**
+     * Exponentially decaying average of the work units per nanosecond of this worker's weighted tasks,
+     * or 0 before the first one has finished.
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Nanoseconds until this worker would finish a task of the given weight queued now,
+     * at its measured throughput or fallbackThroughput if it has none yet.
+     */
+    double predictedFinish(long weight, double fallbackThroughput) {
+        double rate = throughput > 0 ? throughput : fallbackThroughput;
+        return (queuedWork.get() + runningWork + weight) / rate;
+    }
+
     /**
      * Assign a task to this worker.
      * This method is non-blocking: if the worker is not ready to accept a task,
@@ -62,6 +111,37 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     }
         
     
+    /**
+     * Work-stealing mode: queue a task on this worker's own deque.
+     */
+    void pushLocal(Runnable task) {
+        queuedWork.addAndGet(WeightedTask.weightOf(task));
+        localTasks.offerLast(task);
+    }
+
+    Runnable pollLocal() {
+        return dequeued(localTasks.pollFirst());
+    }
+
+    Runnable stealLocal() {
+        return dequeued(localTasks.pollLast());
+    }
+
+    private Runnable dequeued(Runnable task) {
+        if (task != null) {
+            queuedWork.addAndGet(-WeightedTask.weightOf(task));
+        }
+        return task;
+    }
+
+    /**
+     * Work-stealing mode: wake this worker if it is parked. A pending wake-up is enough,
+     * so a second one is simply dropped.
+     */
+    void wake() {
+        handoff.offer(WAKE_UP);
+    }
+
     /**
      * Request this worker to stop after finishing current task.
      * Inserts a poison pill so the worker wakes up and exits.
@@ -78,31 +158,49 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
 
     @Override
     public void run() {
+        if (stealPool != null) {
+            runWorkStealing();
+            return;
+        }
         while (alive.get()) {
             try {
                 Runnable task = handoff.take();
                 if (task == POISON_PILL) {
                     break; // Exit loop on poison pill
                 }
+                execute(task);
 
-                // Update idle time
-                long idleEndTime = System.nanoTime();
-                long idleDuration = idleEndTime - idleStartTime.get();
-                timeIdle.addAndGet(idleDuration);
-
-                // Mark as busy
-                busy.set(true);
-
-                // Execute the task and measure time used
-                long startTime = System.nanoTime();
-                task.run();
-                long endTime = System.nanoTime();
-                long usedDuration = endTime - startTime;
-                timeUsed.addAndGet(usedDuration);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
 
-                // Mark as idle
-                busy.set(false);
-                idleStartTime.set(System.nanoTime());
+    // Work-stealing loop: own deque first, then steal, then park in the executor's idle heap.
+    // It only exits on the poison pill, so a pending wake-up can never leave shutdown() blocked.
+    private void runWorkStealing() {
+        while (true) {
+            try {
+                Runnable signal = handoff.poll();
+                if (signal == POISON_PILL) {
+                    break;
+                }
+                Runnable task = findWork();
+                if (task == null) {
+                    stealPool.parkIdle(this);
+                    // Re-check after publishing idleness, a task may have been queued in between
+                    task = findWork();
+                    if (task == null) {
+                        signal = handoff.take();
+                        if (signal == POISON_PILL) {
+                            break;
+                        }
+                        continue;
+                    }
+                    stealPool.unparkIdle(this);
+                }
+                execute(task);
 
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -111,6 +209,49 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         }
     }
 
+    private Runnable findWork() {
+        Runnable task = pollLocal();
+        if (task == null) {
+            task = stealPool.steal(this);
+            if (task != null) {
+                tasksStolen.incrementAndGet();
+            }
+        }
+        return task;
+    }
+
+    private void execute(Runnable task) {
+        // Update idle time
+        long idleEndTime = System.nanoTime();
+        long idleDuration = idleEndTime - idleStartTime.get();
+        timeIdle.addAndGet(idleDuration);
+
+        // Mark as busy
+        busy.set(true);
+
+        // Execute the task and measure time used
+        long weight = WeightedTask.weightOf(task);
+        runningWork = weight;
+        long startTime = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            long endTime = System.nanoTime();
+            long usedDuration = endTime - startTime;
+            timeUsed.addAndGet(usedDuration);
+            workDone.addAndGet(weight);
+            runningWork = 0;
+            if (weight > 0) {
+                double sample = (double) weight / Math.max(1, usedDuration);
+                throughput = throughput == 0 ? sample : THROUGHPUT_DECAY * sample + (1 - THROUGHPUT_DECAY) * throughput;
+            }
+
+            // Mark as idle
+            busy.set(false);
+            idleStartTime.set(System.nanoTime());
+        }
+    }
+
     @Override
     public int compareTo(TiredThread o) {
         int cmp = Double.compare(this.getFatigue(), o.getFatigue());
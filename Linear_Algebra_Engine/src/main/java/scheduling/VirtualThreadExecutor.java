@@ -0,0 +1,137 @@
+package scheduling;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs every task on its own virtual thread, so no platform threads are kept per executor and
+ * submit() never blocks. The tasks are CPU-bound, so a task only runs while it holds a permit of
+ * a semaphore, which bounds how many of them compete for the carrier threads at once. Several
+ * executors, e.g. of engines running side by side in one JVM, can share one semaphore and with
+ * it a single CPU budget.
+ */
+public class VirtualThreadExecutor implements TaskExecutor {
+
+    private final Semaphore permits;
+    private final int parallelism;
+    private final ThreadFactory threads = Thread.ofVirtual().name("lae-virtual-", 0).factory();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicInteger running = new AtomicInteger(0);
+    private final AtomicInteger peakRunning = new AtomicInteger(0);
+    private final AtomicLong tasksRun = new AtomicLong(0);
+    private final AtomicLong timeUsed = new AtomicLong(0);
+    private final AtomicLong workDone = new AtomicLong(0);
+    private volatile boolean shutdown = false;
+
+    public VirtualThreadExecutor(int parallelism) {
+        this(new Semaphore(parallelism), parallelism);
+    }
+
+    /**
+     * @param permits     shared with other executors to bound their combined parallelism
+     * @param parallelism the number of permits, reported as the number of workers
+     */
+    public VirtualThreadExecutor(Semaphore permits, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive, got " + parallelism);
+        }
+        this.permits = permits;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void submit(Runnable task) {
+        if (shutdown) {
+            throw new IllegalStateException("Executor has been shut down");
+        }
+        inFlight.incrementAndGet();
+        threads.newThread(() -> {
+            try {
+                // A submitted task always runs: dropping it would leave waiters on its completion hanging
+                permits.acquireUninterruptibly();
+                try {
+                    execute(task);
+                } finally {
+                    permits.release();
+                }
+            } finally {
+                if (inFlight.decrementAndGet() == 0) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+        }).start();
+    }
+
+    private void execute(Runnable task) {
+        peakRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            timeUsed.addAndGet(System.nanoTime() - start);
+            workDone.addAndGet(WeightedTask.weightOf(task));
+            tasksRun.incrementAndGet();
+            running.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void submitAll(Iterable<Runnable> tasks) {
+        for (Runnable task : tasks) {
+            submit(task);
+        }
+        awaitQuiescence();
+    }
+
+    private synchronized void awaitQuiescence() {
+        while (inFlight.get() > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Rejects new tasks and waits for the submitted ones to finish; there are no threads to stop.
+     */
+    @Override
+    public void shutdown() throws InterruptedException {
+        shutdown = true;
+        awaitQuiescence();
+    }
+
+    @Override
+    public int getNumWorkers() {
+        return parallelism;
+    }
+
+    @Override
+    public long getTotalTimeUsed() {
+        return timeUsed.get();
+    }
+
+    @Override
+    public long getTotalWorkDone() {
+        return workDone.get();
+    }
+
+    @Override
+    public String getWorkerReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("-------------------------------------------------------------\n");
+        report.append("Virtual Thread Executor Report:\n");
+        report.append("Parallelism: ").append(parallelism).append("\n");
+        report.append("Tasks Run: ").append(tasksRun.get()).append("\n");
+        report.append("Peak Concurrent Tasks: ").append(peakRunning.get()).append("\n");
+        report.append("Time Used: ").append(timeUsed.get() / 1_000_000).append("ms").append("\n");
+        report.append("-------------------------------------------------------------\n");
+        return report.toString();
+    }
+}
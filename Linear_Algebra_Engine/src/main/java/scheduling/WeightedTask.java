@@ -0,0 +1,33 @@
+package scheduling;
+
+/**
+ * A task that knows how much work it carries, in abstract work units
+ * (roughly one unit per scalar arithmetic operation).
+ * TiredThread adds the weight of every weighted task it runs to its work counter,
+ * which together with its time used gives the measured cost of one unit.
+ */
+public interface WeightedTask extends Runnable {
+
+    long weight();
+
+    static WeightedTask of(long weight, Runnable body) {
+        return new WeightedTask() {
+            @Override
+            public long weight() {
+                return weight;
+            }
+
+            @Override
+            public void run() {
+                body.run();
+            }
+        };
+    }
+
+    /**
+     * The weight of task, or 0 for tasks that are not weighted.
+     */
+    static long weightOf(Runnable task) {
+        return task instanceof WeightedTask ? ((WeightedTask) task).weight() : 0;
+    }
+}
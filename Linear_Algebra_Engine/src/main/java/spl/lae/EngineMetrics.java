@@ -0,0 +1,217 @@
+package spl.lae;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import parser.ComputationNodeType;
+
+/**
+ * Timing of every node an engine resolves, collected when passed to LinearAlgebraEngine.setMetrics.
+ * For each node it keeps the operation, the operand and result shapes, the nominal FLOPs, and where
+ * its time went:
+ *   load     - on the engine thread, loading the operands and creating the tasks,
+ *   queue    - mean time a task waited between its submission and the start of its run,
+ *   compute  - time the workers spent running the node's tasks, summed over all of them,
+ *   wall     - from the first task submitted to the last one finished,
+ *   readback - on the engine thread, turning the computed result into the node's matrix.
+ * Totals and histograms per operation type are written with the records by writeJson.
+ */
+public class EngineMetrics {
+
+    private final List<NodeRecord> records = new ArrayList<>();
+    private final Map<ComputationNodeType, OperationStats> operations = new EnumMap<>(ComputationNodeType.class);
+
+    synchronized void record(NodeRecord record) {
+        records.add(record);
+        operations.computeIfAbsent(record.getType(), t -> new OperationStats()).add(record);
+    }
+
+    public synchronized List<NodeRecord> getRecords() {
+        return Collections.unmodifiableList(new ArrayList<>(records));
+    }
+
+    public synchronized void clear() {
+        records.clear();
+        operations.clear();
+    }
+
+    /**
+     * Writes the per-operation summaries and the per-node records as a JSON report.
+     */
+    public synchronized void writeJson(String filePath) throws IOException {
+        try (JsonGenerator generator = new JsonFactory().createGenerator(new File(filePath), JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeNumberField("nodes", records.size());
+
+            generator.writeObjectFieldStart("operations");
+            for (Map.Entry<ComputationNodeType, OperationStats> e : operations.entrySet()) {
+                OperationStats stats = e.getValue();
+                generator.writeObjectFieldStart(e.getKey().name());
+                generator.writeNumberField("count", stats.count);
+                generator.writeNumberField("flops", stats.flops);
+                // FLOPs per nanosecond of wall time are GFLOP/s
+                generator.writeNumberField("gflopsPerSecond", stats.wall.total() == 0 ? 0.0 : (double) stats.flops / stats.wall.total());
+                writeHistogram(generator, "loadNanos", stats.load);
+                writeHistogram(generator, "queueWaitNanos", stats.queueWait);
+                writeHistogram(generator, "computeNanos", stats.compute);
+                writeHistogram(generator, "wallNanos", stats.wall);
+                writeHistogram(generator, "readbackNanos", stats.readback);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+
+            generator.writeArrayFieldStart("records");
+            for (NodeRecord record : records) {
+                generator.writeStartObject();
+                generator.writeStringField("type", record.getType().name());
+                generator.writeArrayFieldStart("inputs");
+                for (int[] shape : record.getInputShapes()) {
+                    generator.writeArray(shape, 0, shape.length);
+                }
+                generator.writeEndArray();
+                generator.writeFieldName("output");
+                generator.writeArray(record.getOutputShape(), 0, 2);
+                generator.writeStringField("storage", record.getStorage());
+                generator.writeNumberField("tasks", record.getTasks());
+                generator.writeNumberField("flops", record.getFlops());
+                generator.writeNumberField("loadNanos", record.getLoadNanos());
+                generator.writeNumberField("queueWaitNanos", record.getQueueWaitNanos());
+                generator.writeNumberField("computeNanos", record.getComputeNanos());
+                generator.writeNumberField("wallNanos", record.getWallNanos());
+                generator.writeNumberField("readbackNanos", record.getReadbackNanos());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeHistogram(JsonGenerator generator, String name, LatencyHistogram histogram) throws IOException {
+        generator.writeObjectFieldStart(name);
+        generator.writeNumberField("total", histogram.total());
+        generator.writeNumberField("min", histogram.min());
+        generator.writeNumberField("mean", histogram.mean());
+        generator.writeNumberField("p50", histogram.percentile(0.5));
+        generator.writeNumberField("p90", histogram.percentile(0.9));
+        generator.writeNumberField("p99", histogram.percentile(0.99));
+        generator.writeNumberField("max", histogram.max());
+        // Only the non-empty buckets, as [upper bound in nanoseconds, count]
+        generator.writeArrayFieldStart("buckets");
+        for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+            if (histogram.bucketCount(b) > 0) {
+                generator.writeArray(new long[]{LatencyHistogram.upperBound(b), histogram.bucketCount(b)}, 0, 2);
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static class OperationStats {
+        long count = 0;
+        long flops = 0;
+        final LatencyHistogram load = new LatencyHistogram();
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final LatencyHistogram compute = new LatencyHistogram();
+        final LatencyHistogram wall = new LatencyHistogram();
+        final LatencyHistogram readback = new LatencyHistogram();
+
+        void add(NodeRecord record) {
+            count++;
+            flops += record.getFlops();
+            load.record(record.getLoadNanos());
+            queueWait.record(record.getQueueWaitNanos());
+            compute.record(record.getComputeNanos());
+            wall.record(record.getWallNanos());
+            readback.record(record.getReadbackNanos());
+        }
+    }
+
+    /**
+     * What was measured for one resolved node.
+     */
+    public static class NodeRecord {
+
+        private final ComputationNodeType type;
+        private final List<int[]> inputShapes;
+        private final int[] outputShape;
+        private final String storage;
+        private final int tasks;
+        private final long flops;
+        private final long loadNanos;
+        private final long queueWaitNanos;
+        private final long computeNanos;
+        private final long wallNanos;
+        private final long readbackNanos;
+
+        NodeRecord(ComputationNodeType type, List<int[]> inputShapes, int[] outputShape, String storage, int tasks,
+                   long flops, long loadNanos, long queueWaitNanos, long computeNanos, long wallNanos, long readbackNanos) {
+            this.type = type;
+            this.inputShapes = inputShapes;
+            this.outputShape = outputShape;
+            this.storage = storage;
+            this.tasks = tasks;
+            this.flops = flops;
+            this.loadNanos = loadNanos;
+            this.queueWaitNanos = queueWaitNanos;
+            this.computeNanos = computeNanos;
+            this.wallNanos = wallNanos;
+            this.readbackNanos = readbackNanos;
+        }
+
+        public ComputationNodeType getType() {
+            return type;
+        }
+
+        public List<int[]> getInputShapes() {
+            return inputShapes;
+        }
+
+        public int[] getOutputShape() {
+            return outputShape;
+        }
+
+        /**
+         * "dense", "sparse" or "disk": how the result was stored.
+         */
+        public String getStorage() {
+            return storage;
+        }
+
+        public int getTasks() {
+            return tasks;
+        }
+
+        public long getFlops() {
+            return flops;
+        }
+
+        public long getLoadNanos() {
+            return loadNanos;
+        }
+
+        public long getQueueWaitNanos() {
+            return queueWaitNanos;
+        }
+
+        public long getComputeNanos() {
+            return computeNanos;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public long getReadbackNanos() {
+            return readbackNanos;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package spl.lae;
+
+/**
+ * Durations in power-of-two nanosecond buckets: bucket b counts values in [2^(b-1), 2^b).
+ * Percentiles are reported as the upper bound of their bucket, so they are accurate to a factor of 2,
+ * which is plenty to tell where time goes while keeping every histogram at 64 counters.
+ */
+class LatencyHistogram {
+
+    static final int BUCKETS = 64;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count = 0;
+    private long total = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets[64 - Long.numberOfLeadingZeros(nanos)]++;
+        count++;
+        total += nanos;
+        min = Math.min(min, nanos);
+        max = Math.max(max, nanos);
+    }
+
+    long count() {
+        return count;
+    }
+
+    long total() {
+        return total;
+    }
+
+    long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    long max() {
+        return max;
+    }
+
+    long mean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * Upper bound of the bucket holding the q-quantile, capped at the largest recorded value.
+     */
+    long percentile(double q) {
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int b = 0; b < buckets.length; b++) {
+            seen += buckets[b];
+            if (seen >= rank && seen > 0) {
+                return Math.min(max, upperBound(b));
+            }
+        }
+        return max;
+    }
+
+    long bucketCount(int bucket) {
+        return buckets[bucket];
+    }
+
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
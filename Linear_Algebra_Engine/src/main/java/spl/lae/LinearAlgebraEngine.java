@@ -2,175 +2,1345 @@ package spl.lae;
 
 import parser.*;
 import memory.*;
+import optimizer.AlgebraicRewrites;
+import optimizer.CommonSubexpressions;
+import optimizer.ElementwiseFusion;
+import optimizer.Fingerprint;
+import optimizer.MemoryPlan;
+import optimizer.SymmetricProducts;
 import scheduling.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 public class LinearAlgebraEngine {
 
-    private SharedMatrix leftMatrix = new SharedMatrix();
-    private SharedMatrix rightMatrix = new SharedMatrix();
-    private TiredExecutor executor;
+    // Estimated work units per element (or per row, for TRANSPOSE) of each operation
+    private static final long ADD_WEIGHT = 2;
+    private static final long NEGATE_WEIGHT = 1;
+    private static final long TRANSPOSE_WEIGHT = 1;
+    private static final long MULTIPLY_WEIGHT = 2; // one multiply and one add per inner-product term
+    private static final long DEFAULT_RESULT_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final long FUSED_WEIGHT = 1; // per element and term
+    // A fused row block is revisited once per term, so it is kept small enough to stay in cache
+    private static final int FUSED_BLOCK_ELEMENTS = 32 * 1024;
+
+    private final TaskExecutor executor;
+    private final TaskGranularity granularity = new TaskGranularity();
+    private final ResultCache resultCache = new ResultCache(DEFAULT_RESULT_CACHE_BYTES);
+    // Recycled storage of consumed intermediates; how much is kept free is capped by the MemoryPlans of the trees in flight
+    private final BufferPool bufferPool = new BufferPool(0);
+    private long bufferPoolBytes = Runtime.getRuntime().maxMemory() / 8;
+    private long plannedPoolBytes = 0; // sum of the planned peaks of the trees being evaluated, guarded by bufferPool
+    // Results larger than this are kept on disk, and nodes producing them run out of core
+    private long outOfCoreBytes = Runtime.getRuntime().maxMemory() / 4;
+    private Path spillDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+    // Square products of at least this size use Strassen-Winograd; 0 disables it
+    private int strassenThreshold = 0;
+    private volatile EngineMetrics metrics; // null: nothing is recorded
 
     public LinearAlgebraEngine(int numThreads) {
         // TODO: create executor with given thread count
-        this.executor = new TiredExecutor(numThreads);
+        this(numThreads, false);
+    }
+
+    /**
+     * @param workStealing run the executor with per-worker deques and work stealing
+     *                     instead of the single-slot handoff to idle workers
+     */
+    public LinearAlgebraEngine(int numThreads, boolean workStealing) {
+        this(new TiredExecutor(numThreads, workStealing));
+    }
+
+    /**
+     * Runs the engine's tasks on executor, e.g. a VirtualThreadExecutor; shutdown() shuts it down too.
+     */
+    public LinearAlgebraEngine(TaskExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets how long a single task should ideally run. Row-block and tile sizes are derived
+     * from it using the measured cost of one work unit.
+     */
+    public void setTargetTaskNanos(long targetTaskNanos) {
+        granularity.setTargetTaskNanos(targetTaskNanos);
+    }
+
+    /**
+     * Bounds the total size of the subexpression results kept for reuse by later runs; 0 disables the cache.
+     */
+    public void setResultCacheBytes(long maxBytes) {
+        resultCache.setMaxBytes(maxBytes);
+    }
+
+    /**
+     * Upper bound on the free storage kept for reuse between nodes; 0 disables recycling.
+     */
+    public void setBufferPoolBytes(long maxBytes) {
+        synchronized (bufferPool) {
+            this.bufferPoolBytes = maxBytes;
+            bufferPool.setMaxBytes(Math.min(bufferPool.getMaxBytes(), maxBytes));
+        }
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Results larger than maxBytes are written to spill files instead of the heap, and every node
+     * producing such a result, or reading an operand kept on disk, is computed tile by tile.
+     */
+    public void setOutOfCoreBytes(long maxBytes) {
+        this.outOfCoreBytes = maxBytes;
+    }
+
+    public long getOutOfCoreBytes() {
+        return outOfCoreBytes;
     }
 
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Square products whose size is at least threshold are computed with Strassen-Winograd,
+     * halving the blocks recursively until they drop below threshold; 0 (the default) disables it.
+     */
+    public void setStrassenThreshold(int threshold) {
+        this.strassenThreshold = threshold;
+    }
+
+    /**
+     * Records the timing of every node resolved by run() into metrics; null stops recording.
+     */
+    public void setMetrics(EngineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Operands, tasks and output of one ComputationNode.
+     * Every node being computed has its own instance, so several nodes can be in flight at once.
+     */
+    private static class PendingNode {
+        final ComputationNode node;
+        SharedMatrix leftMatrix; // modified in place by ADD and NEGATE, so never a child's own storage
+        SharedMatrix rightMatrix;
+        ComputationNode aliased; // TRANSPOSE of a resident child: the child whose storage the result views
+        // Operands loaded or laid out only for this node, recycled once it is computed
+        final List<SharedMatrix> scratch = new ArrayList<>();
+        TiledGemm product; // set only for MULTIPLY nodes
+        StrassenWinograd strassen; // set instead of product for large square products
+        SymmetricProduct gram; // set only for GRAM nodes
+        SharedMatrix denseResult; // set for nodes whose tasks write straight into pooled row-major storage
+        DiskMatrix diskResult; // set for nodes computed out of core
+        volatile SparseMatrix sparseResult; // set by the task of nodes computed with a sparse kernel
+        List<Runnable> tasks;
+        // Tasks that may only start once the current ones have finished, one list per stage
+        final Deque<List<Runnable>> laterStages = new ArrayDeque<>();
+        volatile Throwable failure; // first exception thrown by one of the tasks
+        // Measurements for EngineMetrics
+        ComputationNodeType type;
+        List<int[]> inputShapes;
+        long flops;
+        long loadNanos;
+        long launchedAt;
+        int taskCount;
+        final AtomicLong queueWaitNanos = new AtomicLong();
+        final AtomicLong computeNanos = new AtomicLong();
+
+        PendingNode(ComputationNode node) {
+            this.node = node;
+        }
+
+        // Resolves the node with a dense result, kept in engine storage unless it came from a sparse or disk kernel
+        void resolveDense() {
+            if (denseResult != null) {
+                node.resolve(denseResult);
+            } else if (sparseResult != null) {
+                node.resolve(sparseResult.toDense());
+            } else if (diskResult != null) {
+                double[][] result = diskResult.toArray();
+                closeQuietly(diskResult);
+                node.resolve(result);
+            } else if (strassen != null) {
+                node.resolve(adopt(strassen.result(), strassen.rows(), strassen.cols()));
+            } else if (product != null) {
+                node.resolve(adopt(product.result(), product.rows(), product.cols()));
+            } else if (gram != null) {
+                node.resolve(adopt(gram.result(), gram.size(), gram.size()));
+            } else {
+                node.resolve(leftMatrix);
+            }
+        }
+    }
+
+    private static SharedMatrix adopt(double[] flat, int rows, int cols) {
+        SharedMatrix result = new SharedMatrix();
+        result.loadRowMajor(flat, rows, cols);
+        return result;
+    }
+
+    /**
+     * Resolves the whole tree. The tree is first simplified by algebraic rewrites, then identical
+     * subtrees are merged so each distinct subexpression is computed once, and subexpressions found
+     * in the result cache are not computed at all.
+     * Every node whose children are all matrices is then launched onto the executor immediately,
+     * so independent subtrees such as the two products in (A*B) + (C*D) run concurrently.
+     * A parent is launched as soon as its last child has been resolved.
+     * Input files read on disk are closed when the run ends, unless the result is one of them.
+     */
     public ComputationNode run(ComputationNode computationRoot) {
         // TODO: resolve computation tree step by step until final matrix is produced
-        while (computationRoot.getNodeType() != ComputationNodeType.MATRIX) {
-            ComputationNode nextNode = computationRoot.findResolvable();
+        if (computationRoot.getNodeType() == ComputationNodeType.MATRIX) {
+            return computationRoot;
+        }
+        Set<DiskMatrix> diskInputs = diskInputsOf(computationRoot);
+        try {
+            return evaluate(computationRoot);
+        } finally {
+            for (DiskMatrix input : diskInputs) {
+                if (!computationRoot.isOnDisk() || computationRoot.getDiskMatrix() != input) {
+                    closeQuietly(input);
+                }
+            }
+        }
+    }
 
-            if (nextNode == null) {
-                break;
+    // Read-only on-disk leaves of the tree; temporary ones belong to whoever created them
+    private static Set<DiskMatrix> diskInputsOf(ComputationNode root) {
+        Set<DiskMatrix> inputs = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<ComputationNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            if (!visited.add(node)) {
+                continue;
+            }
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                if (node.isOnDisk() && !node.getDiskMatrix().isTemporary()) {
+                    inputs.add(node.getDiskMatrix());
+                }
+            } else {
+                node.getChildren().forEach(stack::push);
+            }
+        }
+        return inputs;
+    }
+
+    private ComputationNode evaluate(ComputationNode computationRoot) {
+        AlgebraicRewrites.apply(computationRoot);
+        if (computationRoot.getNodeType() == ComputationNodeType.MATRIX) {
+            return computationRoot; // e.g. (A^T)^T
+        }
+        Map<ComputationNode, Fingerprint> fingerprints = CommonSubexpressions.apply(computationRoot);
+        reuseCachedResults(computationRoot, fingerprints);
+        if (computationRoot.getNodeType() == ComputationNodeType.MATRIX) {
+            return computationRoot;
+        }
+        SymmetricProducts.apply(computationRoot);
+        ElementwiseFusion.apply(computationRoot);
+        MemoryPlan plan = MemoryPlan.of(computationRoot);
+        long peakBytes = plan.peakBytes();
+        reservePoolBytes(peakBytes);
+        try {
+            return schedule(computationRoot, fingerprints, plan);
+        } finally {
+            releasePoolBytes(peakBytes);
+        }
+    }
+
+    // Trees evaluated at the same time share the pool, so it may keep as much as all of them plan to need together
+    private void reservePoolBytes(long peakBytes) {
+        synchronized (bufferPool) {
+            plannedPoolBytes += peakBytes;
+            bufferPool.setMaxBytes(Math.min(bufferPoolBytes, plannedPoolBytes));
+        }
+    }
+
+    // When the last tree in flight ends, the pool keeps its storage for the next run
+    private void releasePoolBytes(long peakBytes) {
+        synchronized (bufferPool) {
+            plannedPoolBytes -= peakBytes;
+            if (plannedPoolBytes > 0) {
+                bufferPool.setMaxBytes(Math.min(bufferPoolBytes, plannedPoolBytes));
+            }
+        }
+    }
+
+    // Launches every node of the optimized tree as soon as its operands are available, until the root is resolved
+    private ComputationNode schedule(ComputationNode computationRoot, Map<ComputationNode, Fingerprint> fingerprints,
+                                     MemoryPlan plan) {
+        // After merging a node may have several parents, and the same child twice (A * A)
+        Map<ComputationNode, List<ComputationNode>> parents = new IdentityHashMap<>();
+        Map<ComputationNode, Integer> unresolvedChildren = new IdentityHashMap<>();
+        List<ComputationNode> ready = new ArrayList<>();
+        Set<ComputationNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // Iterative walk so that deeply nested trees do not overflow the stack
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(computationRoot);
+        visited.add(computationRoot);
+        while (!stack.isEmpty()) {
+            ComputationNode current = stack.pop();
+            int pendingChildren = 0;
+            for (ComputationNode child : current.getChildren()) {
+                if (child.getNodeType() != ComputationNodeType.MATRIX) {
+                    parents.computeIfAbsent(child, k -> new ArrayList<>()).add(current);
+                    pendingChildren++;
+                    if (visited.add(child)) {
+                        stack.push(child);
+                    }
+                }
+            }
+            if (pendingChildren == 0) {
+                ready.add(current);
+            } else {
+                unresolvedChildren.put(current, pendingChildren);
+            }
+        }
+
+        BlockingQueue<PendingNode> completed = new LinkedBlockingQueue<>();
+        // Intermediates kept on disk, with the number of parent computations that still read them
+        Map<ComputationNode, Integer> spilledReaders = new IdentityHashMap<>();
+        // Storage of resident intermediates, shared by an intermediate and its transposed views
+        Map<ComputationNode, Storage> residentStorage = new IdentityHashMap<>();
+        RuntimeException failure = null;
+        int running = 0;
+
+        try {
+            for (ComputationNode node : ready) {
+                launch(prepare(node), completed);
+                running++;
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        while (running > 0) {
+            PendingNode done;
+            try {
+                done = completed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for computation tasks", e);
+            }
+            running--;
+
+            if (done.failure != null) {
+                if (failure == null) {
+                    failure = asRuntimeException(done.failure);
+                }
+                closeQuietly(done.diskResult);
+                continue;
+            }
+            if (failure != null) {
+                closeQuietly(done.diskResult);
+                continue; // do not launch new work, just drain what is still running
+            }
+            if (!done.laterStages.isEmpty()) {
+                done.tasks = done.laterStages.poll();
+                launch(done, completed);
+                running++;
+                continue;
             }
 
-            loadAndCompute(nextNode);
+            granularity.observe(executor.getTotalTimeUsed(), executor.getTotalWorkDone());
+            try {
+                List<ComputationNode> inputs = done.node.getChildren();
+                long completedAt = System.nanoTime();
+                complete(done);
+                recordMetrics(done, completedAt, System.nanoTime() - completedAt);
+                boolean cached = false;
+                if (done.node.isOnDisk()) {
+                    if (parents.containsKey(done.node)) {
+                        spilledReaders.put(done.node, parents.get(done.node).size());
+                    }
+                } else if (!done.node.isSparse()) {
+                    Fingerprint fingerprint = fingerprints.get(done.node);
+                    if (fingerprint != null) {
+                        cached = resultCache.put(fingerprint, done.node);
+                    }
+                }
+                releaseScratch(done);
+                trackStorage(done, plan.readers(done.node), cached, residentStorage);
+                releaseSpilledInputs(inputs, spilledReaders);
+                releaseResidentInputs(inputs, residentStorage);
+                for (ComputationNode parent : parents.getOrDefault(done.node, List.of())) {
+                    int remaining = unresolvedChildren.merge(parent, -1, Integer::sum);
+                    if (remaining == 0) {
+                        launch(prepare(parent), completed);
+                        running++;
+                    }
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        if (failure != null) {
+            for (ComputationNode spilled : spilledReaders.keySet()) {
+                closeQuietly(spilled.getDiskMatrix());
+            }
+            throw failure;
         }
         return computationRoot;
     }
 
+    // Resolves the node with its result: on disk, sparse, or dense
+    private void complete(PendingNode pending) {
+        if (pending.diskResult != null && pending.diskResult.byteSize() > outOfCoreBytes) {
+            pending.node.resolve(pending.diskResult);
+        } else if (pending.sparseResult != null && pending.sparseResult.density() <= SparseMatrix.DENSIFY_DENSITY) {
+            pending.node.resolve(pending.sparseResult);
+        } else {
+            pending.resolveDense();
+        }
+    }
+
+    /**
+     * Storage of a resident intermediate, with the nodes that hold it and how many computations
+     * still read it. Pinned storage is returned or cached, and is never recycled.
+     */
+    private static class Storage {
+        final SharedMatrix matrix;
+        final List<ComputationNode> nodes = new ArrayList<>();
+        int readers;
+        boolean pinned;
+
+        Storage(SharedMatrix matrix) {
+            this.matrix = matrix;
+        }
+    }
+
+    private void releaseScratch(PendingNode pending) {
+        for (SharedMatrix operand : pending.scratch) {
+            operand.releaseTo(bufferPool);
+        }
+        pending.scratch.clear();
+    }
+
+    // Counts the readers of a resident result; those of a transposed view count towards its operand's storage
+    private static void trackStorage(PendingNode pending, int readers, boolean cached, Map<ComputationNode, Storage> residentStorage) {
+        ComputationNode node = pending.node;
+        if (!node.isResident()) {
+            return;
+        }
+        Storage storage = pending.aliased != null ? residentStorage.get(pending.aliased) : new Storage(node.getSharedMatrix());
+        if (storage == null) {
+            return; // a view of a matrix this run did not compute
+        }
+        storage.nodes.add(node);
+        storage.readers += readers;
+        storage.pinned |= cached || readers == 0;
+        residentStorage.put(node, storage);
+    }
+
+    // Recycles the storage of intermediates whose last reader has just been computed
+    private void releaseResidentInputs(List<ComputationNode> inputs, Map<ComputationNode, Storage> residentStorage) {
+        for (ComputationNode input : inputs) {
+            Storage storage = residentStorage.get(input);
+            if (storage == null || --storage.readers > 0 || storage.pinned) {
+                continue;
+            }
+            storage.matrix.releaseTo(bufferPool);
+            for (ComputationNode holder : storage.nodes) {
+                holder.release();
+                residentStorage.remove(holder);
+            }
+        }
+    }
+
+    // Deletes the spill files of intermediates whose last reader has just been computed
+    private static void releaseSpilledInputs(List<ComputationNode> inputs, Map<ComputationNode, Integer> spilledReaders) {
+        for (ComputationNode input : inputs) {
+            Integer readers = spilledReaders.get(input);
+            if (readers == null) {
+                continue;
+            }
+            if (readers == 1) {
+                spilledReaders.remove(input);
+                closeQuietly(input.getDiskMatrix());
+            } else {
+                spilledReaders.put(input, readers - 1);
+            }
+        }
+    }
+
+    private static void closeQuietly(DiskMatrix matrix) {
+        if (matrix == null) {
+            return;
+        }
+        try {
+            matrix.close();
+        } catch (IOException e) {
+            // Only a temporary file is left behind
+        }
+    }
+
+    // Top-down, so the largest cached subexpression wins and its operands are never visited
+    private void reuseCachedResults(ComputationNode root, Map<ComputationNode, Fingerprint> fingerprints) {
+        Set<ComputationNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            if (node.getNodeType() == ComputationNodeType.MATRIX || !visited.add(node)) {
+                continue;
+            }
+            Fingerprint fingerprint = fingerprints.get(node);
+            ComputationNode cached = fingerprint == null ? null : resultCache.get(fingerprint);
+            if (cached != null) {
+                node.resolve(cached);
+                continue;
+            }
+            for (ComputationNode child : node.getChildren()) {
+                stack.push(child);
+            }
+        }
+    }
+
+    /**
+     * Resolves the tree like run() on a separate virtual thread and returns at once, so the
+     * caller can load or prepare its next input while this one is computed. Several trees may be
+     * in flight on the same engine; their tasks share the executor.
+     */
+    public CompletableFuture<ComputationNode> runAsync(ComputationNode computationRoot) {
+        return CompletableFuture.supplyAsync(() -> run(computationRoot),
+                task -> Thread.ofVirtual().name("lae-run").start(task));
+    }
+
+    /**
+     * Computes a single node whose children are all matrices, waiting for its tasks to finish.
+     */
     public void loadAndCompute(ComputationNode node) {
         // TODO: load operand matrices
         // TODO: create compute tasks & submit tasks to executor
+        PendingNode pending = prepare(node);
+        executor.submitAll(pending.tasks);
+        while (!pending.laterStages.isEmpty()) {
+            executor.submitAll(pending.laterStages.poll());
+        }
+        granularity.observe(executor.getTotalTimeUsed(), executor.getTotalWorkDone());
+        complete(pending);
+        releaseScratch(pending);
+    }
+
+    // Creates the node's tasks, noting what EngineMetrics reports about its operands and how long this took
+    private PendingNode prepare(ComputationNode node) {
+        long start = System.nanoTime();
+        List<int[]> inputShapes = new ArrayList<>();
+        for (ComputationNode child : node.getChildren()) {
+            inputShapes.add(shapeOf(child));
+        }
+        long flops = nominalFlops(node, inputShapes);
+        PendingNode pending = prepareTasks(node);
+        pending.type = node.getNodeType();
+        pending.inputShapes = inputShapes;
+        pending.flops = flops;
+        pending.loadNanos = System.nanoTime() - start;
+        return pending;
+    }
+
+    // Floating point operations of the classic algorithms; a transpose only moves data
+    private static long nominalFlops(ComputationNode node, List<int[]> inputShapes) {
+        if (inputShapes.isEmpty()) {
+            return 0;
+        }
+        long elements = (long) inputShapes.get(0)[0] * inputShapes.get(0)[1];
+        switch (node.getNodeType()) {
+            case ADD:
+            case SUBTRACT:
+            case NEGATE:
+                return elements;
+            case MULTIPLY:
+                if (inputShapes.size() < 2) {
+                    return 0;
+                }
+                ComputationNode left = node.getChildren().get(0);
+                long products = left.isSparse() ? left.getSparseMatrix().nnz() : elements;
+                return 2 * products * inputShapes.get(1)[1];
+            case GRAM:
+                // Inner products on and above the diagonal only
+                long rows = inputShapes.get(0)[0];
+                return rows * (rows + 1) * inputShapes.get(0)[1];
+            case FUSED:
+                int[] shape = inputShapes.get(node.getFusedTerms().get(0).getInput());
+                return (long) node.getFusedTerms().size() * shape[0] * shape[1];
+            default:
+                return 0;
+        }
+    }
+
+    private void recordMetrics(PendingNode pending, long completedAt, long readbackNanos) {
+        EngineMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return;
+        }
+        ComputationNode node = pending.node;
+        String storage = node.isOnDisk() ? "disk" : node.isSparse() ? "sparse" : "dense";
+        long queueWait = pending.taskCount == 0 ? 0 : pending.queueWaitNanos.get() / pending.taskCount;
+        metrics.record(new EngineMetrics.NodeRecord(pending.type, pending.inputShapes, shapeOf(node), storage,
+                pending.taskCount, pending.flops, pending.loadNanos, queueWait, pending.computeNanos.get(),
+                completedAt - pending.launchedAt, readbackNanos));
+    }
+
+    private PendingNode prepareTasks(ComputationNode node) {
         // הוסף את זה בתוך loadAndCompute, לפני הטעינה של המטריצות או יצירת המשימות
-List<ComputationNode> children = node.getChildren();
-ComputationNodeType type = node.getNodeType();
+        List<ComputationNode> children = node.getChildren();
+        ComputationNodeType type = node.getNodeType();
 
-// בדיקה לאופרטורים בינאריים (חייבים 2 ילדים)
-if ((type == ComputationNodeType.ADD || type == ComputationNodeType.MULTIPLY) && children.size() != 2) {
-    throw new IllegalArgumentException("Binary operator " + type + " requires exactly 2 operands, got " + children.size());
-}
+        // בדיקה לאופרטורים בינאריים (חייבים 2 ילדים)
+        if ((type == ComputationNodeType.ADD || type == ComputationNodeType.SUBTRACT || type == ComputationNodeType.MULTIPLY)
+                && children.size() != 2) {
+            throw new IllegalArgumentException("Binary operator " + type + " requires exactly 2 operands, got " + children.size());
+        }
+
+        // בדיקה לאופרטורים אונאריים (חייבים ילד 1)
+        if ((type == ComputationNodeType.NEGATE || type == ComputationNodeType.TRANSPOSE || type == ComputationNodeType.GRAM)
+                && children.size() != 1) {
+            throw new IllegalArgumentException("Unary operator " + type + " requires exactly 1 operand, got " + children.size());
+        }
+
+        PendingNode pending = new PendingNode(node);
+        if (runsOutOfCore(node)) {
+            prepareOutOfCore(pending);
+            return pending;
+        }
+        if (prepareSparse(pending)) {
+            return pending;
+        }
+        if (type == ComputationNodeType.FUSED) {
+            prepareFused(pending);
+            return pending;
+        }
+        // Children left in engine storage by an earlier node are used as they are, unless the kernel
+        // works in place; only matrices that arrived as rows are loaded
+        if(type == ComputationNodeType.NEGATE) {
+            pending.leftMatrix = privateOperand(children.get(0));
+        } else if(type == ComputationNodeType.TRANSPOSE) {
+            ComputationNode child = children.get(0);
+            if (child.isResident()) {
+                pending.aliased = child;
+                pending.leftMatrix = child.getSharedMatrix().transposedView();
+            } else {
+                pending.leftMatrix = load(child).transposedView();
+            }
+        } else if(type == ComputationNodeType.ADD || type == ComputationNodeType.SUBTRACT) {
+            pending.leftMatrix = privateOperand(children.get(0));
+            pending.rightMatrix = alignedOperand(pending, children.get(1), pending.leftMatrix);
+        } else if(type == ComputationNodeType.MULTIPLY) {
+            // The tiled kernels read either orientation through its strides, transposed views included
+            pending.leftMatrix = sharedOperand(pending, children.get(0));
+            pending.rightMatrix = sharedOperand(pending, children.get(1));
+        } else if(type == ComputationNodeType.GRAM) {
+            pending.leftMatrix = sharedOperand(pending, children.get(0));
+        }
+        SharedMatrix leftMatrix = pending.leftMatrix;
+        SharedMatrix rightMatrix = pending.rightMatrix;
 
-// בדיקה לאופרטורים אונאריים (חייבים ילד 1)
-if ((type == ComputationNodeType.NEGATE || type == ComputationNodeType.TRANSPOSE) && children.size() != 1) {
-    throw new IllegalArgumentException("Unary operator " + type + " requires exactly 1 operand, got " + children.size());
-}
-  
-        List<Runnable> tasks = null;
-        if(type == ComputationNodeType.NEGATE || type == ComputationNodeType.TRANSPOSE) {
-           leftMatrix.loadRowMajor(children.get(0).getMatrix());
-        } else if(type == ComputationNodeType.ADD || type == ComputationNodeType.MULTIPLY) {
-            leftMatrix.loadRowMajor(children.get(0).getMatrix());
-            rightMatrix.loadRowMajor(children.get(1).getMatrix());
-        }
-        
         switch(type) {
             case ADD:
-                tasks = createAddTasks();
+                pending.tasks = createAddTasks(leftMatrix, rightMatrix);
+                break;
+            case SUBTRACT:
+                pending.tasks = createSubtractTasks(leftMatrix, rightMatrix);
                 break;
             case MULTIPLY:
-                rightMatrix.loadColumnMajor(children.get(1).getMatrix());
-                tasks = createMultiplyTasks();
+                int depth = leftMatrix.rows() == rightMatrix.rows() && isSquare(leftMatrix) && isSquare(rightMatrix)
+                        ? StrassenWinograd.depthFor(leftMatrix.rows(), strassenThreshold) : 0;
+                if (depth > 0) {
+                    pending.strassen = new StrassenWinograd(leftMatrix, rightMatrix, depth);
+                    pending.laterStages.addAll(createStrassenStages(pending.strassen));
+                    pending.tasks = pending.laterStages.poll();
+                } else {
+                    pending.product = new TiledGemm(leftMatrix, rightMatrix, bufferPool);
+                    pending.tasks = createMultiplyTasks(pending.product);
+                }
+                break;
+            case GRAM:
+                pending.gram = new SymmetricProduct(leftMatrix, bufferPool);
+                pending.tasks = createSymmetricProductTasks(pending.gram);
+                pending.laterStages.add(createMirrorTasks(pending.gram));
                 break;
             case NEGATE:
-                tasks = createNegateTasks();
+                pending.tasks = createNegateTasks(leftMatrix);
                 break;
             case TRANSPOSE:
-                tasks = createTransposeTasks();
+                // Already done: the result is a view of the operand with its strides swapped
+                pending.tasks = List.of();
                 break;
             default:
                 throw new IllegalArgumentException("Unsupported computation node type: " + type);
         }
-        executor.submitAll(tasks);
-        double[][] resultData = leftMatrix.readRowMajor();
-        node.resolve(resultData);
+        return pending;
+    }
+
+    // Fused nodes read their inputs where they are: rows of a parsed matrix, or the engine storage
+    // of a resident child through its layout, so nothing is loaded or exported
+    private void prepareFused(PendingNode pending) {
+        List<ComputationNode> children = pending.node.getChildren();
+        List<FusedTerm> terms = pending.node.getFusedTerms();
+        double[][][] inputs = new double[children.size()][][];
+        StridedLayout[] residentInputs = new StridedLayout[children.size()];
+        int[][] shapes = new int[children.size()][];
+        for (int i = 0; i < inputs.length; i++) {
+            ComputationNode child = children.get(i);
+            if (child.isResident()) {
+                residentInputs[i] = child.getSharedMatrix().layout();
+            } else {
+                inputs[i] = denseOf(child);
+            }
+            shapes[i] = shapeOf(child);
+        }
+
+        int rows = -1;
+        int cols = -1;
+        for (FusedTerm term : terms) {
+            int[] shape = shapes[term.getInput()];
+            int termRows = term.isTransposed() ? shape[1] : shape[0];
+            int termCols = term.isTransposed() ? shape[0] : shape[1];
+            if (rows < 0) {
+                rows = termRows;
+                cols = termCols;
+            } else if (termRows != rows || termCols != cols) {
+                throw new IllegalArgumentException("Dimension mismatch for " + pending.node.getNodeType() + ": "
+                        + rows + "x" + cols + " vs " + termRows + "x" + termCols);
+            }
+        }
+
+        double[] out = acquireResult(rows, cols);
+        pending.denseResult = adopt(out, rows, cols);
+        pending.tasks = createFusedTasks(terms, inputs, residentInputs, out, rows, cols);
+    }
+
+    // Row-major storage for a result from the buffer pool; it may be longer than rows * cols and hold anything
+    private double[] acquireResult(int rows, int cols) {
+        long size = (long) rows * cols;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Matrix of " + rows + "x" + cols + " exceeds the maximal contiguous storage size");
+        }
+        return bufferPool.acquire((int) size);
+    }
+
+    private boolean runsOutOfCore(ComputationNode node) {
+        List<ComputationNode> children = node.getChildren();
+        for (ComputationNode child : children) {
+            if (child.isOnDisk()) {
+                return true;
+            }
+        }
+        int[] first = shapeOf(children.get(0));
+        long rows = first[0];
+        long cols = first[1];
+        switch (node.getNodeType()) {
+            case MULTIPLY:
+                cols = shapeOf(children.get(1))[1];
+                break;
+            case GRAM:
+                cols = first[0];
+                break;
+            case TRANSPOSE:
+                rows = first[1];
+                cols = first[0];
+                break;
+            case FUSED:
+                FusedTerm term = node.getFusedTerms().get(0);
+                int[] input = shapeOf(children.get(term.getInput()));
+                rows = term.isTransposed() ? input[1] : input[0];
+                cols = term.isTransposed() ? input[0] : input[1];
+                break;
+            default:
+                break;
+        }
+        return 8 * rows * cols > outOfCoreBytes;
+    }
+
+    private static int[] shapeOf(ComputationNode matrixNode) {
+        if (matrixNode.isResident()) {
+            return new int[]{matrixNode.getSharedMatrix().rows(), matrixNode.getSharedMatrix().cols()};
+        }
+        if (matrixNode.isOnDisk()) {
+            return new int[]{matrixNode.getDiskMatrix().rows(), matrixNode.getDiskMatrix().cols()};
+        }
+        if (matrixNode.isSparse()) {
+            return new int[]{matrixNode.getSparseMatrix().rows(), matrixNode.getSparseMatrix().cols()};
+        }
+        return new int[]{matrixNode.getMatrix().length, widthOf(matrixNode.getMatrix())};
+    }
+
+    // Computes the node tile by tile into a spill file, holding only a few blocks of every operand in memory
+    private void prepareOutOfCore(PendingNode pending) {
+        ComputationNode node = pending.node;
+        List<ComputationNode> children = node.getChildren();
+        BlockSource[] operands = new BlockSource[children.size()];
+        for (int i = 0; i < operands.length; i++) {
+            ComputationNode child = children.get(i);
+            if (child.isOnDisk()) {
+                operands[i] = child.getDiskMatrix();
+            } else {
+                operands[i] = child.isSparse() ? child.getSparseMatrix() : blockSourceOf(child);
+            }
+        }
+
+        if (node.getNodeType() == ComputationNodeType.MULTIPLY) {
+            BlockSource left = operands[0];
+            BlockSource right = operands[1];
+            if (left.cols() != right.rows()) {
+                throw new IllegalArgumentException("Dimension mismatch for MULTIPLY: Left cols (" + left.cols() + ") != Right rows (" + right.rows() + ")");
+            }
+            DiskMatrix out = spill(left.rows(), right.cols());
+            pending.diskResult = out;
+            pending.tasks = createOutOfCoreTasks(out, MULTIPLY_WEIGHT * left.cols(),
+                    (r0, r1, c0, c1) -> OutOfCoreKernels.multiplyTile(left, right, out, r0, r1, c0, c1));
+            return;
+        }
+        if (node.getNodeType() == ComputationNodeType.GRAM) {
+            BlockSource source = operands[0];
+            DiskMatrix out = spill(source.rows(), source.rows());
+            pending.diskResult = out;
+            // Tiles below the diagonal are written by their mirror above it
+            pending.tasks = createOutOfCoreTasks(out, MULTIPLY_WEIGHT * source.cols(), true,
+                    (r0, r1, c0, c1) -> OutOfCoreKernels.symmetricTile(source, out, r0, r1, c0, c1));
+            return;
+        }
+
+        List<FusedTerm> terms;
+        switch (node.getNodeType()) {
+            case ADD:
+                terms = List.of(new FusedTerm(0, false, false), new FusedTerm(1, false, false));
+                break;
+            case SUBTRACT:
+                terms = List.of(new FusedTerm(0, false, false), new FusedTerm(1, true, false));
+                break;
+            case NEGATE:
+                terms = List.of(new FusedTerm(0, true, false));
+                break;
+            case TRANSPOSE:
+                terms = List.of(new FusedTerm(0, false, true));
+                break;
+            case FUSED:
+                terms = node.getFusedTerms();
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported computation node type: " + node.getNodeType());
+        }
+        BlockSource[] inputs = new BlockSource[terms.size()];
+        boolean[] negated = new boolean[terms.size()];
+        boolean[] transposed = new boolean[terms.size()];
+        int rows = -1;
+        int cols = -1;
+        for (int t = 0; t < terms.size(); t++) {
+            FusedTerm term = terms.get(t);
+            inputs[t] = operands[term.getInput()];
+            negated[t] = term.isNegated();
+            transposed[t] = term.isTransposed();
+            int termRows = transposed[t] ? inputs[t].cols() : inputs[t].rows();
+            int termCols = transposed[t] ? inputs[t].rows() : inputs[t].cols();
+            if (rows < 0) {
+                rows = termRows;
+                cols = termCols;
+            } else if (termRows != rows || termCols != cols) {
+                throw new IllegalArgumentException("Dimension mismatch for " + node.getNodeType() + ": "
+                        + rows + "x" + cols + " vs " + termRows + "x" + termCols);
+            }
+        }
+        DiskMatrix out = spill(rows, cols);
+        pending.diskResult = out;
+        pending.tasks = createOutOfCoreTasks(out, FUSED_WEIGHT * terms.size(),
+                (r0, r1, c0, c1) -> OutOfCoreKernels.sumTile(inputs, negated, transposed, out, r0, r1, c0, c1));
+    }
+
+    // Operations with a sparse kernel: sparse * dense, sparse +/- sparse, and -S and S^T; false for anything else
+    private boolean prepareSparse(PendingNode pending) {
+        ComputationNode node = pending.node;
+        List<ComputationNode> children = node.getChildren();
+        if (children.isEmpty() || !children.get(0).isSparse()) {
+            return false;
+        }
+        SparseMatrix left = children.get(0).getSparseMatrix();
+        switch (node.getNodeType()) {
+            case NEGATE:
+                pending.tasks = List.of(WeightedTask.of(NEGATE_WEIGHT * left.nnz(), () -> pending.sparseResult = left.negate()));
+                return true;
+            case TRANSPOSE:
+                pending.tasks = List.of(WeightedTask.of(TRANSPOSE_WEIGHT * left.nnz(), () -> pending.sparseResult = left.transpose()));
+                return true;
+            case ADD:
+            case SUBTRACT:
+                if (!children.get(1).isSparse()) {
+                    return false;
+                }
+                SparseMatrix right = children.get(1).getSparseMatrix();
+                if (right.rows() != left.rows() || right.cols() != left.cols()) {
+                    throw new IllegalArgumentException("Dimension mismatch for " + node.getNodeType() + ": "
+                            + left.rows() + "x" + left.cols() + " vs " + right.rows() + "x" + right.cols());
+                }
+                boolean subtract = node.getNodeType() == ComputationNodeType.SUBTRACT;
+                pending.tasks = List.of(WeightedTask.of(ADD_WEIGHT * (left.nnz() + right.nnz()),
+                        () -> pending.sparseResult = left.add(subtract ? right.negate() : right)));
+                return true;
+            case MULTIPLY:
+                ComputationNode rightNode = children.get(1);
+                int[] rightShape = shapeOf(rightNode);
+                if (left.cols() != rightShape[0]) {
+                    throw new IllegalArgumentException("Dimension mismatch for MULTIPLY: Left cols (" + left.cols() + ") != Right rows (" + rightShape[0] + ")");
+                }
+                double[] out = acquireResult(left.rows(), rightShape[1]);
+                pending.denseResult = adopt(out, left.rows(), rightShape[1]);
+                if (rightNode.isResident()) {
+                    // A resident right operand is read in place rather than exported into rows
+                    StridedLayout layout = rightNode.getSharedMatrix().layout();
+                    pending.tasks = createSparseMultiplyTasks(left, rightShape[1],
+                            (rowStart, rowEnd) -> left.multiplyRows(layout, out, rowStart, rowEnd));
+                } else {
+                    double[][] dense = denseOf(rightNode);
+                    pending.tasks = createSparseMultiplyTasks(left, rightShape[1],
+                            (rowStart, rowEnd) -> left.multiplyRows(dense, out, rowStart, rowEnd));
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private interface RowKernel {
+        void compute(int rowStart, int rowEnd);
+    }
+
+    // Row blocks of the sparse operand, sized by their non-zeros rather than their number of rows
+    private List<Runnable> createSparseMultiplyTasks(SparseMatrix left, long cols, RowKernel kernel) {
+        List<Runnable> tasks = new ArrayList<>();
+        int rows = left.rows();
+        long unitsPerRow = MULTIPLY_WEIGHT * cols * Math.max(1, left.nnz() / Math.max(1, rows));
+        int rowsPerTask = granularity.rowsPerTask(rows, unitsPerRow, executor.getNumWorkers());
+        for (int start = 0; start < rows; start += rowsPerTask) {
+            final int rowStart = start;
+            final int rowEnd = Math.min(rows, start + rowsPerTask);
+            long weight = MULTIPLY_WEIGHT * cols * Math.max(1, left.nnz(rowStart, rowEnd));
+            tasks.add(WeightedTask.of(weight, () -> kernel.compute(rowStart, rowEnd)));
+        }
+        return tasks;
+    }
+
+    // An operand that is only read: a child's engine storage as is, or the child's rows loaded once
+    private SharedMatrix sharedOperand(PendingNode pending, ComputationNode matrixNode) {
+        if (matrixNode.isResident()) {
+            return matrixNode.getSharedMatrix();
+        }
+        SharedMatrix loaded = load(matrixNode);
+        pending.scratch.add(loaded);
+        return loaded;
+    }
+
+    // The right operand of ADD or SUBTRACT, whose vectors are added to those of left one by one, so it must have
+    // the same orientation; only a transposed operand of a non-transposed one is physically transposed
+    private SharedMatrix alignedOperand(PendingNode pending, ComputationNode matrixNode, SharedMatrix left) {
+        SharedMatrix right = sharedOperand(pending, matrixNode);
+        if (right.rows() != left.rows() || right.cols() != left.cols()) {
+            throw new IllegalArgumentException("Dimension mismatch for " + pending.node.getNodeType() + ": "
+                    + left.rows() + "x" + left.cols() + " vs " + right.rows() + "x" + right.cols());
+        }
+        if (right.getOrientation() == left.getOrientation()) {
+            return right;
+        }
+        SharedMatrix aligned = right.copy(left.getOrientation(), bufferPool);
+        pending.scratch.add(aligned);
+        return aligned;
+    }
+
+    // An operand the kernel may modify; a resident child can have other readers and the result cache
+    private SharedMatrix privateOperand(ComputationNode matrixNode) {
+        if (matrixNode.isResident()) {
+            return matrixNode.getSharedMatrix().copy(matrixNode.getSharedMatrix().getOrientation(), bufferPool);
+        }
+        return load(matrixNode);
+    }
+
+    private SharedMatrix load(ComputationNode matrixNode) {
+        SharedMatrix loaded = new SharedMatrix();
+        loaded.loadRowMajor(denseOf(matrixNode), bufferPool);
+        return loaded;
+    }
+
+    // Rows of a matrix node; a resident node is copied out without giving up its engine storage
+    private static double[][] denseOf(ComputationNode matrixNode) {
+        if (matrixNode.isResident()) {
+            return matrixNode.getSharedMatrix().readRowMajor();
+        }
+        return matrixNode.isSparse() ? matrixNode.getSparseMatrix().toDense() : matrixNode.getMatrix();
+    }
+
+    // A dense operand of an out-of-core kernel, read in place when it is resident
+    private static BlockSource blockSourceOf(ComputationNode matrixNode) {
+        if (matrixNode.isResident()) {
+            return matrixNode.getSharedMatrix().layout();
+        }
+        return BlockSource.of(matrixNode.getMatrix());
+    }
+
+    private interface TileKernel {
+        void compute(int rowStart, int rowEnd, int colStart, int colEnd);
+    }
+
+    // One task per output tile; tiles are large enough that the granularity target is irrelevant
+    private static List<Runnable> createOutOfCoreTasks(DiskMatrix out, long unitsPerElement, TileKernel kernel) {
+        return createOutOfCoreTasks(out, unitsPerElement, false, kernel);
+    }
+
+    // One task per output tile; with upperOnly, only the tiles on or above the diagonal
+    private static List<Runnable> createOutOfCoreTasks(DiskMatrix out, long unitsPerElement, boolean upperOnly, TileKernel kernel) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < out.rows(); i += OutOfCoreKernels.BLOCK) {
+            for (int j = upperOnly ? i : 0; j < out.cols(); j += OutOfCoreKernels.BLOCK) {
+                final int rowStart = i;
+                final int rowEnd = Math.min(out.rows(), i + OutOfCoreKernels.BLOCK);
+                final int colStart = j;
+                final int colEnd = Math.min(out.cols(), j + OutOfCoreKernels.BLOCK);
+                long weight = unitsPerElement * (rowEnd - rowStart) * (colEnd - colStart);
+                tasks.add(WeightedTask.of(weight, () -> kernel.compute(rowStart, rowEnd, colStart, colEnd)));
+            }
+        }
+        return tasks;
+    }
+
+    private DiskMatrix spill(int rows, int cols) {
+        try {
+            return DiskMatrix.create(spillDirectory, rows, cols);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create a spill file in " + spillDirectory, e);
+        }
+    }
+
+    private static int widthOf(double[][] matrix) {
+        return matrix.length == 0 ? 0 : matrix[0].length;
+    }
+
+    // Submits the node's tasks; the node is queued on completed once its last task has finished
+    private void launch(PendingNode pending, BlockingQueue<PendingNode> completed) {
+        List<Runnable> tasks = pending.tasks;
+        if (pending.launchedAt == 0) {
+            pending.launchedAt = System.nanoTime();
+        }
+        pending.taskCount += tasks.size();
+        List<Runnable> timed = new ArrayList<>(tasks.size());
+        long submitted = System.nanoTime();
+        for (Runnable task : tasks) {
+            timed.add(WeightedTask.of(WeightedTask.weightOf(task), () -> {
+                long started = System.nanoTime();
+                pending.queueWaitNanos.addAndGet(started - submitted);
+                try {
+                    task.run();
+                } finally {
+                    pending.computeNanos.addAndGet(System.nanoTime() - started);
+                }
+            }));
+        }
+        // Submission does not block, so the engine thread is free to prepare the next node meanwhile
+        executor.submitAsync(timed).whenComplete((ignored, failure) -> {
+            if (failure != null && pending.failure == null) {
+                pending.failure = failure;
+            }
+            completed.add(pending);
+        });
+    }
 
+    private static RuntimeException asRuntimeException(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
     }
 
-    public List<Runnable> createAddTasks() {
+    public List<Runnable> createAddTasks(SharedMatrix leftMatrix, SharedMatrix rightMatrix) {
         // TODO: return tasks that perform row-wise addition
+        return createElementwiseTasks("ADD", leftMatrix, rightMatrix, SharedVector::add);
+    }
+
+    /**
+     * Tasks that subtract rightMatrix from leftMatrix in place, row by row.
+     */
+    public List<Runnable> createSubtractTasks(SharedMatrix leftMatrix, SharedMatrix rightMatrix) {
+        return createElementwiseTasks("SUBTRACT", leftMatrix, rightMatrix, SharedVector::subtract);
+    }
+
+    private List<Runnable> createElementwiseTasks(String operation, SharedMatrix leftMatrix, SharedMatrix rightMatrix,
+                                                  BiConsumer<SharedVector, SharedVector> kernel) {
         // ודא שהמטריצות נטענו
         if (leftMatrix == null || rightMatrix == null) return new ArrayList<>();
 
-        // בדיקת מימדים לחיבור: חייבים להיות זהים בשורות ובעמודות
+        // בדיקת מימדים: חייבים להיות זהים בשורות ובעמודות
         int rows = leftMatrix.length();
         int cols = leftMatrix.get(0).length();
 
         if (rightMatrix.length() != rows || rightMatrix.get(0).length() != cols) {
-         throw new IllegalArgumentException("Dimension mismatch for ADD: " 
+         throw new IllegalArgumentException("Dimension mismatch for " + operation + ": "
         + rows + "x" + cols + " vs " + rightMatrix.length() + "x" + rightMatrix.get(0).length());
         }
         List<Runnable> tasks = new java.util.ArrayList<>();
-         int numRows = leftMatrix.length();
+        int numRows = leftMatrix.length();
+        int rowsPerTask = granularity.rowsPerTask(numRows, ADD_WEIGHT * cols, executor.getNumWorkers());
 
-         for (int i = 0; i < numRows; i++) {
-             final int rowIndex = i;
-             tasks.add(() -> {
-                SharedVector v1 = leftMatrix.get(rowIndex);
-                SharedVector v2 = rightMatrix.get(rowIndex);
-                v1.add(v2);
-             });
-         }
-         return tasks;
+        for (int start = 0; start < numRows; start += rowsPerTask) {
+            final int rowStart = start;
+            final int rowEnd = Math.min(numRows, start + rowsPerTask);
+            tasks.add(WeightedTask.of(ADD_WEIGHT * cols * (rowEnd - rowStart), () -> {
+                for (int rowIndex = rowStart; rowIndex < rowEnd; rowIndex++) {
+                    kernel.accept(leftMatrix.get(rowIndex), rightMatrix.get(rowIndex));
+                }
+            }));
+        }
+        return tasks;
     }
 
-    public List<Runnable> createMultiplyTasks() {
+    public List<Runnable> createMultiplyTasks(TiledGemm gemm) {
         // TODO: return tasks that perform row × matrix multiplication
-        // ודא שהמטריצות נטענו
-        if (leftMatrix == null || rightMatrix == null) return new ArrayList<>();
+        // The tiled kernel has already validated Left cols == Right rows and allocated the result;
+        // tasks are partitioned over output tiles rather than over rows of the left matrix
+        List<Runnable> tasks = new java.util.ArrayList<>();
+        int rows = gemm.rows();
+        int cols = gemm.cols();
+        int tileCols = Math.min(cols, TiledGemm.TILE_COLS);
+        long unitsPerRow = MULTIPLY_WEIGHT * gemm.depth() * tileCols;
+        int colTiles = (cols + TiledGemm.TILE_COLS - 1) / TiledGemm.TILE_COLS;
+        int minRowTiles = (executor.getNumWorkers() + colTiles - 1) / Math.max(1, colTiles);
+        int tileRows = granularity.rowsPerTask(rows, unitsPerRow, minRowTiles);
+        tileRows = (tileRows + TiledGemm.ROW_ALIGNMENT - 1) / TiledGemm.ROW_ALIGNMENT * TiledGemm.ROW_ALIGNMENT;
 
-// בדיקת מימדים לכפל: עמודות של שמאל == שורות של ימין
-// הערה: אם rightMatrix נטענה כ-Column Major, אז rightMatrix.length() מייצג את מספר העמודות המקוריות,
-// ו-rightMatrix.get(0).length() מייצג את מספר השורות המקוריות.
-// אם rightMatrix נטענה רגיל (Row Major), אז length() זה השורות.
+        for (int i = 0; i < rows; i += tileRows) {
+            for (int j = 0; j < cols; j += TiledGemm.TILE_COLS) {
+                final int rowStart = i;
+                final int rowEnd = Math.min(rows, i + tileRows);
+                final int colStart = j;
+                final int colEnd = Math.min(cols, j + TiledGemm.TILE_COLS);
+                long weight = MULTIPLY_WEIGHT * gemm.depth() * (rowEnd - rowStart) * (colEnd - colStart);
+                tasks.add(WeightedTask.of(weight, () -> gemm.computeTile(rowStart, rowEnd, colStart, colEnd)));
+            }
+        }
+        return tasks;
+    }
 
-// הנחה: בקוד שלך טענת את rightMatrix כ-Column Major לכפל יעיל?
-// אם כן: מספר השורות של המטריצה הימנית הוא rightMatrix.get(0).length()
-// אם לא (טענת כ-Row Major): מספר השורות הוא rightMatrix.length()
+    /**
+     * Tasks computing the upper triangle of a symmetric product: every block of rows is multiplied
+     * from its diagonal to the last column only, in tiles of at most TILE_COLS columns.
+     * The lower triangle is left to the tasks of createMirrorTasks, which must run afterwards.
+     */
+    public List<Runnable> createSymmetricProductTasks(SymmetricProduct gram) {
+        List<Runnable> tasks = new ArrayList<>();
+        int n = gram.size();
+        // A row block multiplies half the columns on average
+        long unitsPerRow = MULTIPLY_WEIGHT * gram.depth() * Math.max(1, n / 2);
+        int tileRows = granularity.rowsPerTask(n, unitsPerRow, executor.getNumWorkers());
+        tileRows = (tileRows + TiledGemm.ROW_ALIGNMENT - 1) / TiledGemm.ROW_ALIGNMENT * TiledGemm.ROW_ALIGNMENT;
+
+        for (int i = 0; i < n; i += tileRows) {
+            for (int j = i; j < n; j += TiledGemm.TILE_COLS) {
+                final int rowStart = i;
+                final int rowEnd = Math.min(n, i + tileRows);
+                final int colStart = j;
+                final int colEnd = Math.min(n, j + TiledGemm.TILE_COLS);
+                long weight = MULTIPLY_WEIGHT * gram.depth() * (rowEnd - rowStart) * (colEnd - colStart);
+                tasks.add(WeightedTask.of(weight, () -> gram.computeTile(rowStart, rowEnd, colStart, colEnd)));
+            }
+        }
+        return tasks;
+    }
 
-// נניח המימוש הנפוץ (ימין נטען כ-Column Major):
-        int leftCols = leftMatrix.get(0).length();
-         int rightRows = rightMatrix.get(0).length(); // כי ב-Column Major כל וקטור הוא עמודה, אז האורך שלו הוא מספר השורות
+    /**
+     * Tasks copying the upper triangle of a symmetric product into its lower triangle, one block of rows each.
+     */
+    public List<Runnable> createMirrorTasks(SymmetricProduct gram) {
+        List<Runnable> tasks = new ArrayList<>();
+        int n = gram.size();
+        int rowsPerTask = granularity.rowsPerTask(n, Math.max(1, n / 2), executor.getNumWorkers());
+        for (int start = 0; start < n; start += rowsPerTask) {
+            final int rowStart = start;
+            final int rowEnd = Math.min(n, start + rowsPerTask);
+            // Row i copies i elements
+            long weight = ((long) rowStart + rowEnd) * (rowEnd - rowStart) / 2;
+            tasks.add(WeightedTask.of(weight, () -> gram.mirror(rowStart, rowEnd)));
+        }
+        return tasks;
+    }
 
-        if (leftCols != rightRows) {
-           throw new IllegalArgumentException("Dimension mismatch for MULTIPLY: Left cols (" + leftCols + ") != Right rows (" + rightRows + ")");
+    /**
+     * The stages of a Strassen-Winograd product, in order: the splits from the top level down,
+     * the leaf products, and the combines back up. Every stage only reads what earlier stages wrote.
+     */
+    public List<List<Runnable>> createStrassenStages(StrassenWinograd strassen) {
+        List<List<Runnable>> stages = new ArrayList<>();
+        for (int level = 0; level < strassen.depth(); level++) {
+            stages.add(createStrassenBlockTasks(strassen, level, strassen::split));
         }
-        List<Runnable> tasks = new java.util.ArrayList<>();
-        int numRows = leftMatrix.length();
+        List<Runnable> products = new ArrayList<>();
+        for (TiledGemm leaf : strassen.leaves()) {
+            products.addAll(createMultiplyTasks(leaf));
+        }
+        stages.add(products);
+        for (int level = strassen.depth() - 1; level >= 0; level--) {
+            stages.add(createStrassenBlockTasks(strassen, level, strassen::combine));
+        }
+        return stages;
+    }
 
-        for (int i = 0; i < numRows; i++) {
-            final int rowIndex = i;
-            tasks.add(() -> {
-                SharedVector v1 = leftMatrix.get(rowIndex);
-                v1.vecMatMul(rightMatrix);
-            });
+    private interface BlockKernel {
+        void compute(int level, int block, int rowStart, int rowEnd);
+    }
+
+    // Row blocks of every block of the level; a split or combine does about eight additions per element
+    private List<Runnable> createStrassenBlockTasks(StrassenWinograd strassen, int level, BlockKernel kernel) {
+        List<Runnable> tasks = new ArrayList<>();
+        int half = strassen.halfSize(level);
+        long unitsPerRow = 8 * ADD_WEIGHT * half;
+        int blocks = strassen.blocks(level);
+        int rowsPerTask = granularity.rowsPerTask(half, unitsPerRow, (executor.getNumWorkers() + blocks - 1) / blocks);
+        for (int b = 0; b < blocks; b++) {
+            final int block = b;
+            for (int start = 0; start < half; start += rowsPerTask) {
+                final int rowStart = start;
+                final int rowEnd = Math.min(half, start + rowsPerTask);
+                tasks.add(WeightedTask.of(unitsPerRow * (rowEnd - rowStart), () -> kernel.compute(level, block, rowStart, rowEnd)));
+            }
         }
         return tasks;
     }
 
-    public List<Runnable> createNegateTasks() {
+    private static boolean isSquare(SharedMatrix matrix) {
+        return matrix.rows() > 0 && matrix.rows() == matrix.cols();
+    }
+
+    public List<Runnable> createNegateTasks(SharedMatrix leftMatrix) {
         // TODO: return tasks that negate rows
         List<Runnable> tasks = new java.util.ArrayList<>();
         int numRows = leftMatrix.length();
+        long cols = numRows == 0 ? 0 : leftMatrix.get(0).length();
+        int rowsPerTask = granularity.rowsPerTask(numRows, NEGATE_WEIGHT * cols, executor.getNumWorkers());
 
-        for (int i = 0; i < numRows; i++) {
-            final int rowIndex = i;
-            tasks.add(() -> {
-                SharedVector v1 = leftMatrix.get(rowIndex);
-                v1.negate();
-            });
+        for (int start = 0; start < numRows; start += rowsPerTask) {
+            final int rowStart = start;
+            final int rowEnd = Math.min(numRows, start + rowsPerTask);
+            tasks.add(WeightedTask.of(NEGATE_WEIGHT * cols * (rowEnd - rowStart), () -> {
+                for (int rowIndex = rowStart; rowIndex < rowEnd; rowIndex++) {
+                    leftMatrix.get(rowIndex).negate();
+                }
+            }));
         }
         return tasks;
     }
 
-    public List<Runnable> createTransposeTasks() {
-        // TODO: return tasks that transpose rows
+    /**
+     * Tasks that evaluate a sum of (possibly negated and transposed) inputs into the row-major rows x cols
+     * out, one block of output rows per task, without materializing any intermediate matrix.
+     * An input given by residentInputs[i] instead of inputs[i] is read in place from engine storage,
+     * in whichever orientation it is laid out. Every element of out is overwritten.
+     */
+    public List<Runnable> createFusedTasks(List<FusedTerm> terms, double[][][] inputs, StridedLayout[] residentInputs,
+                                           double[] out, int numRows, int cols) {
         List<Runnable> tasks = new java.util.ArrayList<>();
-        int numRows = leftMatrix.length();
+        long unitsPerRow = FUSED_WEIGHT * terms.size() * cols;
+        int rowsPerTask = granularity.rowsPerTask(numRows, unitsPerRow, executor.getNumWorkers());
+        rowsPerTask = Math.max(1, Math.min(rowsPerTask, FUSED_BLOCK_ELEMENTS / Math.max(1, cols)));
 
-        for (int i = 0; i < numRows; i++) {
-            final int rowIndex = i;
-            tasks.add(() -> {
-                SharedVector v1 = leftMatrix.get(rowIndex);
-                v1.transpose();
-            });
+        for (int start = 0; start < numRows; start += rowsPerTask) {
+            final int rowStart = start;
+            final int rowEnd = Math.min(numRows, start + rowsPerTask);
+            tasks.add(WeightedTask.of(unitsPerRow * (rowEnd - rowStart), () -> {
+                for (int t = 0; t < terms.size(); t++) {
+                    FusedTerm term = terms.get(t);
+                    double sign = term.isNegated() ? -1.0 : 1.0;
+                    StridedLayout resident = residentInputs[term.getInput()];
+                    if (resident != null) {
+                        accumulateTerm(out, term.isTransposed() ? resident.transposed() : resident, sign,
+                                t == 0, rowStart, rowEnd, cols);
+                    } else {
+                        accumulateTerm(out, inputs[term.getInput()], sign, term.isTransposed(), t == 0, rowStart, rowEnd, cols);
+                    }
+                }
+            }));
         }
         return tasks;
     }
 
+    // out[rowStart..rowEnd) (=, or += unless first) sign * input, or sign * input^T when transposed
+    private static void accumulateTerm(double[] out, double[][] input, double sign, boolean transposed,
+                                       boolean first, int rowStart, int rowEnd, int cols) {
+        if (!transposed) {
+            for (int i = rowStart; i < rowEnd; i++) {
+                double[] src = input[i];
+                int dst = i * cols;
+                if (first) {
+                    for (int j = 0; j < cols; j++) {
+                        out[dst + j] = sign * src[j];
+                    }
+                } else {
+                    for (int j = 0; j < cols; j++) {
+                        out[dst + j] += sign * src[j];
+                    }
+                }
+            }
+            return;
+        }
+        // out[i][j] = input[j][i]: walk input rows so reads stay sequential,
+        // the output block is small enough to absorb the scattered writes
+        for (int j = 0; j < cols; j++) {
+            double[] src = input[j];
+            if (first) {
+                for (int i = rowStart; i < rowEnd; i++) {
+                    out[i * cols + j] = sign * src[i];
+                }
+            } else {
+                for (int i = rowStart; i < rowEnd; i++) {
+                    out[i * cols + j] += sign * src[i];
+                }
+            }
+        }
+    }
+
+    // out[i][j] (+)= sign * term(i, j) for a term read through its layout; the loops follow whichever
+    // stride is shorter, so a column-major (or transposed) term is still read sequentially
+    private static void accumulateTerm(double[] out, StridedLayout term, double sign,
+                                       boolean first, int rowStart, int rowEnd, int cols) {
+        double[] data = term.data();
+        int rs = term.rowStride();
+        int cs = term.colStride();
+        if (cs <= rs) {
+            for (int i = rowStart; i < rowEnd; i++) {
+                int dst = i * cols;
+                int src = term.offset() + i * rs;
+                for (int j = 0; j < cols; j++, src += cs) {
+                    out[dst + j] = first ? sign * data[src] : out[dst + j] + sign * data[src];
+                }
+            }
+            return;
+        }
+        for (int j = 0; j < cols; j++) {
+            int src = term.offset() + j * cs + rowStart * rs;
+            for (int i = rowStart; i < rowEnd; i++, src += rs) {
+                int dst = i * cols + j;
+                out[dst] = first ? sign * data[src] : out[dst] + sign * data[src];
+            }
+        }
+    }
+
     public String getWorkerReport() {
         // TODO: return summary of worker activity
         return executor.getWorkerReport();
@@ -1,32 +1,128 @@
 package spl.lae;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.IntFunction;
 
+import memory.DiskMatrix;
+import memory.SharedMatrix;
+import memory.VectorOrientation;
+import memory.SparseMatrix;
 import parser.*;
+import scheduling.SchedulingPolicy;
+import scheduling.TaskGranularity;
+import scheduling.TiredExecutor;
+import scheduling.VirtualThreadExecutor;
 
 public class Main {
     public static void main(String[] args) throws IOException {
       // TODO: main
-      if(args.length != 3) {
-          System.out.println("Usage: java -jar lae.jar <input_file> <output_file> <num_threads>");
+      if(args.length < 3) {
+          System.out.println("Usage: java -jar lae.jar <num_threads> <input_file> <output_file> [--executor=tired|virtual] [--work-stealing] [--adaptive-scheduling] [--task-nanos=<n>] [--compact-output] [--binary-output] [--out-of-core-bytes=<n>] [--spill-dir=<dir>] [--strassen-threshold=<n>] [--metrics[=<file>]]");
           return;
       }
       int numThreads = Integer.parseInt(args[0]);
       String inputFile = args[1];
       String outputFile = args[2];
+      boolean workStealing = false;
+      boolean adaptiveScheduling = false;
+      String executorKind = "tired";
+      boolean compactOutput = false;
+      boolean binaryOutput = false;
+      long targetTaskNanos = TaskGranularity.DEFAULT_TARGET_TASK_NANOS;
+      Long outOfCoreBytes = null;
+      String spillDir = null;
+      int strassenThreshold = 0;
+      String metricsFile = null;
+      for (int i = 3; i < args.length; i++) {
+          if (args[i].equals("--work-stealing")) {
+              workStealing = true;
+          } else if (args[i].equals("--adaptive-scheduling")) {
+              adaptiveScheduling = true;
+          } else if (args[i].startsWith("--executor=")) {
+              executorKind = args[i].substring("--executor=".length());
+          } else if (args[i].startsWith("--task-nanos=")) {
+              targetTaskNanos = Long.parseLong(args[i].substring("--task-nanos=".length()));
+          } else if (args[i].equals("--compact-output")) {
+              compactOutput = true;
+          } else if (args[i].equals("--binary-output")) {
+              binaryOutput = true;
+          } else if (args[i].startsWith("--out-of-core-bytes=")) {
+              outOfCoreBytes = Long.parseLong(args[i].substring("--out-of-core-bytes=".length()));
+          } else if (args[i].startsWith("--spill-dir=")) {
+              spillDir = args[i].substring("--spill-dir=".length());
+          } else if (args[i].startsWith("--strassen-threshold=")) {
+              strassenThreshold = Integer.parseInt(args[i].substring("--strassen-threshold=".length()));
+          } else if (args[i].equals("--metrics")) {
+              metricsFile = outputFile + ".metrics.json";
+          } else if (args[i].startsWith("--metrics=")) {
+              metricsFile = args[i].substring("--metrics=".length());
+          } else {
+              System.out.println("Unknown option: " + args[i]);
+              return;
+          }
+      }
+      if (!executorKind.equals("tired") && !executorKind.equals("virtual")) {
+          System.out.println("Unknown executor: " + executorKind);
+          return;
+      }
+      if ((workStealing || adaptiveScheduling) && executorKind.equals("virtual")) {
+          System.out.println("--work-stealing and --adaptive-scheduling only apply to the tired executor");
+          return;
+      }
       LinearAlgebraEngine lae = null;
+      EngineMetrics metrics = metricsFile == null ? null : new EngineMetrics();
       try {
+          if (executorKind.equals("virtual")) {
+              lae = new LinearAlgebraEngine(new VirtualThreadExecutor(numThreads));
+          } else if (adaptiveScheduling) {
+              lae = new LinearAlgebraEngine(new TiredExecutor(numThreads, SchedulingPolicy.ADAPTIVE));
+          } else {
+              lae = new LinearAlgebraEngine(numThreads, workStealing);
+          }
+          lae.setTargetTaskNanos(targetTaskNanos);
+          if (outOfCoreBytes != null) {
+              lae.setOutOfCoreBytes(outOfCoreBytes);
+          }
+          if (spillDir != null) {
+              lae.setSpillDirectory(Path.of(spillDir));
+          }
+          lae.setStrassenThreshold(strassenThreshold);
+          lae.setMetrics(metrics);
+
           InputParser parser = new InputParser();
+          parser.setSpillBytes(lae.getOutOfCoreBytes());
           ComputationNode rootNode = parser.parse(inputFile);
 
           rootNode.associativeNesting();
 
-          lae = new LinearAlgebraEngine(numThreads);
-
           ComputationNode resultNode = lae.run(rootNode);
           if (resultNode==null) {
             throw new RuntimeException("Computation did not produce a result matrix.");
           }
-          OutputWriter.write(resultNode.getMatrix(), outputFile);
+          if (resultNode.isOnDisk()) {
+              // Too large for the heap: stream it out of its spill file one row at a time
+              try (DiskMatrix result = resultNode.getDiskMatrix()) {
+                  double[] row = new double[result.cols()];
+                  writeRows(result.rows(), result.cols(), i -> result.readRow(i, row), outputFile, binaryOutput, compactOutput);
+              }
+          } else if (resultNode.isSparse()) {
+              SparseMatrix result = resultNode.getSparseMatrix();
+              double[] row = new double[result.cols()];
+              writeRows(result.rows(), result.cols(), i -> result.denseRow(i, row), outputFile, binaryOutput, compactOutput);
+          } else if (resultNode.isResident()) {
+              // Written straight from the engine's storage, never converted to rows as a whole;
+              // a transposed view is first laid out by rows so that every row is read sequentially
+              SharedMatrix stored = resultNode.getSharedMatrix();
+              SharedMatrix result = stored.getOrientation() == VectorOrientation.ROW_MAJOR
+                      ? stored : stored.copy(VectorOrientation.ROW_MAJOR);
+              double[] row = new double[result.cols()];
+              writeRows(result.rows(), result.cols(), i -> result.readRow(i, row), outputFile, binaryOutput, compactOutput);
+          } else if (binaryOutput) {
+              MatrixFile.write(outputFile, Map.of("result", resultNode.getMatrix()));
+          } else {
+              OutputWriter.write(resultNode.getMatrix(), outputFile, compactOutput);
+          }
           System.out.println(lae.getWorkerReport());
 
 
@@ -43,6 +139,14 @@ public class Main {
         e.printStackTrace();
 
       } finally {
+          if (metrics != null) {
+              // Also after a failure: the nodes computed before it are often what explains it
+              try {
+                  metrics.writeJson(metricsFile);
+              } catch (IOException e) {
+                  e.printStackTrace();
+              }
+          }
           if (lae != null) {
               try {
                   lae.shutdown();
@@ -56,4 +160,13 @@ public class Main {
 
 
     }
-}
\ No newline at end of file
+
+    private static void writeRows(int rows, int cols, IntFunction<double[]> rowSource, String outputFile,
+                                  boolean binaryOutput, boolean compactOutput) throws IOException {
+        if (binaryOutput) {
+            MatrixFile.write(outputFile, "result", rows, cols, rowSource);
+        } else {
+            OutputWriter.write(rows, rowSource, outputFile, compactOutput);
+        }
+    }
+}
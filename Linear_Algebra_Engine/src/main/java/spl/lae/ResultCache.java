@@ -0,0 +1,83 @@
+package spl.lae;
+
+import optimizer.Fingerprint;
+import parser.ComputationNode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of computed subexpression results, keyed by Fingerprint and
+ * bounded by the total size of the cached matrices. Lets an engine that evaluates several
+ * trees reuse results that an earlier tree already computed.
+ * Entries are resolved dense nodes, whether their matrix is in rows or still in engine storage;
+ * it is shared with the nodes they resolve and must not be modified.
+ */
+class ResultCache {
+
+    private final LinkedHashMap<Fingerprint, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long bytes = 0;
+
+    ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized ComputationNode get(Fingerprint fingerprint) {
+        Entry entry = entries.get(fingerprint);
+        return entry == null ? null : entry.result;
+    }
+
+    // Returns whether the result was kept
+    synchronized boolean put(Fingerprint fingerprint, ComputationNode result) {
+        long size = sizeOf(result);
+        if (size > maxBytes) {
+            return false;
+        }
+        Entry previous = entries.put(fingerprint, new Entry(result, size));
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += size;
+        evictTo(maxBytes);
+        return true;
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evictTo(maxBytes);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictTo(long limit) {
+        Iterator<Map.Entry<Fingerprint, Entry>> it = entries.entrySet().iterator();
+        while (bytes > limit && it.hasNext()) {
+            bytes -= it.next().getValue().bytes;
+            it.remove();
+        }
+    }
+
+    private static long sizeOf(ComputationNode result) {
+        if (result.isResident()) {
+            return 8L * result.getSharedMatrix().rows() * result.getSharedMatrix().cols();
+        }
+        double[][] matrix = result.getMatrix();
+        long cols = matrix.length == 0 ? 0 : matrix[0].length;
+        return 8L * matrix.length * cols;
+    }
+
+    // The size is taken once, a cached node may later be read out into rows
+    private static class Entry {
+        final ComputationNode result;
+        final long bytes;
+
+        Entry(ComputationNode result, long bytes) {
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package memory;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.stream.Stream;
 
 public class MemoryTest {
 
@@ -105,4 +109,315 @@ public class MemoryTest {
         v.vecMatMul(m);
         assertArrayEquals(new double[]{13.0, 16.0}, v.getValues(), 0.0001);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMatrixVectorsAreViewsOverFlatStorage() {
+        double[] flat = {1, 2, 3, 4, 5, 6};
+        SharedMatrix m = new SharedMatrix();
+        m.loadRowMajor(flat, 2, 3);
+
+        assertEquals(2, m.length());
+        assertEquals(3, m.get(1).length());
+        assertEquals(4.0, m.get(1).get(0), 0.0001);
+
+        // שינוי דרך הוקטור צריך להשתקף במערך השטוח המשותף
+        m.get(1).negate();
+        assertArrayEquals(new double[]{1, 2, 3, -4, -5, -6}, flat, 0.0001);
+        assertTrue(Arrays.deepEquals(new double[][]{{1, 2, 3}, {-4, -5, -6}}, m.readRowMajor()));
+    }
+
+    @Test
+    public void testMatrixShapeCopyAndRowsAfterTranspose() {
+        SharedMatrix m = new SharedMatrix(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        for (int i = 0; i < m.length(); i++) {
+            m.get(i).transpose();
+        }
+
+        // הוקטורים הפכו לעמודות, כך שהמטריצה היא כעת 3x2
+        assertEquals(VectorOrientation.COLUMN_MAJOR, m.getOrientation());
+        assertEquals(3, m.rows());
+        assertEquals(2, m.cols());
+        assertArrayEquals(new double[]{2, 5}, m.readRow(1, new double[2]), 0.0);
+
+        // העתק פרטי בשורות, ושינוי שלו לא נוגע במקור
+        SharedMatrix copy = m.copy(VectorOrientation.ROW_MAJOR);
+        assertEquals(VectorOrientation.ROW_MAJOR, copy.getOrientation());
+        copy.get(0).negate();
+        assertTrue(Arrays.deepEquals(new double[][]{{-1, -4}, {2, 5}, {3, 6}}, copy.readRowMajor()));
+        assertTrue(Arrays.deepEquals(new double[][]{{1, 4}, {2, 5}, {3, 6}}, m.readRowMajor()));
+    }
+
+    @Test
+    public void testTransposedViewAndBlockedCopy() {
+        double[][] a = randomMatrix(70, 45, 4);
+        SharedMatrix m = new SharedMatrix(a);
+
+        SharedMatrix view = m.transposedView();
+        assertEquals(45, view.rows());
+        assertEquals(70, view.cols());
+        // המבט חולק את האחסון עם המקור
+        assertSame(m.get(0).storage(), view.get(0).storage());
+
+        double[][] transposed = view.copy(VectorOrientation.ROW_MAJOR).readRowMajor();
+        double[][] viaColumns = m.copy(VectorOrientation.COLUMN_MAJOR).transposedView().readRowMajor();
+        for (int i = 0; i < 45; i++) {
+            for (int j = 0; j < 70; j++) {
+                assertEquals(a[j][i], transposed[i][j], 0.0);
+                assertEquals(a[j][i], viaColumns[i][j], 0.0);
+            }
+        }
+        assertTrue(Arrays.deepEquals(a, view.transposedView().readRowMajor()));
+    }
+
+    @Test
+    public void testBufferPoolReusesFittingArrays() {
+        BufferPool pool = new BufferPool(8 * 1000);
+        double[] first = pool.acquire(100);
+        pool.release(first);
+        pool.release(first); // שחרור כפול אינו מכפיל את המערך בבריכה
+
+        // מערך ארוך ברבע לכל היותר מתאים, ארוך יותר לא
+        assertSame(first, pool.acquire(90));
+        pool.release(first);
+        assertNotSame(first, pool.acquire(50));
+        assertSame(first, pool.acquire(100));
+        assertEquals(1, pool.getReuses() - 1);
+        assertEquals(0, pool.getFreeBytes());
+
+        // מעבר למגבלה המערכים הגדולים נזרקים
+        pool.release(new double[600]);
+        pool.release(new double[600]);
+        assertEquals(8 * 600, pool.getFreeBytes());
+        pool.setMaxBytes(0);
+        assertEquals(0, pool.getFreeBytes());
+    }
+
+    @Test
+    public void testVecMatMulOnViewChangingLength() {
+        // שורה באורך 2 כפול מטריצה 2x3 נותנת שורה באורך 3
+        SharedMatrix left = new SharedMatrix(new double[][]{{1, 2}, {3, 4}});
+        SharedMatrix right = new SharedMatrix();
+        right.loadColumnMajor(new double[][]{{1, 0, 1}, {0, 1, 1}});
+
+        left.get(0).vecMatMul(right);
+        left.get(1).vecMatMul(right);
+
+        assertTrue(Arrays.deepEquals(new double[][]{{1, 2, 3}, {3, 4, 7}}, left.readRowMajor()));
+    }
+
+    @Test
+    public void testTiledGemmMatchesNaiveProduct() {
+        // מימדים שאינם כפולה של גודל הבלוק, כולל עומק גדול מ-KC
+        double[][] a = randomMatrix(7, 300, 1);
+        double[][] b = randomMatrix(300, 5, 2);
+
+        SharedMatrix left = new SharedMatrix(a);
+        SharedMatrix right = new SharedMatrix();
+        right.loadColumnMajor(b); // הקרנל צריך לעבוד גם עם אופרנד ששמור כעמודות
+
+        TiledGemm gemm = new TiledGemm(left, right);
+        gemm.computeTile(0, 3, 0, 5);
+        gemm.computeTile(3, 7, 0, 5);
+
+        double[] c = gemm.result();
+        for (int i = 0; i < 7; i++) {
+            for (int j = 0; j < 5; j++) {
+                double expected = 0;
+                for (int p = 0; p < 300; p++) {
+                    expected += a[i][p] * b[p][j];
+                }
+                assertEquals(expected, c[i * 5 + j], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testSymmetricProductComputesUpperTriangleAndMirrors() {
+        // 70 שורות: יותר מבלוק שיקוף אחד, ובלוקים של שורות שאינם מתיישרים איתו
+        double[][] a = randomMatrix(70, 45, 5);
+        SymmetricProduct gram = new SymmetricProduct(new SharedMatrix(a), new BufferPool(1 << 20));
+        assertEquals(70, gram.size());
+        assertEquals(45, gram.depth());
+
+        for (int i = 0; i < 70; i += 12) {
+            gram.computeTile(i, Math.min(70, i + 12), i, 70);
+        }
+        for (int i = 0; i < 70; i += 9) {
+            gram.mirror(i, Math.min(70, i + 9));
+        }
+
+        double[] c = gram.result();
+        for (int i = 0; i < 70; i++) {
+            for (int j = 0; j < 70; j++) {
+                double expected = 0;
+                for (int p = 0; p < 45; p++) {
+                    expected += a[i][p] * a[j][p];
+                }
+                assertEquals(expected, c[i * 70 + j], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testTiledGemmDimensionMismatch() {
+        SharedMatrix left = new SharedMatrix(new double[][]{{1, 2}});
+        SharedMatrix right = new SharedMatrix(new double[][]{{1}, {2}, {3}});
+        assertThrows(IllegalArgumentException.class, () -> new TiledGemm(left, right));
+    }
+
+    @Test
+    public void testStrassenWinogradStages() {
+        assertEquals(0, StrassenWinograd.depthFor(1000, 0));
+        assertEquals(0, StrassenWinograd.depthFor(100, 128));
+        assertEquals(2, StrassenWinograd.depthFor(256, 128));
+
+        int n = 130;
+        double[][] a = randomMatrix(n, n, 3);
+        double[][] b = randomMatrix(n, n, 4);
+        StrassenWinograd strassen = new StrassenWinograd(new SharedMatrix(a), new SharedMatrix(b), 1);
+        // השלבים רצים ברצף: פיצול, שבע המכפלות, ואז הרכבה
+        strassen.split(0, 0, 0, strassen.halfSize(0));
+        assertEquals(7, strassen.leaves().size());
+        for (TiledGemm leaf : strassen.leaves()) {
+            leaf.computeTile(0, leaf.rows(), 0, leaf.cols());
+        }
+        strassen.combine(0, 0, 0, strassen.halfSize(0));
+
+        double[] c = strassen.result();
+        assertEquals(n * n, c.length);
+        for (int i = 0; i < n; i += 7) {
+            for (int j = 0; j < n; j += 5) {
+                double expected = 0;
+                for (int p = 0; p < n; p++) {
+                    expected += a[i][p] * b[p][j];
+                }
+                assertEquals(expected, c[i * n + j], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testDiskMatrixBlocks(@TempDir Path dir) throws Exception {
+        try (DiskMatrix disk = DiskMatrix.create(dir, 3, 4)) {
+            disk.writeBlock(1, 3, 1, 3, new double[]{1, 2, 3, 4});
+
+            double[] block = new double[4];
+            disk.readBlock(0, 2, 2, 4, block);
+            assertArrayEquals(new double[]{0, 0, 2, 0}, block, 0.0);
+            assertArrayEquals(new double[]{0, 3, 4, 0}, disk.toArray()[2], 0.0);
+        }
+        // קובץ ההחלפה נמחק בסגירה
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testOutOfCoreKernelsMatchInMemoryResults(@TempDir Path dir) throws Exception {
+        // עומק המכפלה גדול מבלוק אחד, כך שהאריח מצטבר מכמה פאנלים
+        double[][] a = randomMatrix(6, OutOfCoreKernels.BLOCK + 40, 3);
+        double[][] b = randomMatrix(OutOfCoreKernels.BLOCK + 40, 5, 4);
+        double[][] c = randomMatrix(5, 6, 5);
+
+        try (DiskMatrix product = DiskMatrix.create(dir, 6, 5);
+             DiskMatrix sum = DiskMatrix.create(dir, 6, 5)) {
+            OutOfCoreKernels.multiplyTile(BlockSource.of(a), BlockSource.of(b), product, 0, 6, 0, 5);
+            // product - c^T
+            OutOfCoreKernels.sumTile(new BlockSource[]{product, BlockSource.of(c)},
+                    new boolean[]{false, true}, new boolean[]{false, true}, sum, 0, 6, 0, 5);
+
+            double[][] expected = sum.toArray();
+            for (int i = 0; i < 6; i++) {
+                for (int j = 0; j < 5; j++) {
+                    double dot = 0;
+                    for (int p = 0; p < a[0].length; p++) {
+                        dot += a[i][p] * b[p][j];
+                    }
+                    assertEquals(dot - c[j][i], expected[i][j], 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSparseMatrixKernels() {
+        double[][] a = {{0, 2, 0}, {0, 0, 0}, {1, 0, -3}};
+        double[][] b = {{0, -2, 0}, {4, 0, 0}, {0, 0, 1}};
+        SparseMatrix sa = SparseMatrix.fromDense(a);
+        SparseMatrix sb = SparseMatrix.fromDense(b);
+
+        assertEquals(3, sa.nnz());
+        assertArrayEquals(new double[]{2, 0, 0}, sa.transpose().toDense()[1], 0.0);
+        assertArrayEquals(new double[]{-1, 0, 3}, sa.negate().toDense()[2], 0.0);
+
+        // האיבר (0,1) מתאפס בחיבור ולכן לא נשמר
+        SparseMatrix sum = sa.add(sb);
+        assertEquals(3, sum.nnz());
+        assertArrayEquals(new double[]{0, 0, 0}, sum.toDense()[0], 0.0);
+        assertArrayEquals(new double[]{1, 0, -2}, sum.toDense()[2], 0.0);
+
+        // הפלט שטוח ונדרס, גם אם הכיל ערכים קודמים
+        double[] product = new double[9];
+        Arrays.fill(product, 5.0);
+        sa.multiplyRows(b, product, 0, 3);
+        assertArrayEquals(new double[]{8, 0, 0, 0, 0, 0, 0, -2, -3}, product, 0.0);
+
+        double[] block = new double[4];
+        sa.readBlock(1, 3, 1, 3, block);
+        assertArrayEquals(new double[]{0, 0, 0, -3}, block, 0.0);
+    }
+
+    @Test
+    public void testVectorKernelsMatchScalar() {
+        VectorKernels kernels = VectorKernels.get();
+        VectorKernels scalar = new ScalarKernels();
+        // אורכים ואופסטים אי-זוגיים כדי לכסות גם את הזנב שאחרי הלולאה הווקטורית
+        for (int length : new int[]{0, 1, 3, 7, 8, 17, 64, 131}) {
+            double[] x = randomMatrix(1, length + 3, length)[0];
+            double[] y = randomMatrix(1, length + 5, length + 1)[0];
+
+            double[] expected = y.clone();
+            double[] actual = y.clone();
+            scalar.add(expected, 5, x, 3, length);
+            kernels.add(actual, 5, x, 3, length);
+            assertArrayEquals(expected, actual, 0.0);
+
+            scalar.negate(expected, 1, length);
+            kernels.negate(actual, 1, length);
+            assertArrayEquals(expected, actual, 0.0);
+
+            scalar.axpy(-1.5, x, 2, expected, 4, length);
+            kernels.axpy(-1.5, x, 2, actual, 4, length);
+            assertArrayEquals(expected, actual, 1e-12);
+
+            assertEquals(scalar.dot(x, 3, y, 5, length), kernels.dot(x, 3, y, 5, length), 1e-9);
+        }
+    }
+
+    @Test
+    public void testVectorOperationsOnMatrixViews() {
+        SharedMatrix m = new SharedMatrix();
+        m.loadRowMajor(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        SharedVector row0 = m.get(0);
+        SharedVector row1 = m.get(1);
+
+        assertEquals(32.0, row0.dot(row1), 0.0);
+        row1.add(row0);
+        assertArrayEquals(new double[]{5, 7, 9}, row1.getValues(), 0.0);
+        // השורה הראשונה באותו מערך שטוח לא השתנתה
+        assertArrayEquals(new double[]{1, 2, 3}, row0.getValues(), 0.0);
+        row0.negate();
+        assertArrayEquals(new double[]{-1, -2, -3}, row0.getValues(), 0.0);
+    }
+
+    private static double[][] randomMatrix(int rows, int cols, long seed) {
+        java.util.Random random = new java.util.Random(seed);
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                m[i][j] = random.nextDouble() * 2 - 1;
+            }
+        }
+        return m;
+    }
+}
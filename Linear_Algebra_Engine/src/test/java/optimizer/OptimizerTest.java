@@ -0,0 +1,225 @@
+package optimizer;
+
+import org.junit.jupiter.api.Test;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import parser.FusedTerm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OptimizerTest {
+
+    private ComputationNode createLeaf(double[][] data) {
+        return new ComputationNode(data);
+    }
+
+    private ComputationNode createOp(ComputationNodeType type, ComputationNode... children) {
+        List<ComputationNode> childList = new ArrayList<>(Arrays.asList(children));
+        return new ComputationNode(type, childList);
+    }
+
+    @Test
+    public void testFusionCollapsesElementwiseChain() {
+        // -(A + B + C)^T
+        ComputationNode a = createLeaf(new double[][]{{1}});
+        ComputationNode b = createLeaf(new double[][]{{2}});
+        ComputationNode c = createLeaf(new double[][]{{3}});
+        ComputationNode root = createOp(ComputationNodeType.NEGATE,
+                createOp(ComputationNodeType.TRANSPOSE,
+                        createOp(ComputationNodeType.ADD, createOp(ComputationNodeType.ADD, a, b), c)));
+
+        ElementwiseFusion.apply(root);
+
+        assertEquals(ComputationNodeType.FUSED, root.getNodeType());
+        assertEquals(List.of(a, b, c), root.getChildren());
+        for (FusedTerm term : root.getFusedTerms()) {
+            assertTrue(term.isNegated());
+            assertTrue(term.isTransposed());
+        }
+    }
+
+    @Test
+    public void testFusionStopsAtProductsAndSkipsSingleOperations() {
+        ComputationNode a = createLeaf(new double[][]{{1}});
+        ComputationNode b = createLeaf(new double[][]{{2}});
+        ComputationNode negA = createOp(ComputationNodeType.NEGATE, a);
+        ComputationNode product = createOp(ComputationNodeType.MULTIPLY, negA, b);
+        ComputationNode root = createOp(ComputationNodeType.ADD,
+                createOp(ComputationNodeType.NEGATE, product), b);
+
+        ElementwiseFusion.apply(root);
+
+        // השורש מתמזג, המכפלה נשארת קלט שלו, והשלילה הבודדת מתחת למכפלה לא ממוזגת
+        assertEquals(ComputationNodeType.FUSED, root.getNodeType());
+        assertSame(product, root.getChildren().get(0));
+        assertEquals(ComputationNodeType.MULTIPLY, product.getNodeType());
+        assertEquals(ComputationNodeType.NEGATE, negA.getNodeType());
+    }
+
+    @Test
+    public void testFusionLeavesMalformedNodesAlone() {
+        ComputationNode a = createLeaf(new double[][]{{1}});
+        ComputationNode malformed = createOp(ComputationNodeType.NEGATE, a, a);
+        ComputationNode root = createOp(ComputationNodeType.NEGATE, malformed);
+
+        ElementwiseFusion.apply(root);
+
+        assertEquals(ComputationNodeType.NEGATE, root.getNodeType());
+        assertEquals(ComputationNodeType.NEGATE, malformed.getNodeType());
+    }
+
+    @Test
+    public void testCommonSubexpressionsAreMerged() {
+        // (A * B) + (A' * B'), כאשר A' ו-B' הם עותקים זהים של A ו-B
+        ComputationNode root = createOp(ComputationNodeType.ADD,
+                createOp(ComputationNodeType.MULTIPLY, createLeaf(new double[][]{{1, 2}}), createLeaf(new double[][]{{3}, {4}})),
+                createOp(ComputationNodeType.MULTIPLY, createLeaf(new double[][]{{1, 2}}), createLeaf(new double[][]{{3}, {4}})));
+
+        CommonSubexpressions.apply(root);
+
+        assertSame(root.getChildren().get(0), root.getChildren().get(1));
+    }
+
+    @Test
+    public void testCommutativeAdditionIsMerged() {
+        ComputationNode a = createLeaf(new double[][]{{1}});
+        ComputationNode b = createLeaf(new double[][]{{2}});
+        ComputationNode root = createOp(ComputationNodeType.MULTIPLY,
+                createOp(ComputationNodeType.ADD, a, b),
+                createOp(ComputationNodeType.ADD, b, a));
+
+        Map<ComputationNode, Fingerprint> fingerprints = CommonSubexpressions.apply(root);
+
+        assertSame(root.getChildren().get(0), root.getChildren().get(1));
+        assertEquals(fingerprints.get(root.getChildren().get(0)), fingerprints.get(root.getChildren().get(1)));
+    }
+
+    @Test
+    public void testDifferentSubexpressionsAreKept() {
+        ComputationNode a = createLeaf(new double[][]{{1}});
+        ComputationNode b = createLeaf(new double[][]{{2}});
+        ComputationNode root = createOp(ComputationNodeType.ADD,
+                createOp(ComputationNodeType.MULTIPLY, a, b),
+                createOp(ComputationNodeType.MULTIPLY, b, a));
+
+        Map<ComputationNode, Fingerprint> fingerprints = CommonSubexpressions.apply(root);
+
+        // כפל אינו חילופי, ולכן שני הצמתים נשארים נפרדים
+        assertNotSame(root.getChildren().get(0), root.getChildren().get(1));
+        assertNotEquals(fingerprints.get(root.getChildren().get(0)), fingerprints.get(root.getChildren().get(1)));
+    }
+
+    @Test
+    public void testRedundantTransposesAndNegationsCancel() {
+        double[][] aData = {{1, 2}};
+        double[][] bData = {{3, 4}};
+        ComputationNode root = createOp(ComputationNodeType.ADD,
+                createOp(ComputationNodeType.TRANSPOSE, createOp(ComputationNodeType.TRANSPOSE, createLeaf(aData))),
+                createOp(ComputationNodeType.NEGATE, createOp(ComputationNodeType.TRANSPOSE,
+                        createOp(ComputationNodeType.NEGATE, createOp(ComputationNodeType.TRANSPOSE, createLeaf(bData))))));
+
+        AlgebraicRewrites.apply(root);
+
+        // (A^T)^T הופך ל-A עצמה, ו--((-(B^T))^T) מצטמצם ל-B
+        assertEquals(ComputationNodeType.ADD, root.getNodeType());
+        assertSame(aData, root.getChildren().get(0).getMatrix());
+        assertSame(bData, root.getChildren().get(1).getMatrix());
+    }
+
+    @Test
+    public void testNegatedSummandBecomesSubtraction() {
+        ComputationNode a = createLeaf(new double[][]{{1}});
+        ComputationNode b = createLeaf(new double[][]{{2}});
+        ComputationNode right = createOp(ComputationNodeType.ADD, a, createOp(ComputationNodeType.NEGATE, b));
+        ComputationNode left = createOp(ComputationNodeType.ADD, createOp(ComputationNodeType.NEGATE, a), b);
+
+        AlgebraicRewrites.apply(right);
+        AlgebraicRewrites.apply(left);
+
+        assertEquals(ComputationNodeType.SUBTRACT, right.getNodeType());
+        assertEquals(List.of(a, b), right.getChildren());
+        // (-A) + B הופך ל-B - A
+        assertEquals(ComputationNodeType.SUBTRACT, left.getNodeType());
+        assertEquals(List.of(b, a), left.getChildren());
+    }
+
+    @Test
+    public void testProductNegationMovesToCheapestPlace() {
+        ComputationNode a = createLeaf(new double[4][2]);
+        ComputationNode b = createLeaf(new double[2][1]);
+        ComputationNode c = createLeaf(new double[4][1]);
+
+        ComputationNode bothNegated = createOp(ComputationNodeType.MULTIPLY,
+                createOp(ComputationNodeType.NEGATE, a), createOp(ComputationNodeType.NEGATE, b));
+        AlgebraicRewrites.apply(bothNegated);
+        assertEquals(List.of(a, b), bothNegated.getChildren());
+
+        // B (2 איברים) זולה יותר לשלילה מ-A (8) ומהמכפלה (4)
+        ComputationNode negated = createOp(ComputationNodeType.NEGATE, createOp(ComputationNodeType.MULTIPLY, a, b));
+        AlgebraicRewrites.apply(negated);
+        assertEquals(ComputationNodeType.MULTIPLY, negated.getNodeType());
+        assertSame(a, negated.getChildren().get(0));
+        assertEquals(ComputationNodeType.NEGATE, negated.getChildren().get(1).getNodeType());
+        assertSame(b, negated.getChildren().get(1).getChildren().get(0));
+
+        // כשהמכפלה מחוברת, הסימן נבלע בחיסור ואף שלילה לא נשארת
+        ComputationNode product = createOp(ComputationNodeType.MULTIPLY, createOp(ComputationNodeType.NEGATE, a), b);
+        ComputationNode sum = createOp(ComputationNodeType.ADD, c, product);
+        AlgebraicRewrites.apply(sum);
+        assertEquals(ComputationNodeType.SUBTRACT, sum.getNodeType());
+        assertSame(c, sum.getChildren().get(0));
+        ComputationNode subtrahend = sum.getChildren().get(1);
+        assertEquals(ComputationNodeType.MULTIPLY, subtrahend.getNodeType());
+        assertEquals(List.of(a, b), subtrahend.getChildren());
+    }
+
+    @Test
+    public void testTransposedProductIsReorderedOnlyWhenTransposesCancel() {
+        ComputationNode a = createLeaf(new double[][]{{1, 2}, {3, 4}});
+        ComputationNode b = createLeaf(new double[][]{{5, 6}, {7, 8}});
+        ComputationNode reordered = createOp(ComputationNodeType.TRANSPOSE,
+                createOp(ComputationNodeType.MULTIPLY, createOp(ComputationNodeType.TRANSPOSE, a), b));
+        ComputationNode product = createOp(ComputationNodeType.MULTIPLY, a, b);
+        ComputationNode kept = createOp(ComputationNodeType.TRANSPOSE, product);
+
+        AlgebraicRewrites.apply(reordered);
+        AlgebraicRewrites.apply(kept);
+
+        // (A^T * B)^T = B^T * A: נשאר שחלוף אחד במקום שניים
+        assertEquals(ComputationNodeType.MULTIPLY, reordered.getNodeType());
+        ComputationNode left = reordered.getChildren().get(0);
+        assertEquals(ComputationNodeType.TRANSPOSE, left.getNodeType());
+        assertSame(b, left.getChildren().get(0));
+        assertSame(a, reordered.getChildren().get(1));
+
+        assertEquals(ComputationNodeType.TRANSPOSE, kept.getNodeType());
+        assertSame(product, kept.getChildren().get(0));
+    }
+
+    @Test
+    public void testSymmetricProductsBecomeGramNodes() {
+        ComputationNode x = createLeaf(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        ComputationNode xT = createOp(ComputationNodeType.TRANSPOSE, x);
+        ComputationNode outer = createOp(ComputationNodeType.MULTIPLY, x, xT);
+        ComputationNode inner = createOp(ComputationNodeType.MULTIPLY, xT, x);
+        // עותק זהה של X אינו אותו אובייקט, ולכן לא מזוהה לפני איחוד תת-ביטויים
+        ComputationNode copy = createOp(ComputationNodeType.MULTIPLY, x,
+                createOp(ComputationNodeType.TRANSPOSE, createLeaf(new double[][]{{1, 2, 3}, {4, 5, 6}})));
+        ComputationNode root = createOp(ComputationNodeType.ADD, createOp(ComputationNodeType.ADD, outer, copy),
+                createOp(ComputationNodeType.TRANSPOSE, inner));
+
+        SymmetricProducts.apply(root);
+
+        assertEquals(ComputationNodeType.GRAM, outer.getNodeType());
+        assertEquals(List.of(x), outer.getChildren());
+        // X^T * X הוא ה-Gram של X^T
+        assertEquals(ComputationNodeType.GRAM, inner.getNodeType());
+        assertEquals(List.of(xT), inner.getChildren());
+        assertEquals(ComputationNodeType.MULTIPLY, copy.getNodeType());
+    }
+}
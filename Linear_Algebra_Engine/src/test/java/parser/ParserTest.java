@@ -0,0 +1,236 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import memory.SharedMatrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParserTest {
+
+    private ComputationNode createLeaf(int rows, int cols) {
+        return new ComputationNode(new double[rows][cols]);
+    }
+
+    @TempDir
+    Path tempDir;
+
+    private String writeInput(String json) throws IOException {
+        Path file = tempDir.resolve("input.json");
+        Files.writeString(file, json);
+        return file.toString();
+    }
+
+    private ComputationNode createOp(ComputationNodeType type, ComputationNode... children) {
+        List<ComputationNode> childList = new ArrayList<>(Arrays.asList(children));
+        return new ComputationNode(type, childList);
+    }
+
+    @Test
+    public void testMatrixChainOrderCost() {
+        // 1000x10 * 10x1000 * 1000x10
+        int[] dims = {1000, 10, 1000, 10};
+        MatrixChainOrder order = new MatrixChainOrder(dims);
+
+        // A * (B * C) = 10*1000*10 + 1000*10*10
+        assertEquals(200_000L, order.getCost());
+        assertEquals(0, order.getSplit(0, 2));
+        // ((A * B) * C) = 1000*10*1000 + 1000*1000*10 יקר פי מאה
+        assertEquals(100 * order.getCost(), 1000L * 10 * 1000 + 1000L * 1000 * 10);
+    }
+
+    @Test
+    public void testNestingChoosesCheapestProductOrder() {
+        ComputationNode a = createLeaf(1000, 10);
+        ComputationNode b = createLeaf(10, 1000);
+        ComputationNode c = createLeaf(1000, 10);
+        ComputationNode root = createOp(ComputationNodeType.MULTIPLY, a, b, c);
+
+        root.associativeNesting();
+
+        assertEquals(2, root.getChildren().size());
+        assertSame(a, root.getChildren().get(0));
+        ComputationNode right = root.getChildren().get(1);
+        assertEquals(ComputationNodeType.MULTIPLY, right.getNodeType());
+        assertEquals(List.of(b, c), right.getChildren());
+    }
+
+    @Test
+    public void testNestingStaysLeftAssociativeForAddAndUnknownShapes() {
+        ComputationNode a = createLeaf(2, 2);
+        ComputationNode b = createLeaf(2, 2);
+        ComputationNode c = createLeaf(2, 2);
+        ComputationNode sum = createOp(ComputationNodeType.ADD, a, b, c);
+        // למכפלה יש אופרנדים שאינם תואמים, אז הצורה לא ידועה ונשארים עם קינון שמאלי
+        ComputationNode product = createOp(ComputationNodeType.MULTIPLY, createLeaf(2, 3), createLeaf(2, 2), createLeaf(2, 2));
+        ComputationNode root = createOp(ComputationNodeType.NEGATE, createOp(ComputationNodeType.ADD, sum, product));
+
+        root.associativeNesting();
+
+        // גם צמתים עמוקים בעץ מקוננים
+        assertEquals(2, sum.getChildren().size());
+        assertEquals(List.of(a, b), sum.getChildren().get(0).getChildren());
+        assertSame(c, sum.getChildren().get(1));
+        assertEquals(2, product.getChildren().size());
+        assertEquals(ComputationNodeType.MULTIPLY, product.getChildren().get(0).getNodeType());
+    }
+
+    @Test
+    public void testParseOperationTree() throws Exception {
+        // השדות יכולים להופיע בכל סדר, ושדות לא מוכרים מתעלמים מהם
+        String path = writeInput("{\"operands\": [[[1, 2.5], [3, -4e2]], {\"operator\": \"-\", \"comment\": {\"x\": [1]},"
+                + " \"operands\": [[[7, 8], [9, 10]]]}], \"operator\": \"+\"}");
+
+        ComputationNode root = new InputParser().parse(path);
+
+        assertEquals(ComputationNodeType.ADD, root.getNodeType());
+        assertArrayEquals(new double[]{3, -400}, root.getChildren().get(0).getMatrix()[1], 0.0);
+        ComputationNode negate = root.getChildren().get(1);
+        assertEquals(ComputationNodeType.NEGATE, negate.getNodeType());
+        assertArrayEquals(new double[]{9, 10}, negate.getChildren().get(0).getMatrix()[1], 0.0);
+    }
+
+    @Test
+    public void testParseWideMatrixRow() throws Exception {
+        StringBuilder json = new StringBuilder("[[");
+        for (int j = 0; j < 100; j++) {
+            json.append(j == 0 ? "" : ",").append(j);
+        }
+        json.append("]]");
+
+        double[][] matrix = new InputParser().parse(writeInput(json.toString())).getMatrix();
+
+        assertEquals(100, matrix[0].length);
+        assertEquals(99.0, matrix[0][99], 0.0);
+    }
+
+    @Test
+    public void testParseRejectsMalformedMatrices() throws Exception {
+        InputParser parser = new InputParser();
+        assertThrows(ParseException.class, () -> parser.parse(writeInput("[]")));
+        assertThrows(ParseException.class, () -> parser.parse(writeInput("[1, 2]")));
+        assertThrows(ParseException.class, () -> parser.parse(writeInput("[[1, 2], [3]]")));
+        assertThrows(ParseException.class, () -> parser.parse(writeInput("[[1], [2, 3]]")));
+        assertThrows(ParseException.class, () -> parser.parse(writeInput("[[1], 2]")));
+        assertThrows(ParseException.class, () -> parser.parse(writeInput("[[1, \"x\"]]")));
+        assertThrows(ParseException.class, () -> parser.parse(writeInput("{\"operator\": \"+\"}")));
+        assertThrows(ParseException.class, () -> parser.parse(writeInput("[[1, 2]")));
+    }
+
+    @Test
+    public void testOutputWriterMatchesPrettyPrintedResult() throws Exception {
+        double[][] matrix = {{1, -2.5}, {3e-7, 4}};
+        Path file = tempDir.resolve("output.json");
+        ObjectMapper mapper = new ObjectMapper();
+
+        OutputWriter.write(matrix, file.toString());
+
+        // הפלט זהה לפלט של ה-ObjectMapper שהיה בשימוש קודם
+        String expected = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(Map.of("result", matrix));
+        assertEquals(expected, Files.readString(file));
+    }
+
+    @Test
+    public void testOutputWriterCompactRowsFromSource() throws Exception {
+        Path file = tempDir.resolve("output.json");
+        double[] buffer = new double[3];
+
+        OutputWriter.write(2, i -> {
+            Arrays.fill(buffer, i + 0.5);
+            return buffer;
+        }, file.toString(), true);
+
+        assertEquals("{\"result\":[[0.5,0.5,0.5],[1.5,1.5,1.5]]}", Files.readString(file));
+    }
+
+    @Test
+    public void testOutputWriterError() throws Exception {
+        Path file = tempDir.resolve("output.json");
+
+        OutputWriter.write("Error during computation: \"x\"", file.toString());
+
+        Map<?, ?> written = new ObjectMapper().readValue(file.toFile(), Map.class);
+        assertEquals("Error during computation: \"x\"", written.get("error"));
+    }
+
+    @Test
+    public void testMatrixFileRoundTrip() throws Exception {
+        Map<String, double[][]> matrices = new LinkedHashMap<>();
+        matrices.put("A", new double[][]{{1, 2, 3}, {4, 5, 6}});
+        matrices.put("identity", new double[][]{{1, 0}, {0, 1}});
+        Path file = tempDir.resolve("matrices.laem");
+
+        MatrixFile.write(file.toString(), matrices);
+
+        try (MatrixFile read = MatrixFile.open(file)) {
+            assertEquals(List.of("A", "identity"), read.names());
+            assertEquals(2, read.rows("A"));
+            assertEquals(3, read.cols("A"));
+            assertArrayEquals(new double[]{4, 5, 6}, read.read("A").readRow(1, new double[3]), 0.0);
+            assertEquals(1.0, read.map("identity").get(3), 0.0);
+        }
+    }
+
+    @Test
+    public void testParseMatrixFileReference() throws Exception {
+        MatrixFile.write(tempDir.resolve("m.laem").toString(), Map.of("A", new double[][]{{1, 2}, {3, 4}}));
+
+        ComputationNode root = new InputParser().parse(writeInput(
+                "{\"operator\": \"*\", \"operands\": [{\"file\": \"m.laem\", \"name\": \"A\"}, {\"file\": \"m.laem\", \"name\": \"A\"}]}"));
+
+        // מטריצה שמופיעה פעמיים נקראת פעם אחת, ישר לאחסון המנוע, ומשותפת לשני העלים
+        SharedMatrix left = root.getChildren().get(0).getSharedMatrix();
+        assertSame(left, root.getChildren().get(1).getSharedMatrix());
+        assertArrayEquals(new double[]{3, 4}, left.readRow(1, new double[2]), 0.0);
+        assertThrows(ParseException.class, () -> new InputParser().parse(writeInput("{\"file\": \"m.laem\", \"name\": \"B\"}")));
+    }
+
+    @Test
+    public void testMatrixFileRejectsOtherFiles() throws Exception {
+        Path file = tempDir.resolve("not-a-matrix.laem");
+        Files.writeString(file, "{\"result\": []}");
+
+        assertThrows(IOException.class, () -> MatrixFile.open(file));
+
+        // אינדקס עם אורך שם שלילי
+        Path corrupt = tempDir.resolve("corrupt.laem");
+        Files.write(corrupt, ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN)
+                .put(new byte[]{'L', 'A', 'E', 'M'}).putInt(1).putInt(1).putInt(-1).array());
+        assertThrows(IOException.class, () -> MatrixFile.open(corrupt));
+    }
+
+    @Test
+    public void testMostlyZeroMatrixParsedAsSparse() throws Exception {
+        // מטריצה 40x40 עם אלכסון בלבד נשמרת בפורמט דליל
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 40; i++) {
+            json.append(i == 0 ? "[" : ",[");
+            for (int j = 0; j < 40; j++) {
+                json.append(j == 0 ? "" : ",").append(i == j ? i + 1 : 0);
+            }
+            json.append("]");
+        }
+        json.append("]");
+
+        ComputationNode sparse = new InputParser().parse(writeInput(json.toString()));
+        ComputationNode dense = new InputParser().parse(writeInput("[[0, 0], [0, 1]]"));
+
+        assertTrue(sparse.isSparse());
+        assertEquals(40, sparse.getSparseMatrix().nnz());
+        assertEquals(40.0, sparse.getSparseMatrix().toDense()[39][39], 0.0);
+        assertFalse(dense.isSparse());
+    }
+}
@@ -0,0 +1,198 @@
+package scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TiredExecutorTest {
+
+    private static List<Runnable> countingTasks(int count, AtomicInteger counter) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(counter::incrementAndGet);
+        }
+        return tasks;
+    }
+
+    @Test
+    public void testSubmitAllRunsEveryTask() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(3);
+        AtomicInteger counter = new AtomicInteger();
+
+        executor.submitAll(countingTasks(1000, counter));
+
+        assertEquals(1000, counter.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testWorkStealingRunsEveryTask() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(4, true);
+        AtomicInteger counter = new AtomicInteger();
+
+        // כמה סבבים, כדי שעובדים יספיקו להירדם ולהתעורר בין סבב לסבב
+        for (int round = 0; round < 5; round++) {
+            executor.submitAll(countingTasks(20000, counter));
+            assertEquals(20000 * (round + 1), counter.get());
+        }
+
+        String report = executor.getWorkerReport();
+        assertTrue(report.contains("Tasks Stolen"), "Report should include stealing statistics");
+        executor.shutdown();
+    }
+
+    @Test
+    public void testWorkStealingBalancesUnevenTasks() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(2, true);
+        AtomicInteger counter = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        // כל המשימות הכבדות נופלות על אותו תור (round-robin עם קפיצה של 2)
+        for (int i = 0; i < 40; i++) {
+            final boolean heavy = i % 2 == 0;
+            tasks.add(() -> {
+                if (heavy) {
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                counter.incrementAndGet();
+            });
+        }
+
+        executor.submitAll(tasks);
+
+        assertEquals(40, counter.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testAdaptiveSchedulingFavorsFasterWorker() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(2, SchedulingPolicy.ADAPTIVE);
+        AtomicInteger[] perWorker = {new AtomicInteger(), new AtomicInteger()};
+        // עובד 0 מדמה ליבה איטית פי עשרה; אחרי הסבב הראשון התפוקה שלו כבר נמדדה
+        for (int round = 0; round < 10; round++) {
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                tasks.add(WeightedTask.of(1000, () -> {
+                    int id = ((TiredThread) Thread.currentThread()).getWorkerId();
+                    perWorker[id].incrementAndGet();
+                    try {
+                        Thread.sleep(id == 0 ? 5 : 0, id == 0 ? 0 : 500_000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            executor.submitAll(tasks);
+        }
+
+        assertEquals(100, perWorker[0].get() + perWorker[1].get());
+        assertTrue(perWorker[1].get() > 2 * perWorker[0].get(),
+                "Faster worker should run most tasks, got " + perWorker[0] + " vs " + perWorker[1]);
+        assertTrue(executor.getWorkerReport().contains("Throughput"));
+        assertTrue(executor.getWorkerReport().contains("Fatigue"));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSubmitAsyncDoesNotBlockWhenWorkersAreBusy() throws Exception {
+        TiredExecutor executor = new TiredExecutor(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger counter = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tasks.add(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                counter.incrementAndGet();
+            });
+        }
+
+        // עובד יחיד תפוס, ובכל זאת ההגשה חוזרת מיד והמשימות ממתינות בתור
+        CompletableFuture<Void> done = executor.submitAsync(tasks);
+        assertFalse(done.isDone());
+
+        release.countDown();
+        done.get(10, TimeUnit.SECONDS);
+        assertEquals(5, counter.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSubmitAsyncReportsFirstFailureAfterAllTasks() throws Exception {
+        TiredExecutor executor = new TiredExecutor(2);
+        AtomicInteger counter = new AtomicInteger();
+        List<Runnable> tasks = countingTasks(50, counter);
+        tasks.add(() -> { throw new IllegalStateException("boom"); });
+        tasks.addAll(countingTasks(50, counter));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> executor.submitAsync(tasks).get(10, TimeUnit.SECONDS));
+
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(100, counter.get());
+        // העובדים שרדו את החריגה וממשיכים לקבל משימות
+        executor.submitAll(countingTasks(10, counter));
+        assertEquals(110, counter.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSubmitAsyncOfEmptyBatchIsDone() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(2, true);
+
+        assertTrue(executor.submitAsync(List.of()).isDone());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testWeightedTasksAreCountedAsWorkDone() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(2);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(WeightedTask.of(100, () -> { }));
+        }
+        tasks.add(() -> { }); // משימה ללא משקל לא נספרת
+
+        executor.submitAll(tasks);
+
+        assertEquals(1000, executor.getTotalWorkDone());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testGranularityRowsPerTask() {
+        TaskGranularity granularity = new TaskGranularity(1000);
+        // 1ns ליחידה: כל משימה צריכה לשאת בערך 1000 יחידות
+        assertEquals(1000, granularity.quantum());
+        assertEquals(125, granularity.rowsPerTask(100000, 8, 1));
+        // לא פחות מ-minTasks משימות כשיש מספיק שורות
+        assertEquals(25, granularity.rowsPerTask(100, 8, 4));
+        // שורה יקרה מהקוונטום עדיין מקבלת משימה משלה
+        assertEquals(1, granularity.rowsPerTask(10, 5000, 1));
+    }
+
+    @Test
+    public void testGranularityAdaptsToMeasuredCost() {
+        TaskGranularity granularity = new TaskGranularity(1000);
+        for (int i = 1; i <= 50; i++) {
+            // כל יחידת עבודה עולה בפועל 10ns
+            granularity.observe(i * 10_000L, i * 1_000L);
+        }
+        assertEquals(10.0, granularity.getNanosPerUnit(), 0.01);
+        assertEquals(100, granularity.quantum());
+    }
+}
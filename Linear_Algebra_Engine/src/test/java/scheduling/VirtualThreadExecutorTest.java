@@ -0,0 +1,67 @@
+package scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualThreadExecutorTest {
+
+    @Test
+    public void testSubmitAllRunsEveryTask() throws InterruptedException {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(3);
+        AtomicInteger counter = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tasks.add(WeightedTask.of(2, counter::incrementAndGet));
+        }
+
+        executor.submitAll(tasks);
+
+        assertEquals(1000, counter.get());
+        assertEquals(2000, executor.getTotalWorkDone());
+        assertTrue(executor.getWorkerReport().contains("Tasks Run: 1000"));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSharedSemaphoreBoundsParallelism() throws InterruptedException {
+        // שני מבצעים חולקים שני היתרים, ולכן לכל היותר שתי משימות רצות בבת אחת
+        Semaphore permits = new Semaphore(2);
+        VirtualThreadExecutor first = new VirtualThreadExecutor(permits, 2);
+        VirtualThreadExecutor second = new VirtualThreadExecutor(permits, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            });
+        }
+
+        Thread other = Thread.ofPlatform().start(() -> second.submitAll(tasks));
+        first.submitAll(tasks);
+        other.join();
+
+        assertTrue(peak.get() <= 2, "At most two tasks may run at once, saw " + peak.get());
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    public void testSubmitAfterShutdownIsRejected() throws InterruptedException {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(1);
+        executor.shutdown();
+        assertThrows(IllegalStateException.class, () -> executor.submit(() -> {}));
+    }
+}
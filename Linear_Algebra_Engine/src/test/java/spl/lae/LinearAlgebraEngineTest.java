@@ -3,12 +3,28 @@ package spl.lae;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import memory.DiskMatrix;
+import memory.SparseMatrix;
 import parser.ComputationNode;
 import parser.ComputationNodeType;
+import parser.InputParser;
+import parser.MatrixFile;
+import scheduling.VirtualThreadExecutor;
 
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -42,6 +58,52 @@ public class LinearAlgebraEngineTest {
         return new ComputationNode(type, childList);
     }
 
+    private static double[][] randomMatrix(int rows, int cols, long seed) {
+        java.util.Random random = new java.util.Random(seed);
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                m[i][j] = random.nextDouble() * 2 - 1;
+            }
+        }
+        return m;
+    }
+
+    private static double[][] transpose(double[][] m) {
+        double[][] t = new double[m[0].length][m.length];
+        for (int i = 0; i < m.length; i++) {
+            for (int j = 0; j < m[0].length; j++) {
+                t[j][i] = m[i][j];
+            }
+        }
+        return t;
+    }
+
+    private static double[][] naiveProduct(double[][] a, double[][] b) {
+        double[][] c = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < b[0].length; j++) {
+                for (int k = 0; k < b.length; k++) {
+                    c[i][j] += a[i][k] * b[k][j];
+                }
+            }
+        }
+        return c;
+    }
+
+    private static String writeJson(Path dir, String json) throws Exception {
+        Path file = Files.createTempFile(dir, "input", ".json");
+        Files.writeString(file, json);
+        return file.toString();
+    }
+
+    private static void assertMatrixEquals(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], actual[i], 1e-9);
+        }
+    }
+
     // --- Standard Tests ---
 
     @Test
@@ -69,6 +131,35 @@ public class LinearAlgebraEngineTest {
         assertEquals(11.0, result.getMatrix()[0][0], 0.001);
     }
 
+    @Test
+    public void testRewrittenExpressionGivesSameResult() {
+        // -(A^T * B)^T + (-C) = -(B^T * A + C), מחושב אחרי השכתובים
+        ComputationNode a = createLeaf(new double[][]{{1.0, 2.0}, {3.0, 4.0}});
+        ComputationNode b = createLeaf(new double[][]{{5.0, 6.0}, {7.0, 8.0}});
+        ComputationNode c = createLeaf(new double[][]{{1.0, 1.0}, {1.0, 1.0}});
+        ComputationNode root = createOp(ComputationNodeType.ADD,
+                createOp(ComputationNodeType.NEGATE, createOp(ComputationNodeType.TRANSPOSE,
+                        createOp(ComputationNodeType.MULTIPLY, createOp(ComputationNodeType.TRANSPOSE, a), b))),
+                createOp(ComputationNodeType.NEGATE, c));
+
+        double[][] result = lae.run(root).getMatrix();
+
+        assertArrayEquals(new double[]{-27.0, -39.0}, result[0], 0.001);
+        assertArrayEquals(new double[]{-31.0, -45.0}, result[1], 0.001);
+    }
+
+    @Test
+    public void testNegatedSummandIsSubtracted() {
+        ComputationNode a = createLeaf(new double[][]{{1.0, 2.0}, {3.0, 4.0}});
+        ComputationNode b = createLeaf(new double[][]{{5.0, 6.0}, {7.0, 8.0}});
+        ComputationNode root = createOp(ComputationNodeType.ADD, a, createOp(ComputationNodeType.NEGATE, b));
+
+        double[][] result = lae.run(root).getMatrix();
+
+        assertArrayEquals(new double[]{-4.0, -4.0}, result[0], 0.001);
+        assertArrayEquals(new double[]{-4.0, -4.0}, result[1], 0.001);
+    }
+
     @Test
     public void testTranspose() {
         ComputationNode a = createLeaf(new double[][]{{1.0, 2.0}, {3.0, 4.0}});
@@ -178,4 +269,624 @@ public class LinearAlgebraEngineTest {
         
         assertEquals(6.0, result.getMatrix()[0][0], 0.001);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMultiplicationSpanningSeveralTiles() {
+        // מכפלה גדולה מספיק כדי להתפצל לכמה אריחים בשורות, בעמודות ובעומק
+        int m = 70, k = 300, n = 530;
+        double[][] a = new double[m][k];
+        double[][] b = new double[k][n];
+        for (int i = 0; i < m; i++) {
+            for (int p = 0; p < k; p++) {
+                a[i][p] = (i + p) % 7 - 3;
+            }
+        }
+        for (int p = 0; p < k; p++) {
+            for (int j = 0; j < n; j++) {
+                b[p][j] = (p * 3 + j) % 5 - 2;
+            }
+        }
+
+        ComputationNode result = lae.run(createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b)));
+        double[][] c = result.getMatrix();
+
+        assertEquals(m, c.length);
+        assertEquals(n, c[0].length);
+        for (int i = 0; i < m; i += 13) {
+            for (int j = 0; j < n; j += 17) {
+                double expected = 0;
+                for (int p = 0; p < k; p++) {
+                    expected += a[i][p] * b[p][j];
+                }
+                assertEquals(expected, c[i][j], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testStrassenWinogradMatchesClassicProduct() {
+        // 150 אינו מתחלק בחזקה של 2 ולכן נדרש ריפוד; 256 מתפצל לשתי רמות רקורסיה
+        lae.setResultCacheBytes(0); // אחרת המכפלה השנייה נלקחת מהמטמון
+        for (int n : new int[]{150, 256}) {
+            double[][] a = new double[n][n];
+            double[][] b = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    a[i][j] = (i * 7 + j) % 11 - 5;
+                    b[i][j] = (i + j * 3) % 13 - 6;
+                }
+            }
+            double[][] classic = lae.run(createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b))).getMatrix();
+            lae.setStrassenThreshold(128);
+            double[][] strassen = lae.run(createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b))).getMatrix();
+            lae.setStrassenThreshold(0);
+
+            assertEquals(n, strassen.length);
+            assertEquals(n, strassen[0].length);
+            for (int i = 0; i < n; i++) {
+                assertArrayEquals(classic[i], strassen[i], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testIndependentSubtreesResolved() {
+        // (A*B) + (C*D): שני תתי-העצים בלתי תלויים ורצים במקביל
+        ComputationNode ab = createOp(ComputationNodeType.MULTIPLY,
+                createLeaf(new double[][]{{1.0, 2.0}}), createLeaf(new double[][]{{3.0}, {4.0}}));
+        ComputationNode cd = createOp(ComputationNodeType.MULTIPLY,
+                createLeaf(new double[][]{{2.0, 0.0}}), createLeaf(new double[][]{{5.0}, {7.0}}));
+        ComputationNode root = createOp(ComputationNodeType.ADD,
+                ab, createOp(ComputationNodeType.NEGATE, cd));
+
+        ComputationNode result = lae.run(root);
+
+        assertEquals(ComputationNodeType.MATRIX, result.getNodeType());
+        assertEquals(1.0, result.getMatrix()[0][0], 0.001); // 11 - 10
+    }
+
+    @Test
+    public void testDeeplyNestedTree() {
+        ComputationNode node = createLeaf(new double[][]{{1.0, -1.0}});
+        for (int i = 0; i < 2001; i++) {
+            node = createOp(ComputationNodeType.NEGATE, node);
+        }
+
+        ComputationNode result = lae.run(node);
+
+        assertEquals(-1.0, result.getMatrix()[0][0], 0.001);
+        assertEquals(1.0, result.getMatrix()[0][1], 0.001);
+    }
+
+    @Test
+    public void testErrorInOneSubtreeStillReported() {
+        ComputationNode good = createOp(ComputationNodeType.NEGATE, createLeaf(new double[][]{{1.0}}));
+        ComputationNode bad = createOp(ComputationNodeType.ADD,
+                createLeaf(new double[][]{{1.0, 2.0}}), createLeaf(new double[][]{{1.0}}));
+        ComputationNode root = createOp(ComputationNodeType.ADD, good, bad);
+
+        assertThrows(IllegalArgumentException.class, () -> lae.run(root));
+    }
+
+    @Test
+    public void testComplexTreeWithWorkStealing() throws InterruptedException {
+        LinearAlgebraEngine stealing = new LinearAlgebraEngine(3, true);
+        try {
+            ComputationNode a = createLeaf(new double[][]{{1.0, 1.0}});
+            ComputationNode b = createLeaf(new double[][]{{2.0, 2.0}});
+            ComputationNode c = createLeaf(new double[][]{{2.0}, {0.0}});
+            ComputationNode rootNode = createOp(ComputationNodeType.MULTIPLY,
+                    createOp(ComputationNodeType.ADD, a, b), c);
+
+            assertEquals(6.0, stealing.run(rootNode).getMatrix()[0][0], 0.001);
+        } finally {
+            stealing.shutdown();
+        }
+    }
+
+    @Test
+    public void testComplexTreeOnVirtualThreads() throws InterruptedException {
+        LinearAlgebraEngine virtual = new LinearAlgebraEngine(new VirtualThreadExecutor(2));
+        double[][] a = {{1, 2}, {3, 4}};
+        double[][] b = {{5, 6}, {7, 8}};
+        // (A * B)^T + A
+        ComputationNode root = createOp(ComputationNodeType.ADD,
+                createOp(ComputationNodeType.TRANSPOSE,
+                        createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b))),
+                createLeaf(a));
+
+        double[][] result = virtual.run(root).getMatrix();
+        virtual.shutdown();
+
+        // A * B = [[19, 22], [43, 50]]
+        assertArrayEquals(new double[]{20, 45}, result[0], 0.001);
+        assertArrayEquals(new double[]{25, 54}, result[1], 0.001);
+    }
+
+    @Test
+    public void testTallSkinnyAdditionUsesRowBlocks() {
+        int rows = 10000;
+        double[][] a = new double[rows][8];
+        double[][] b = new double[rows][8];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < 8; j++) {
+                a[i][j] = i;
+                b[i][j] = j;
+            }
+        }
+
+        // משימה אחת לכל בלוק של שורות, לא לכל שורה
+        List<Runnable> tasks = lae.createAddTasks(new memory.SharedMatrix(a), new memory.SharedMatrix(b));
+        assertTrue(tasks.size() < rows / 10, "Expected row blocks, got " + tasks.size() + " tasks");
+
+        double[][] result = lae.run(createOp(ComputationNodeType.ADD, createLeaf(a), createLeaf(b))).getMatrix();
+        assertEquals(rows, result.length);
+        assertEquals(9999.0 + 7.0, result[9999][7], 0.001);
+        assertEquals(5.0 + 3.0, result[5][3], 0.001);
+    }
+
+    @Test
+    public void testFusedElementwiseChain() {
+        // -(A + B^T + C)^T עם מטריצות לא ריבועיות
+        double[][] a = {{1, 2, 3}, {4, 5, 6}};
+        double[][] bT = {{10, 40}, {20, 50}, {30, 60}};
+        double[][] c = {{100, 200, 300}, {400, 500, 600}};
+        ComputationNode root = createOp(ComputationNodeType.NEGATE,
+                createOp(ComputationNodeType.TRANSPOSE,
+                        createOp(ComputationNodeType.ADD,
+                                createOp(ComputationNodeType.ADD, createLeaf(a),
+                                        createOp(ComputationNodeType.TRANSPOSE, createLeaf(bT))),
+                                createLeaf(c))));
+
+        double[][] result = lae.run(root).getMatrix();
+
+        double[][] expected = {{-111, -444}, {-222, -555}, {-333, -666}};
+        assertTrue(Arrays.deepEquals(expected, result), Arrays.deepToString(result));
+    }
+
+    @Test
+    public void testFusedChainDimensionMismatch() {
+        ComputationNode root = createOp(ComputationNodeType.NEGATE,
+                createOp(ComputationNodeType.ADD,
+                        createLeaf(new double[][]{{1, 2}}),
+                        createOp(ComputationNodeType.TRANSPOSE, createLeaf(new double[][]{{1, 2}}))));
+
+        assertThrows(IllegalArgumentException.class, () -> lae.run(root));
+    }
+
+    @Test
+    public void testNestedMultiplyChainIsReorderedAndCorrect() {
+        // D + (A * B * C), כשהמכפלה המשולשת נמצאת עמוק בעץ
+        ComputationNode a = createLeaf(new double[][]{{1}, {2}, {3}});     // 3x1
+        ComputationNode b = createLeaf(new double[][]{{1, 0, 2}});         // 1x3
+        ComputationNode c = createLeaf(new double[][]{{1}, {1}, {1}});     // 3x1
+        ComputationNode d = createLeaf(new double[][]{{10}, {20}, {30}});  // 3x1
+        ComputationNode root = createOp(ComputationNodeType.ADD, d,
+                createOp(ComputationNodeType.MULTIPLY, a, b, c));
+
+        root.associativeNesting();
+        double[][] result = lae.run(root).getMatrix();
+
+        // B * C = [3], A * 3 = [3, 6, 9]
+        assertEquals(13.0, result[0][0], 0.001);
+        assertEquals(26.0, result[1][0], 0.001);
+        assertEquals(39.0, result[2][0], 0.001);
+    }
+
+    @Test
+    public void testRepeatedSubexpressionComputedCorrectly() {
+        // (A * B) + (A * B)^T + -(A * B), כשכל מופע נבנה מעותק נפרד של A ו-B
+        double[][] a = {{1, 2}, {3, 4}};
+        double[][] b = {{0, 1}, {1, 0}};
+        ComputationNode root = createOp(ComputationNodeType.ADD,
+                createOp(ComputationNodeType.ADD,
+                        createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b)),
+                        createOp(ComputationNodeType.TRANSPOSE,
+                                createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b)))),
+                createOp(ComputationNodeType.NEGATE,
+                        createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b))));
+
+        double[][] result = lae.run(root).getMatrix();
+
+        // A * B = [[2, 1], [4, 3]], והתוצאה היא (A * B)^T
+        assertArrayEquals(new double[]{2, 4}, result[0], 0.001);
+        assertArrayEquals(new double[]{1, 3}, result[1], 0.001);
+    }
+
+    @Test
+    public void testResultCacheReusedAcrossRuns() {
+        double[][] a = {{1, 2}, {3, 4}};
+        double[][] b = {{5, 6}, {7, 8}};
+        double[][] first = lae.run(createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b))).getMatrix();
+
+        ComputationNode product = createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b));
+        ComputationNode root = createOp(ComputationNodeType.NEGATE, product);
+        double[][] result = lae.run(root).getMatrix();
+
+        // המכפלה לא חושבה שוב אלא נלקחה מהמטמון
+        assertSame(first, product.getMatrix());
+        assertArrayEquals(new double[]{-19, -22}, result[0], 0.001);
+        assertArrayEquals(new double[]{-43, -50}, result[1], 0.001);
+    }
+
+    @Test
+    public void testIntermediatesStayInEngineStorage() {
+        double[][] a = {{1, 2}, {3, 4}};
+        double[][] b = {{0, 1}, {1, 0}};
+        ComputationNode product = createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b));
+        ComputationNode transposed = createOp(ComputationNodeType.TRANSPOSE, createLeaf(a));
+        // המכפלה נשמרת באחסון של המנוע ונקראת על ידי שני הורים
+        ComputationNode sum = createOp(ComputationNodeType.ADD, product, transposed);
+        ComputationNode root = createOp(ComputationNodeType.MULTIPLY, sum, product);
+
+        ComputationNode result = lae.run(root);
+
+        assertTrue(result.isResident());
+        // A * B = [[2, 1], [4, 3]], A^T = [[1, 3], [2, 4]], והסכום [[3, 4], [6, 7]]
+        double[][] c = result.getMatrix();
+        assertFalse(result.isResident());
+        assertArrayEquals(new double[]{22, 15}, c[0], 0.001);
+        assertArrayEquals(new double[]{40, 27}, c[1], 0.001);
+        // פעולות במקום עובדות על העתק, כך שהמכפלה השמורה לא השתנתה
+        assertArrayEquals(new double[]{2, 1}, product.getMatrix()[0], 0.001);
+    }
+
+    @Test
+    public void testTransposedViewsFeedAddAndMultiply() {
+        double[][] a = new double[60][40];
+        double[][] x = new double[40][60];
+        for (int i = 0; i < 60; i++) {
+            for (int j = 0; j < 40; j++) {
+                a[i][j] = (i * 5 + j) % 7 - 3;
+                x[j][i] = (i + j * 2) % 5 - 2;
+            }
+        }
+        // (X + A^T) * A ידנית
+        double[][] expected = new double[40][40];
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 40; j++) {
+                for (int k = 0; k < 60; k++) {
+                    expected[i][j] += (x[i][k] + a[k][i]) * a[k][j];
+                }
+            }
+        }
+
+        for (boolean viewOnLeft : new boolean[]{false, true}) {
+            // A^T משותף לשני הורים ולכן אינו מאוחד, והשחלוף שלו הוא מבט על מבט
+            ComputationNode transposed = createOp(ComputationNodeType.TRANSPOSE, createLeaf(a));
+            ComputationNode sum = viewOnLeft
+                    ? createOp(ComputationNodeType.ADD, transposed, createLeaf(x))
+                    : createOp(ComputationNodeType.ADD, createLeaf(x), transposed);
+            ComputationNode root = createOp(ComputationNodeType.MULTIPLY, sum,
+                    createOp(ComputationNodeType.TRANSPOSE, transposed));
+
+            double[][] result = lae.run(root).getMatrix();
+
+            for (int i = 0; i < 40; i++) {
+                assertArrayEquals(expected[i], result[i], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testConsumedIntermediatesAreRecycled() {
+        lae.setResultCacheBytes(0);
+        double[][] a = new double[64][64];
+        for (int i = 0; i < 64; i++) {
+            a[i][i] = 2;
+            a[i][(i + 1) % 64] = 1;
+        }
+        // שרשרת של מכפלות: כל תוצאת ביניים נקראת פעם אחת ואז האחסון שלה ממוחזר
+        ComputationNode chain = createLeaf(a);
+        List<ComputationNode> intermediates = new ArrayList<>();
+        for (int step = 0; step < 6; step++) {
+            ComputationNode negated = createOp(ComputationNodeType.NEGATE, chain);
+            chain = createOp(ComputationNodeType.MULTIPLY, negated, createLeaf(a));
+            intermediates.add(negated);
+        }
+
+        ComputationNode result = lae.run(chain);
+
+        assertTrue(lae.getBufferPool().getReuses() > 0, "Buffers should be reused between nodes");
+        // שש החלפות סימן מתקזזות והתוצאה היא A^7 = (2I + S)^7, כאשר S הזזה מעגלית
+        assertEquals(128.0, result.getMatrix()[0][0], 1e-9); // 2^7
+        assertEquals(448.0, result.getMatrix()[0][1], 1e-9); // 7 * 2^6
+        assertEquals(14.0, result.getMatrix()[0][6], 1e-9); // 7 * 2
+        assertEquals(0.0, result.getMatrix()[0][8], 1e-9);
+        // תוצאת ביניים שנצרכה כבר אינה מחזיקה מטריצה
+        assertThrows(IllegalStateException.class, () -> intermediates.get(2).getMatrix());
+    }
+
+    @Test
+    public void testResultCacheCanBeDisabled() {
+        lae.setResultCacheBytes(0);
+        double[][] a = {{1, 2}, {3, 4}};
+        double[][] b = {{5, 6}, {7, 8}};
+        double[][] first = lae.run(createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b))).getMatrix();
+        double[][] second = lae.run(createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b))).getMatrix();
+
+        assertNotSame(first, second);
+        assertArrayEquals(first[1], second[1], 0.001);
+    }
+
+    @Test
+    public void testOutOfCoreMatchesInMemory(@TempDir Path spillDir) throws Exception {
+        // (A * B)^T + -(C), כשכל תוצאת ביניים נכתבת לדיסק
+        double[][] a = {{1, 2, 3}, {4, 5, 6}};
+        double[][] b = {{1, 0}, {0, 1}, {1, 1}};
+        double[][] c = {{1, 1}, {2, 2}};
+        lae.setOutOfCoreBytes(0);
+        lae.setSpillDirectory(spillDir);
+        ComputationNode root = createOp(ComputationNodeType.ADD,
+                createOp(ComputationNodeType.TRANSPOSE,
+                        createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b))),
+                createOp(ComputationNodeType.NEGATE, createLeaf(c)));
+
+        ComputationNode result = lae.run(root);
+
+        // A * B = [[4, 5], [10, 11]]
+        assertTrue(result.isOnDisk());
+        try (DiskMatrix disk = result.getDiskMatrix()) {
+            double[][] matrix = disk.toArray();
+            assertArrayEquals(new double[]{3, 9}, matrix[0], 0.001);
+            assertArrayEquals(new double[]{3, 9}, matrix[1], 0.001);
+        }
+        // קבצי הביניים נמחקו, וקובץ התוצאה נמחק עם סגירתו
+        try (Stream<Path> files = Files.list(spillDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testResidentResultReusedAsLeafStaysResident() {
+        double[][] a = {{1, 2}, {3, 4}};
+        ComputationNode product = lae.run(createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(a)));
+        assertTrue(product.isResident());
+
+        // תוצאה קודמת כעלה בעץ חדש, לצד עותק שווה לה: איחוד תת-ביטויים משווה אותן בלי להוציא אותה מהאחסון
+        double[][] sum = lae.run(createOp(ComputationNodeType.ADD, product,
+                createLeaf(new double[][]{{7, 10}, {15, 22}}))).getMatrix();
+
+        assertArrayEquals(new double[]{30, 44}, sum[1], 0.001);
+        assertTrue(product.isResident());
+    }
+
+    @Test
+    public void testRunClosesOnDiskInputs(@TempDir Path dir) throws Exception {
+        MatrixFile.write(dir.resolve("m.laem").toString(), Map.of("A", new double[][]{{1, 2}, {3, 4}}));
+        InputParser parser = new InputParser();
+        parser.setSpillBytes(0);
+        String reference = "{\"file\": \"m.laem\", \"name\": \"A\"}";
+
+        ComputationNode product = parser.parse(writeJson(dir, "{\"operator\": \"*\", \"operands\": [" + reference + ", " + reference + "]}"));
+        DiskMatrix input = product.getChildren().get(0).getDiskMatrix();
+        double[][] result = lae.run(product).getMatrix();
+
+        assertArrayEquals(new double[]{15, 22}, result[1], 0.001);
+        // הקובץ נסגר בסוף הריצה
+        assertThrows(UncheckedIOException.class, () -> input.readRow(0, new double[2]));
+
+        // (A^T)^T הוא הקלט עצמו, ולכן נשאר פתוח עבור מי שכותב את התוצאה
+        ComputationNode same = parser.parse(writeJson(dir, "{\"operator\": \"T\", \"operands\": [{\"operator\": \"T\", \"operands\": [" + reference + "]}]}"));
+        try (DiskMatrix disk = lae.run(same).getDiskMatrix()) {
+            assertArrayEquals(new double[]{3, 4}, disk.readRow(1, new double[2]), 0.001);
+        }
+    }
+
+    @Test
+    public void testKernelsReadResidentIntermediatesInPlace(@TempDir Path spillDir) throws Exception {
+        // P = A * B נשאר באחסון המנוע; הצומת הממוזג C - P + P^T קורא אותו ישירות, גם בשחלוף
+        double[][] a = {{1, 2, 3}, {4, 5, 6}};
+        double[][] b = {{1, 0}, {0, 1}, {1, 1}};
+        ComputationNode p = createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b));
+        ComputationNode fused = createOp(ComputationNodeType.ADD,
+                createOp(ComputationNodeType.ADD, createOp(ComputationNodeType.NEGATE, p), createLeaf(new double[][]{{1, 1}, {2, 2}})),
+                createOp(ComputationNodeType.TRANSPOSE, p));
+
+        double[][] result = lae.run(fused).getMatrix();
+
+        assertArrayEquals(new double[]{1, 6}, result[0], 1e-9);
+        assertArrayEquals(new double[]{-3, 2}, result[1], 1e-9);
+
+        // מטריצה דלילה כפול תוצאת ביניים שנשארה באחסון המנוע
+        double[][] sparse = new double[40][40];
+        for (int i = 0; i < 40; i++) {
+            sparse[i][(i * 7) % 40] = i + 1;
+        }
+        double[][] x = randomMatrix(40, 6, 3);
+        double[][] y = randomMatrix(6, 5, 4);
+        double[][] product = lae.run(createOp(ComputationNodeType.MULTIPLY, new ComputationNode(SparseMatrix.fromDense(sparse)),
+                createOp(ComputationNodeType.MULTIPLY, createLeaf(x), createLeaf(y)))).getMatrix();
+        assertMatrixEquals(naiveProduct(sparse, naiveProduct(x, y)), product);
+
+        // קרנל מחוץ לזיכרון שקורא אופרנד תושב דרך הפריסה שלו
+        lae.setOutOfCoreBytes(8L * 40 * 40 - 1);
+        lae.setSpillDirectory(spillDir);
+        double[][] z = randomMatrix(5, 40, 5);
+        ComputationNode outer = lae.run(createOp(ComputationNodeType.MULTIPLY,
+                createOp(ComputationNodeType.MULTIPLY, createLeaf(x), createLeaf(y)), createLeaf(z)));
+        assertTrue(outer.isOnDisk());
+        try (DiskMatrix disk = outer.getDiskMatrix()) {
+            assertMatrixEquals(naiveProduct(naiveProduct(x, y), z), disk.toArray());
+        }
+    }
+
+    @Test
+    public void testFusedAndSparseResultsStayResident() {
+        // (A + B - C) * D: הסכום הממוזג נכתב לאחסון המנוע, והמכפלה קוראת אותו משם
+        double[][] a = randomMatrix(30, 20, 1);
+        double[][] b = randomMatrix(30, 20, 2);
+        double[][] c = randomMatrix(30, 20, 3);
+        double[][] d = randomMatrix(20, 10, 4);
+        ComputationNode fused = lae.run(createOp(ComputationNodeType.ADD, createLeaf(a),
+                createOp(ComputationNodeType.ADD, createLeaf(b), createOp(ComputationNodeType.NEGATE, createLeaf(c)))));
+        assertTrue(fused.isResident());
+
+        double[][] sum = new double[30][20];
+        for (int i = 0; i < 30; i++) {
+            for (int j = 0; j < 20; j++) {
+                sum[i][j] = a[i][j] + b[i][j] - c[i][j];
+            }
+        }
+        ComputationNode product = lae.run(createOp(ComputationNodeType.MULTIPLY, fused, createLeaf(d)));
+        assertMatrixEquals(naiveProduct(sum, d), product.getMatrix());
+
+        // דלילה כפול צפופה
+        double[][] sparse = new double[40][30];
+        for (int i = 0; i < 40; i++) {
+            sparse[i][(i * 7) % 30] = i + 1;
+        }
+        ComputationNode sparseProduct = lae.run(createOp(ComputationNodeType.MULTIPLY,
+                new ComputationNode(SparseMatrix.fromDense(sparse)), createLeaf(b)));
+        assertTrue(sparseProduct.isResident());
+        assertMatrixEquals(naiveProduct(sparse, b), sparseProduct.getMatrix());
+    }
+
+    @Test
+    public void testSymmetricProductMatchesGeneralProduct() {
+        double[][] x = randomMatrix(150, 40, 7);
+        EngineMetrics metrics = new EngineMetrics();
+        lae.setMetrics(metrics);
+
+        ComputationNode leaf = createLeaf(x);
+        double[][] outer = lae.run(createOp(ComputationNodeType.MULTIPLY, leaf,
+                createOp(ComputationNodeType.TRANSPOSE, leaf))).getMatrix();
+        ComputationNode other = createLeaf(x);
+        double[][] inner = lae.run(createOp(ComputationNodeType.MULTIPLY,
+                createOp(ComputationNodeType.TRANSPOSE, other), other)).getMatrix();
+
+        assertMatrixEquals(naiveProduct(x, transpose(x)), outer);
+        assertMatrixEquals(naiveProduct(transpose(x), x), inner);
+        // רק המשולש העליון מחושב: n(n+1)k פעולות במקום 2n^2k
+        EngineMetrics.NodeRecord gram = metrics.getRecords().stream()
+                .filter(r -> r.getType() == ComputationNodeType.GRAM).findFirst().orElseThrow();
+        assertEquals(150L * 151 * 40, gram.getFlops());
+    }
+
+    @Test
+    public void testSymmetricProductOutOfCore(@TempDir Path spillDir) throws Exception {
+        // 600x600: ארבע אריחים, שניים על האלכסון ואחד שנכתב גם כשיקוף שלו
+        double[][] x = randomMatrix(600, 20, 11);
+        lae.setOutOfCoreBytes(0);
+        lae.setSpillDirectory(spillDir);
+        ComputationNode leaf = createLeaf(x);
+
+        ComputationNode result = lae.run(createOp(ComputationNodeType.MULTIPLY, leaf,
+                createOp(ComputationNodeType.TRANSPOSE, leaf)));
+
+        assertTrue(result.isOnDisk());
+        try (DiskMatrix disk = result.getDiskMatrix()) {
+            assertMatrixEquals(naiveProduct(x, transpose(x)), disk.toArray());
+        }
+    }
+
+    @Test
+    public void testOutOfCoreOperandDimensionMismatch(@TempDir Path spillDir) {
+        lae.setOutOfCoreBytes(0);
+        lae.setSpillDirectory(spillDir);
+        ComputationNode root = createOp(ComputationNodeType.MULTIPLY,
+                createLeaf(new double[][]{{1, 2}}), createLeaf(new double[][]{{1, 2}}));
+
+        assertThrows(IllegalArgumentException.class, () -> lae.run(root));
+    }
+
+    @Test
+    public void testSparseOperandsMatchDenseResult() {
+        double[][] a = new double[40][30];
+        double[][] b = new double[40][30];
+        double[][] d = new double[40][5];
+        for (int i = 0; i < 40; i++) {
+            a[i][i % 30] = i + 1;
+            b[i][(i * 7) % 30] = -2;
+            for (int j = 0; j < 5; j++) {
+                d[i][j] = i - j;
+            }
+        }
+        // (A + B)^T * D, פעם עם עלים דלילים ופעם עם עלים צפופים
+        ComputationNode sparseRoot = createOp(ComputationNodeType.MULTIPLY,
+                createOp(ComputationNodeType.TRANSPOSE, createOp(ComputationNodeType.ADD,
+                        new ComputationNode(SparseMatrix.fromDense(a)), new ComputationNode(SparseMatrix.fromDense(b)))),
+                createLeaf(d));
+        ComputationNode denseRoot = createOp(ComputationNodeType.MULTIPLY,
+                createOp(ComputationNodeType.TRANSPOSE, createOp(ComputationNodeType.ADD, createLeaf(a), createLeaf(b))),
+                createLeaf(d));
+
+        double[][] sparseResult = lae.run(sparseRoot).getMatrix();
+        double[][] denseResult = lae.run(denseRoot).getMatrix();
+
+        for (int i = 0; i < 30; i++) {
+            assertArrayEquals(denseResult[i], sparseResult[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void testMetricsRecordedPerNode(@TempDir Path dir) throws Exception {
+        EngineMetrics metrics = new EngineMetrics();
+        lae.setMetrics(metrics);
+        double[][] a = {{1, 2, 3}, {4, 5, 6}};
+        double[][] b = {{1, 0}, {0, 1}, {1, 1}};
+        double[][] c = {{1, 1}, {2, 2}};
+        lae.run(createOp(ComputationNodeType.ADD,
+                createOp(ComputationNodeType.MULTIPLY, createLeaf(a), createLeaf(b)), createLeaf(c)));
+
+        // המכפלה נרשמת לפני החיבור שתלוי בה
+        List<EngineMetrics.NodeRecord> records = metrics.getRecords();
+        assertEquals(2, records.size());
+        EngineMetrics.NodeRecord product = records.get(0);
+        assertEquals(ComputationNodeType.MULTIPLY, product.getType());
+        assertArrayEquals(new int[]{2, 3}, product.getInputShapes().get(0));
+        assertArrayEquals(new int[]{2, 2}, product.getOutputShape());
+        assertEquals(2L * 2 * 3 * 2, product.getFlops());
+        assertEquals("dense", product.getStorage());
+        assertTrue(product.getTasks() > 0);
+        assertTrue(product.getWallNanos() > 0);
+        assertEquals(ComputationNodeType.ADD, records.get(1).getType());
+        assertEquals(4, records.get(1).getFlops());
+
+        Path report = dir.resolve("metrics.json");
+        metrics.writeJson(report.toString());
+        JsonNode json = new ObjectMapper().readTree(report.toFile());
+        assertEquals(2, json.get("nodes").asInt());
+        assertEquals(1, json.get("operations").get("MULTIPLY").get("count").asInt());
+        assertTrue(json.get("operations").get("ADD").get("wallNanos").get("buckets").size() > 0);
+        assertEquals(2, json.get("records").size());
+    }
+
+    @Test
+    public void testSparseResultStaysSparse() {
+        double[][] a = new double[40][40];
+        a[3][5] = 7;
+        ComputationNode root = createOp(ComputationNodeType.NEGATE, new ComputationNode(SparseMatrix.fromDense(a)));
+
+        ComputationNode result = lae.run(root);
+
+        assertTrue(result.isSparse());
+        assertEquals(-7.0, result.getSparseMatrix().toDense()[3][5], 0.0);
+    }
+
+    @Test
+    public void testRunAsyncOverlapsIndependentTrees() throws Exception {
+        ComputationNode product = createOp(ComputationNodeType.MULTIPLY,
+                createLeaf(new double[][]{{1, 2}, {3, 4}}), createLeaf(new double[][]{{5, 6}, {7, 8}}));
+        ComputationNode sum = createOp(ComputationNodeType.ADD,
+                createLeaf(new double[][]{{1, 1}}), createLeaf(new double[][]{{2, 3}}));
+
+        // שני העצים רצים במקביל על אותו מנוע
+        CompletableFuture<ComputationNode> first = lae.runAsync(product);
+        CompletableFuture<ComputationNode> second = lae.runAsync(sum);
+
+        assertArrayEquals(new double[]{19, 22}, first.get(10, TimeUnit.SECONDS).getMatrix()[0], 1e-9);
+        assertArrayEquals(new double[]{43, 50}, first.get().getMatrix()[1], 1e-9);
+        assertArrayEquals(new double[]{3, 4}, second.get(10, TimeUnit.SECONDS).getMatrix()[0], 1e-9);
+    }
+
+    @Test
+    public void testRunAsyncReportsFailure() {
+        ComputationNode invalid = createOp(ComputationNodeType.ADD,
+                createLeaf(new double[][]{{1, 2}}), createLeaf(new double[][]{{1}, {2}}));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> lae.runAsync(invalid).get(10, TimeUnit.SECONDS));
+        assertNotNull(e.getCause());
+    }
+}